@@ -0,0 +1,91 @@
+/**
+ * Measures the AppointmentManager operations used by the menu loop and by data entry,
+ * for calendars from a thousand to ten million appointments, kept either in the tree-based
+ * AppointmentManager or in the array-based CompactAppointmentManager.
+ */
+package com.appointmentcalendar.benchmarks;
+
+import com.appointmentcalendar.Appointment;
+import com.appointmentcalendar.AppointmentManager;
+import com.appointmentcalendar.CompactAppointmentManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class AppointmentManagerBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"tree", "compact"})
+    public String backend;
+
+    private AppointmentManager manager;
+    private long days;
+
+    @Setup
+    public void setUp() {
+        manager = backend.equals("compact") ? new CompactAppointmentManager() : new AppointmentManager();
+        manager.setAppointments(CalendarFixtures.generate(size));
+        days = Duration.between(CalendarFixtures.FIRST_START, CalendarFixtures.lastStart(size)).toDays() + 1;
+    }
+
+    @Benchmark
+    public boolean addAndDelete() {
+        LocalDateTime start = randomDay().plusHours(12);
+        String code = manager.generateAppointmentCode("W");
+        manager.addAppointment(new Appointment(code, start, start.plusMinutes(30), "Added", "Work"));
+        return manager.deleteAppointment(code);
+    }
+
+    @Benchmark
+    public List<Appointment> getAppointmentsForDay() {
+        return manager.getAppointmentsForDay(randomDay());
+    }
+
+    @Benchmark
+    public Appointment getNextUpcomingAppointment() {
+        return manager.getNextUpcomingAppointment();
+    }
+
+    @Benchmark
+    public Appointment getNextAppointmentAfter() {
+        return manager.getNextAppointmentAfter(randomDay());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Appointment> getSortedAppointments() {
+        return manager.getSortedAppointments();
+    }
+
+    @Benchmark
+    public String generateAppointmentCode() {
+        return manager.generateAppointmentCode("P");
+    }
+
+    private LocalDateTime randomDay() {
+        return CalendarFixtures.FIRST_START.toLocalDate()
+                .plusDays(ThreadLocalRandom.current().nextLong(days))
+                .atStartOfDay();
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Builds synthetic calendars of a given size for the benchmarks.
+ * Appointments are spread evenly from 2020-01-01 onwards, cycling through the four categories.
+ */
+package com.appointmentcalendar.benchmarks;
+
+import com.appointmentcalendar.Appointment;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+final class CalendarFixtures {
+    static final LocalDateTime FIRST_START = LocalDateTime.of(2020, 1, 1, 8, 0);
+    static final int MINUTES_BETWEEN_APPOINTMENTS = 17;
+
+    private static final String[] CATEGORY_CODES = {"W", "P", "M", "O"};
+    private static final String[] CATEGORIES = {"Work", "Personal", "Medical", "Other"};
+
+    private CalendarFixtures() {
+    }
+
+    /**
+     * Returns {@code size} appointments in start order with distinct codes.
+     */
+    static List<Appointment> generate(int size) {
+        List<Appointment> appointments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            LocalDateTime start = FIRST_START.plusMinutes((long) i * MINUTES_BETWEEN_APPOINTMENTS);
+            int category = i % CATEGORY_CODES.length;
+            appointments.add(new Appointment(
+                    CATEGORY_CODES[category] + String.format("%03d", i + 1),
+                    start,
+                    start.plusMinutes(30),
+                    "Benchmark appointment " + i,
+                    CATEGORIES[category]));
+        }
+        return appointments;
+    }
+
+    /**
+     * Returns the start time of the last appointment generated for a calendar of the given size.
+     */
+    static LocalDateTime lastStart(int size) {
+        return FIRST_START.plusMinutes((long) (size - 1) * MINUTES_BETWEEN_APPOINTMENTS);
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Drives a shared ConcurrentAppointmentManager from many threads at once, with readers querying days
+ * while writers create and delete appointments with generated codes.
+ * Every generated code is recorded, and the run fails as soon as a code is handed out twice or an
+ * appointment that was just created cannot be deleted again because another one replaced it.
+ */
+package com.appointmentcalendar.benchmarks;
+
+import com.appointmentcalendar.Appointment;
+import com.appointmentcalendar.ConcurrentAppointmentManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ConcurrentAppointmentManagerBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private ConcurrentAppointmentManager manager;
+    private Set<String> issuedCodes;
+    private long days;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        manager = new ConcurrentAppointmentManager();
+        manager.setAppointments(CalendarFixtures.generate(size));
+        issuedCodes = ConcurrentHashMap.newKeySet();
+        days = Duration.between(CalendarFixtures.FIRST_START, CalendarFixtures.lastStart(size)).toDays() + 1;
+    }
+
+    /**
+     * Checks that the calendar is back to its initial size once all created appointments were deleted.
+     */
+    @TearDown(Level.Trial)
+    public void verifyCalendarSize() {
+        int remaining = manager.getAllAppointments().size();
+        if (remaining != size) {
+            throw new IllegalStateException("Expected " + size + " appointments but found " + remaining);
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public List<Appointment> readDay() {
+        return manager.getAppointmentsForDay(randomDay());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public boolean createAndDeleteAppointment() {
+        LocalDateTime start = randomDay().plusHours(ThreadLocalRandom.current().nextInt(24));
+        String category = ThreadLocalRandom.current().nextBoolean() ? "Work" : "Personal";
+        Appointment app = manager.createAppointment(category, start, start.plusMinutes(30), "Stress");
+        recordIssued(app.getCode());
+        if (!manager.deleteAppointment(app.getCode())) {
+            throw new IllegalStateException("Appointment " + app.getCode() + " was replaced by another client");
+        }
+        return true;
+    }
+
+    @Benchmark
+    @Group("codes")
+    @GroupThreads(8)
+    public String generateAppointmentCode() {
+        String code = manager.generateAppointmentCode("Medical");
+        recordIssued(code);
+        return code;
+    }
+
+    private void recordIssued(String code) {
+        if (!issuedCodes.add(code)) {
+            throw new IllegalStateException("Duplicate appointment code " + code);
+        }
+    }
+
+    private LocalDateTime randomDay() {
+        return CalendarFixtures.FIRST_START.toLocalDate()
+                .plusDays(ThreadLocalRandom.current().nextLong(days))
+                .atStartOfDay();
+    }
+}
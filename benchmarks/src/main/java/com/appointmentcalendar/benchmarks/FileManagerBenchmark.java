@@ -0,0 +1,92 @@
+/**
+ * Measures loading and saving the text and binary appointment files
+ * for calendars from a thousand to ten million appointments, including loading
+ * a binary snapshot straight into a compact calendar.
+ */
+package com.appointmentcalendar.benchmarks;
+
+import com.appointmentcalendar.Appointment;
+import com.appointmentcalendar.BinarySnapshot;
+import com.appointmentcalendar.CompactAppointmentManager;
+import com.appointmentcalendar.FileManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class FileManagerBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private Path directory;
+    private String textFile;
+    private String binaryFile;
+    private List<Appointment> appointments;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("calendar-bench");
+        textFile = directory.resolve("appointments.txt").toString();
+        binaryFile = directory.resolve("appointments.bin").toString();
+        appointments = CalendarFixtures.generate(size);
+        FileManager.saveAppointments(appointments, textFile);
+        BinarySnapshot.write(appointments, binaryFile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public List<Appointment> loadText() {
+        return FileManager.loadAppointments(textFile);
+    }
+
+    @Benchmark
+    public void saveText() {
+        FileManager.saveAppointments(appointments, textFile);
+    }
+
+    @Benchmark
+    public List<Appointment> loadBinary() throws IOException {
+        return BinarySnapshot.load(binaryFile);
+    }
+
+    @Benchmark
+    public void saveBinary() throws IOException {
+        BinarySnapshot.write(appointments, binaryFile);
+    }
+
+    @Benchmark
+    public CompactAppointmentManager loadBinaryCompact() throws IOException {
+        CompactAppointmentManager manager = new CompactAppointmentManager();
+        manager.loadBinary(binaryFile);
+        return manager;
+    }
+}
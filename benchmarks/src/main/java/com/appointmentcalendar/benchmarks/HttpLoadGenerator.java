@@ -0,0 +1,183 @@
+/**
+ * Drives a CalendarServer with many concurrent HTTP clients and reports throughput and latency.
+ * Each client is a virtual thread issuing requests back to back: mostly day queries, with some
+ * next-upcoming lookups and add/delete pairs mixed in.
+ *
+ * Usage: {@code java -cp benchmarks.jar com.appointmentcalendar.benchmarks.HttpLoadGenerator
+ * [--clients N] [--seconds N] [--size N] [--url http://host:port]}.
+ * Without {@code --url}, an in-process server over a synthetic calendar of {@code --size} appointments is started.
+ */
+package com.appointmentcalendar.benchmarks;
+
+import com.appointmentcalendar.CalendarServer;
+import com.appointmentcalendar.ConcurrentAppointmentManager;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public final class HttpLoadGenerator {
+    private static final Pattern CODE = Pattern.compile("\"code\":\"([^\"]+)\"");
+
+    private HttpLoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = intOption(args, "--clients", 1000);
+        int seconds = intOption(args, "--seconds", 30);
+        int size = intOption(args, "--size", 100_000);
+        String url = stringOption(args, "--url", null);
+
+        CalendarServer server = null;
+        if (url == null) {
+            ConcurrentAppointmentManager manager = new ConcurrentAppointmentManager();
+            manager.setAppointments(CalendarFixtures.generate(size));
+            server = new CalendarServer(manager, 0);
+            server.start();
+            url = "http://localhost:" + server.getPort();
+        }
+        System.out.printf("Running %d clients against %s for %d s%n", clients, url, seconds);
+
+        int days = (int) ChronoUnit.DAYS.between(CalendarFixtures.FIRST_START.toLocalDate(),
+                CalendarFixtures.lastStart(size).toLocalDate()) + 1;
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Future<ClientStats>> results = new ArrayList<>(clients);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                String base = url;
+                results.add(executor.submit(() -> runClient(client, base, days, deadline)));
+            }
+        }
+
+        ClientStats total = new ClientStats();
+        for (Future<ClientStats> result : results) {
+            total.merge(result.get());
+        }
+        report(total, seconds);
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Issues requests until the deadline, recording the latency of each.
+     */
+    private static ClientStats runClient(HttpClient client, String base, int days, long deadline) {
+        ClientStats stats = new ClientStats();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            int kind = random.nextInt(100);
+            long begin = System.nanoTime();
+            try {
+                if (kind < 90) {
+                    LocalDate day = CalendarFixtures.FIRST_START.toLocalDate().plusDays(random.nextInt(days));
+                    expect(send(client, HttpRequest.newBuilder(URI.create(base + "/appointments?day=" + day))), 200);
+                } else if (kind < 95) {
+                    send(client, HttpRequest.newBuilder(URI.create(base + "/appointments/next")));
+                } else {
+                    String body = "{\"category\":\"Work\",\"start\":\"2030-01-01T09:00\","
+                            + "\"end\":\"2030-01-01T10:00\",\"description\":\"Load test\"}";
+                    HttpResponse<String> created = expect(send(client,
+                            HttpRequest.newBuilder(URI.create(base + "/appointments"))
+                                    .POST(HttpRequest.BodyPublishers.ofString(body))), 201);
+                    Matcher code = CODE.matcher(created.body());
+                    if (code.find()) {
+                        expect(send(client, HttpRequest.newBuilder(
+                                URI.create(base + "/appointments/" + code.group(1))).DELETE()), 204);
+                    }
+                }
+                stats.record(System.nanoTime() - begin);
+            } catch (IOException e) {
+                stats.errors++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return stats;
+    }
+
+    private static HttpResponse<String> send(HttpClient client, HttpRequest.Builder request)
+            throws IOException, InterruptedException {
+        return client.send(request.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpResponse<String> expect(HttpResponse<String> response, int status) throws IOException {
+        if (response.statusCode() != status) {
+            throw new IOException("Unexpected status " + response.statusCode() + ": " + response.body());
+        }
+        return response;
+    }
+
+    private static void report(ClientStats stats, int seconds) {
+        long[] latencies = Arrays.copyOf(stats.latencies, stats.count);
+        Arrays.sort(latencies);
+        System.out.printf("Requests:   %d (%d errors)%n", stats.count, stats.errors);
+        System.out.printf("Throughput: %.1f requests/s%n", stats.count / (double) seconds);
+        if (latencies.length > 0) {
+            System.out.printf("Latency:    p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n",
+                    percentile(latencies, 0.50), percentile(latencies, 0.99),
+                    percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e6);
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.min(sorted.length - 1, Math.round(fraction * (sorted.length - 1)));
+        return sorted[index] / 1e6;
+    }
+
+    private static int intOption(String[] args, String name, int defaultValue) {
+        String value = stringOption(args, name, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static String stringOption(String[] args, String name, String defaultValue) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * The latencies recorded by one client, in nanoseconds.
+     */
+    private static final class ClientStats {
+        private long[] latencies = new long[1024];
+        private int count;
+        private int errors;
+
+        void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+
+        void merge(ClientStats other) {
+            for (int i = 0; i < other.count; i++) {
+                record(other.latencies[i]);
+            }
+            errors += other.errors;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Tests catching up through AppointmentManager.changesSince, in particular that a sequence number is only
+ * trusted together with the epoch of the feed that handed it out.
+ */
+package com.appointmentcalendar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ChangeFeedTest {
+    private static final LocalDateTime START = LocalDateTime.of(2027, 3, 1, 9, 0);
+
+    @Test
+    void clientOfTheSameFeedGetsTheChangesSinceItsSequence() {
+        AppointmentManager manager = new AppointmentManager();
+        ChangeFeed.Changes first = manager.changesSince(null, -1);
+        assertTrue(first.isSnapshot());
+
+        Appointment added = manager.createAppointment("Work", START, START.plusHours(1), "Planning");
+        ChangeFeed.Changes next = manager.changesSince(first.getEpoch(), first.getSequence());
+        assertFalse(next.isSnapshot());
+        assertEquals(first.getEpoch(), next.getEpoch());
+        List<ChangeFeed.Change> changes = next.getChanges();
+        assertEquals(1, changes.size());
+        assertEquals(ChangeFeed.Type.ADDED, changes.get(0).getType());
+        assertEquals(added.getCode(), changes.get(0).getAppointment().getCode());
+    }
+
+    @Test
+    void sequenceFromAnotherFeedGetsASnapshot() {
+        // The first run of a server, which a client followed up to its latest change.
+        AppointmentManager earlierRun = new ConcurrentAppointmentManager();
+        for (int i = 0; i < 5; i++) {
+            earlierRun.createAppointment("Work", START.plusDays(i), START.plusDays(i).plusHours(1), "Old " + i);
+        }
+        ChangeFeed.Changes seen = earlierRun.changesSince(null, -1);
+
+        // The next run loads other appointments and gets past the client's sequence number.
+        AppointmentManager laterRun = new InstrumentedAppointmentManager(new ConcurrentAppointmentManager());
+        laterRun.setAppointments(List.of());
+        for (int i = 0; i < 10; i++) {
+            laterRun.createAppointment("Personal", START.plusDays(i), START.plusDays(i).plusHours(1), "New " + i);
+        }
+        assertTrue(laterRun.changesSince(seen.getSequence()).getChanges().size() > 0);
+
+        ChangeFeed.Changes catchUp = laterRun.changesSince(seen.getEpoch(), seen.getSequence());
+        assertNotEquals(seen.getEpoch(), catchUp.getEpoch());
+        assertTrue(catchUp.isSnapshot());
+        assertEquals(10, catchUp.getSnapshot().size());
+        assertFalse(laterRun.changesSince(catchUp.getEpoch(), catchUp.getSequence()).isSnapshot());
+    }
+}
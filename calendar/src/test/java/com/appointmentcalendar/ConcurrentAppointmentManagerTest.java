@@ -0,0 +1,117 @@
+/**
+ * Stress tests for ConcurrentAppointmentManager: many threads create appointments and generate codes at
+ * the same time, and every code handed out has to be unique and every created appointment kept.
+ */
+package com.appointmentcalendar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentAppointmentManagerTest {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 2000;
+    private static final LocalDateTime FIRST_START = LocalDateTime.of(2027, 1, 4, 9, 0);
+
+    @Test
+    void codesStayUniqueWhenCreatingAndGeneratingConcurrently() throws Exception {
+        ConcurrentAppointmentManager manager = new ConcurrentAppointmentManager();
+        List<Appointment> initial = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            initial.add(new Appointment(String.format("W%03d", i), FIRST_START.plusHours(i),
+                    FIRST_START.plusHours(i).plusMinutes(30), "Existing " + i, "Work"));
+        }
+        manager.setAppointments(initial);
+
+        Set<String> issued = ConcurrentHashMap.newKeySet();
+        for (Appointment app : initial) {
+            issued.add(app.getCode());
+        }
+        int[] created = runConcurrently(thread -> {
+            int createdByThread = 0;
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                String category = i % 3 == 0 ? "Personal" : "Work";
+                String code;
+                if (i % 2 == 0) {
+                    LocalDateTime start = FIRST_START.plusMinutes(thread * 7919L + i * 30L);
+                    code = manager.createAppointment(category, start, start.plusMinutes(30), "Stress").getCode();
+                    createdByThread++;
+                } else {
+                    code = manager.generateAppointmentCode(category);
+                }
+                assertTrue(issued.add(code), "Code handed out twice: " + code);
+            }
+            return createdByThread;
+        });
+
+        int totalCreated = 0;
+        for (int count : created) {
+            totalCreated += count;
+        }
+        assertEquals(initial.size() + THREADS * OPERATIONS_PER_THREAD, issued.size());
+        assertEquals(initial.size() + totalCreated, manager.getAllAppointments().size());
+        assertEquals(manager.getAllAppointments().size(),
+                manager.countByCategory(Category.WORK) + manager.countByCategory(Category.PERSONAL));
+    }
+
+    @Test
+    void createdAppointmentsCanBeDeletedByTheirCreator() throws Exception {
+        ConcurrentAppointmentManager manager = new ConcurrentAppointmentManager();
+        runConcurrently(thread -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                LocalDateTime start = FIRST_START.plusMinutes(i * 15L);
+                Appointment app = manager.createAppointment("Medical", start, start.plusMinutes(15), "Checkup");
+                // Reads run alongside the writes of the other threads.
+                manager.getAppointmentsForDay(start);
+                assertTrue(manager.deleteAppointment(app.getCode()),
+                        "Appointment " + app.getCode() + " was replaced by another thread");
+            }
+            return 0;
+        });
+        assertEquals(0, manager.getAllAppointments().size());
+    }
+
+    /**
+     * Runs the task on every thread at once and returns what each returned, rethrowing the first failure.
+     */
+    private static int[] runConcurrently(ThreadTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                Callable<Integer> call = () -> {
+                    start.await();
+                    return task.run(thread);
+                };
+                results.add(executor.submit(call));
+            }
+            start.countDown();
+            int[] values = new int[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                values[t] = results.get(t).get(1, TimeUnit.MINUTES);
+            }
+            return values;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThreadTask {
+        int run(int thread) throws Exception;
+    }
+}
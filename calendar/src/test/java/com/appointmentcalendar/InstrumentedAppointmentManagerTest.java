@@ -0,0 +1,57 @@
+/**
+ * Tests that InstrumentedAppointmentManager forwards to the manager it wraps instead of its own empty calendar.
+ */
+package com.appointmentcalendar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class InstrumentedAppointmentManagerTest {
+    private static final LocalDateTime START = LocalDateTime.of(2027, 1, 4, 9, 0);
+
+    @Test
+    void overridesEveryOverridableMethod() {
+        List<String> missing = new ArrayList<>();
+        for (Method method : AppointmentManager.class.getDeclaredMethods()) {
+            int modifiers = method.getModifiers();
+            if (Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)
+                    || method.isSynthetic()) {
+                continue;
+            }
+            try {
+                InstrumentedAppointmentManager.class.getDeclaredMethod(method.getName(), method.getParameterTypes());
+            } catch (NoSuchMethodException e) {
+                missing.add(method.toString());
+            }
+        }
+        assertTrue(missing.isEmpty(), "Not forwarded to the wrapped manager: " + missing);
+    }
+
+    @Test
+    void changesMadeThroughTheWrapperReachTheWrappedManager() {
+        AppointmentManager calendar = new AppointmentManager();
+        InstrumentedAppointmentManager manager = new InstrumentedAppointmentManager(calendar);
+        Appointment app = manager.createAppointment("Work", START, START.plusHours(1), "Planning");
+        manager.createRecurringAppointment("Personal", START, START.plusMinutes(30), "Run",
+                RecurrenceRule.parse("FREQ=DAILY;COUNT=3"));
+
+        assertSame(app, calendar.findByCode(app.getCode()));
+        assertEquals(1, manager.getRecurringAppointments().size());
+        assertEquals(4, manager.getAppointmentsBetween(START, START.plusDays(3)).size());
+
+        manager.edit(app, () -> app.setDescription("Planning review"));
+        assertEquals("Planning review", calendar.search("review", START, 1).get(0).getDescription());
+        List<ChangeFeed.Change> changes = manager.changesSince(0).getChanges();
+        assertEquals(3, changes.size());
+        assertEquals(ChangeFeed.Type.UPDATED, changes.get(2).getType());
+        assertEquals(calendar.changesSince(0).getSequence(), manager.changesSince(0).getSequence());
+    }
+}
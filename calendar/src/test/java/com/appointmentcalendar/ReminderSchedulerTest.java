@@ -0,0 +1,248 @@
+/**
+ * Tests ReminderScheduler on its virtual clock against a naive model that keeps every pending reminder in a map
+ * and fires the earliest one until none is due, over random adds, deletes and clock jumps of every size.
+ */
+package com.appointmentcalendar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class ReminderSchedulerTest {
+    private static final Duration LEAD_TIME = Duration.ofMinutes(15);
+    private static final LocalDateTime START = LocalDateTime.of(2027, 3, 1, 8, 0);
+    private static final RecurrenceRule[] RULES = {
+            RecurrenceRule.parse("FREQ=DAILY;COUNT=5"),
+            RecurrenceRule.parse("FREQ=WEEKLY"),
+            RecurrenceRule.parse("FREQ=MONTHLY;COUNT=3")
+    };
+    // Clock jumps from a second to over a year, so reminders are spread over every level of the wheel.
+    private static final long[] JUMP_SECONDS = {1, 7, 63, 64, 65, 3600, 4096, 86400, 262144, 2_592_000, 40_000_000};
+
+    @Test
+    void firesLeadTimeBeforeStart() {
+        AppointmentManager manager = new AppointmentManager();
+        ReminderScheduler scheduler = new ReminderScheduler(LEAD_TIME, START);
+        List<String> fired = new ArrayList<>();
+        scheduler.addSink((appointment, now) -> fired.add(appointment.getCode() + "@" + now));
+        scheduler.watch(manager);
+        Appointment app = manager.createAppointment("Work", START.plusHours(1), START.plusHours(2), "Review");
+
+        scheduler.advanceTo(START.plusMinutes(44).plusSeconds(59));
+        assertTrue(fired.isEmpty());
+        scheduler.advanceTo(START.plusMinutes(45));
+        assertEquals(List.of(app.getCode() + "@" + START.plusMinutes(45)), fired);
+        assertEquals(0, scheduler.pending());
+    }
+
+    @Test
+    void matchesNaiveModelOverRandomOperations() {
+        for (long seed = 1; seed <= 20; seed++) {
+            runRandomOperations(new Random(seed), 3000);
+        }
+    }
+
+    private void runRandomOperations(Random random, int operations) {
+        AppointmentManager manager = new AppointmentManager();
+        List<Appointment> initial = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            LocalDateTime start = randomStart(random, START);
+            initial.add(new Appointment(String.format("W%03d", i + 1), start, start.plusMinutes(30), "Initial", "Work"));
+        }
+        manager.setAppointments(initial);
+
+        ReminderScheduler scheduler = new ReminderScheduler(LEAD_TIME, START);
+        List<Fired> fired = new ArrayList<>();
+        scheduler.addSink((appointment, now) -> fired.add(new Fired(appointment, now)));
+        scheduler.watch(manager);
+        Model model = new Model(START);
+        for (Appointment app : initial) {
+            model.schedule(app);
+        }
+
+        LocalDateTime now = START;
+        List<String> codes = new ArrayList<>();
+        for (Appointment app : initial) {
+            codes.add(app.getCode());
+        }
+        for (int op = 0; op < operations; op++) {
+            int kind = random.nextInt(10);
+            if (kind < 4) {
+                LocalDateTime start = randomStart(random, now);
+                Appointment app = manager.createAppointment("Personal", start, start.plusMinutes(45), "Added " + op);
+                model.schedule(app);
+                codes.add(app.getCode());
+            } else if (kind < 5) {
+                LocalDateTime start = randomStart(random, now);
+                Appointment app = manager.createRecurringAppointment("Medical", start, start.plusMinutes(20),
+                        "Series " + op, RULES[random.nextInt(RULES.length)]);
+                model.schedule(app);
+                codes.add(app.getCode());
+            } else if (kind < 6 && !codes.isEmpty()) {
+                // Replaces an appointment under the same code, which reschedules its reminder.
+                String code = codes.get(random.nextInt(codes.size()));
+                LocalDateTime start = randomStart(random, now);
+                Appointment app = new Appointment(code, start, start.plusMinutes(30), "Moved " + op, "Personal");
+                manager.addAppointment(app);
+                model.schedule(app);
+            } else if (kind < 7 && !codes.isEmpty()) {
+                String code = codes.remove(random.nextInt(codes.size()));
+                manager.deleteAppointment(code);
+                model.cancel(code);
+            } else {
+                now = now.plusSeconds(1 + (long) (random.nextDouble() * JUMP_SECONDS[random.nextInt(JUMP_SECONDS.length)]));
+                int before = fired.size();
+                scheduler.advanceTo(now);
+                List<Fired> expected = model.advanceTo(now);
+                assertSameReminders(expected, fired.subList(before, fired.size()), now);
+            }
+            assertEquals(model.pending.size(), scheduler.pending(), "Pending reminders after operation " + op);
+        }
+    }
+
+    /**
+     * Checks that the same reminders fired, all at the time the clock was moved to. Reminders due at the same
+     * tick may fire in any order, so they are compared by their due tick and then by code.
+     */
+    private static void assertSameReminders(List<Fired> expected, List<Fired> actual, LocalDateTime now) {
+        assertEquals(describe(expected), describe(sortedLike(expected, actual)), "Reminders fired by " + now);
+        for (Fired reminder : actual) {
+            assertEquals(now, reminder.now);
+        }
+    }
+
+    private static List<Fired> sortedLike(List<Fired> expected, List<Fired> actual) {
+        Map<String, Long> dueTicks = new HashMap<>();
+        for (Fired reminder : expected) {
+            dueTicks.put(reminder.key(), reminder.tick);
+        }
+        long previousTick = Long.MIN_VALUE;
+        List<Fired> sorted = new ArrayList<>();
+        for (Fired reminder : actual) {
+            long tick = dueTicks.getOrDefault(reminder.key(), Long.MAX_VALUE);
+            assertTrue(tick >= previousTick, "Reminder fired out of order: " + reminder.key());
+            previousTick = tick;
+            sorted.add(new Fired(reminder.occurrence, reminder.now, tick));
+        }
+        sorted.sort(Fired.ORDER);
+        return sorted;
+    }
+
+    private static List<String> describe(List<Fired> reminders) {
+        List<String> keys = new ArrayList<>();
+        for (Fired reminder : reminders) {
+            keys.add(reminder.key());
+        }
+        return keys;
+    }
+
+    private static LocalDateTime randomStart(Random random, LocalDateTime now) {
+        long seconds = (long) (random.nextDouble() * JUMP_SECONDS[random.nextInt(JUMP_SECONDS.length)] * 2);
+        // Some appointments start in the past or within the lead time, so they are skipped or due at once.
+        return now.plusSeconds(seconds - 600);
+    }
+
+    private static long ceilTick(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) + (time.getNano() > 0 ? 1 : 0);
+    }
+
+    /**
+     * The reference: a map of pending reminders, each with the tick it fires at.
+     */
+    private static final class Model {
+        private final Map<String, Fired> pending = new HashMap<>();
+        private long nowTick;
+
+        Model(LocalDateTime now) {
+            this.nowTick = now.toEpochSecond(ZoneOffset.UTC);
+        }
+
+        void schedule(Appointment appointment) {
+            scheduleAfter(appointment, nowTick);
+        }
+
+        void cancel(String code) {
+            pending.remove(code.toUpperCase());
+        }
+
+        /**
+         * Schedules the first start after the given tick; a reminder that is due already fires at the next tick.
+         */
+        private void scheduleAfter(Appointment appointment, long afterTick) {
+            cancel(appointment.getCode());
+            LocalDateTime after = LocalDateTime.ofEpochSecond(afterTick, 0, ZoneOffset.UTC);
+            Appointment occurrence = appointment;
+            if (appointment instanceof RecurringAppointment) {
+                occurrence = ((RecurringAppointment) appointment).nextOccurrenceAfter(after);
+            } else if (!appointment.getStartTime().isAfter(after)) {
+                occurrence = null;
+            }
+            if (occurrence != null) {
+                long tick = Math.max(ceilTick(occurrence.getStartTime().minus(LEAD_TIME)), nowTick + 1);
+                pending.put(appointment.getCode().toUpperCase(), new Fired(appointment, occurrence, tick));
+            }
+        }
+
+        List<Fired> advanceTo(LocalDateTime now) {
+            long target = now.toEpochSecond(ZoneOffset.UTC);
+            List<Fired> fired = new ArrayList<>();
+            while (true) {
+                Fired next = pending.values().stream().min(Fired.ORDER).orElse(null);
+                if (next == null || next.tick > target) {
+                    break;
+                }
+                pending.remove(next.occurrence.getCode().toUpperCase());
+                fired.add(new Fired(next.occurrence, now, next.tick));
+                if (next.series instanceof RecurringAppointment) {
+                    nowTick = next.tick;
+                    scheduleAfter(next.series, Math.max(next.tick,
+                            next.occurrence.getStartTime().toEpochSecond(ZoneOffset.UTC)));
+                }
+            }
+            nowTick = target;
+            return fired;
+        }
+    }
+
+    private static final class Fired {
+        static final Comparator<Fired> ORDER = Comparator.comparingLong((Fired reminder) -> reminder.tick)
+                .thenComparing(Fired::key);
+
+        private final Appointment series;
+        private final Appointment occurrence;
+        private final LocalDateTime now;
+        private final long tick;
+
+        Fired(Appointment occurrence, LocalDateTime now) {
+            this(occurrence, now, 0);
+        }
+
+        Fired(Appointment occurrence, LocalDateTime now, long tick) {
+            this.series = null;
+            this.occurrence = occurrence;
+            this.now = now;
+            this.tick = tick;
+        }
+
+        Fired(Appointment series, Appointment occurrence, long tick) {
+            this.series = series;
+            this.occurrence = occurrence;
+            this.now = null;
+            this.tick = tick;
+        }
+
+        String key() {
+            return occurrence.getCode().toUpperCase() + "@" + occurrence.getStartTime();
+        }
+    }
+}
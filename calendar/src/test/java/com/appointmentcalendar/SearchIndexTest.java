@@ -0,0 +1,53 @@
+/**
+ * Tests word search through the managers that use SearchIndex, for queries whose clauses match the same appointments.
+ */
+package com.appointmentcalendar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class SearchIndexTest {
+    private static final LocalDateTime MONDAY = LocalDateTime.of(2027, 3, 1, 9, 0);
+
+    @Test
+    void orQueryReturnsRecurringAppointmentOnce() {
+        assertOrQueryReturnsEachMatchOnce(new AppointmentManager());
+    }
+
+    @Test
+    void orQueryReturnsRecurringAppointmentOnceFromCompactCalendar() {
+        assertOrQueryReturnsEachMatchOnce(new CompactAppointmentManager());
+    }
+
+    @Test
+    void seriesMatchingEveryClauseLeavesRoomForOtherMatches() {
+        AppointmentManager manager = new AppointmentManager();
+        manager.createRecurringAppointment("Work", MONDAY, MONDAY.plusMinutes(15), "team standup",
+                RecurrenceRule.parse("FREQ=WEEKLY"));
+        manager.createAppointment("Work", MONDAY.plusDays(30), MONDAY.plusDays(30).plusHours(1), "team review");
+
+        List<Appointment> results = manager.search("team OR standup OR team*", MONDAY, 2);
+        assertEquals(List.of("W001", "W002"), codes(results));
+    }
+
+    private static void assertOrQueryReturnsEachMatchOnce(AppointmentManager manager) {
+        manager.createRecurringAppointment("Work", MONDAY, MONDAY.plusMinutes(15), "team standup",
+                RecurrenceRule.parse("FREQ=WEEKLY"));
+        manager.createAppointment("Work", MONDAY.plusDays(2), MONDAY.plusDays(2).plusHours(1), "team review");
+
+        List<Appointment> results = manager.search("team OR standup", MONDAY, 10);
+        assertEquals(List.of("W001", "W002"), codes(results));
+    }
+
+    private static List<String> codes(List<Appointment> appointments) {
+        List<String> codes = new ArrayList<>();
+        for (Appointment app : appointments) {
+            codes.add(app.getCode());
+        }
+        return codes;
+    }
+}
@@ -1,6 +1,8 @@
 /**
  * Represents an individual appointment in the calendar.
  * Encapsulates all the details of an appointment, including its unique code, start and end times, description, and category.
+ * Changing an appointment held by an AppointmentManager through its setters updates the manager's indexes
+ * and is reported to its listeners and change feed.
  */
 package com.appointmentcalendar;
 
@@ -12,6 +14,8 @@ public class Appointment {
     private LocalDateTime endTime;
     private String description;
     private String category;
+    // The manager holding the appointment, told about every change made through the setters.
+    AppointmentManager owner;
 
     /**
      * Constructs a new Appointment with the given details.
@@ -63,28 +67,47 @@ public class Appointment {
      * Sets the start time of the appointment.
      */
     public void setStartTime(LocalDateTime startTime) {
-        this.startTime = startTime;
+        edit(() -> this.startTime = startTime);
     }
 
     /**
      * Sets the end time of the appointment.
      */
     public void setEndTime(LocalDateTime endTime) {
-        this.endTime = endTime;
+        edit(() -> this.endTime = endTime);
     }
 
     /**
      * Sets the description of the appointment.
      */
     public void setDescription(String description) {
-        this.description = description;
+        edit(() -> this.description = description);
     }
 
     /**
      * Sets the category of the appointment.
      */
     public void setCategory(String category) {
-        this.category = category;
+        edit(() -> this.category = category);
+    }
+
+    /**
+     * Applies a change to the fields, through the owning manager if there is one so it can reindex the appointment.
+     */
+    void edit(Runnable change) {
+        AppointmentManager manager = owner;
+        if (manager == null) {
+            change.run();
+        } else {
+            manager.edit(this, change);
+        }
+    }
+
+    /**
+     * Returns a copy of the appointment that no manager holds.
+     */
+    Appointment copy() {
+        return new Appointment(code, startTime, endTime, description, category);
     }
 
     /**
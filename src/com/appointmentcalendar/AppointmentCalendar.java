@@ -4,22 +4,469 @@
  */
 package com.appointmentcalendar;
 
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Scanner;
 
 public class AppointmentCalendar {
+    private static final int MAX_CACHED_TENANTS = 1_000;
+    private static final long MAX_CACHED_APPOINTMENTS = 1_000_000;
+    private static final int DEFAULT_REMINDER_MINUTES = 15;
+    private static final String REMINDERS_FILE_NAME = "reminders.log";
+    private static final Duration SNAPSHOT_DEBOUNCE = Duration.ofSeconds(1);
+    private static final int BATCH_OUTPUT_BUFFER_SIZE = 1 << 20;
+    // These work on the whole calendar at once or on its text or binary file, which segments only load in part.
+    private static final List<String> SEGMENTS_CONFLICTS =
+            List.of("--journal", "--reminders", "--binary", "--compact", "--batch", "--export");
+
     /**
      * The main method that starts the Appointment Calendar application.
+     * Without options the text file is rewritten in the background shortly after every change, and on exit.
+     * Pass {@code --journal} to persist every change as it happens by appending to a journal instead,
+     * or {@code --binary} to load from the binary snapshot and save to it on exit instead of the text file.
+     * Pass {@code --compact} to keep the calendar in compact arrays rather than objects, for very large calendars;
+     * it is saved on exit, and with {@code --binary} the snapshot is loaded and written without per-appointment objects.
+     * Pass {@code --server [port]} to serve the calendar as JSON over HTTP instead of running the console interface.
+     * Pass {@code --metrics} to record counters and latencies for loading, saving and every calendar operation
+     * and print them on exit.
+     * Pass {@code --tenants dir} to serve one calendar per tenant from the text files in that directory,
+     * on the port given with {@code --server} or 8080.
+     * Pass {@code --segments} to keep the console calendar in one file per month, loading months only as they are
+     * viewed; the first run moves the text file's appointments into the segments. It can be combined with
+     * {@code --import} and {@code --metrics}, and the options that work on the whole calendar or file are rejected.
+     * Pass {@code --reminders [minutes]} to print a reminder the given number of minutes, or 15, before each
+     * appointment starts and log it to reminders.log, in console or server mode.
+     * Pass {@code --import file.ics} to add the events of an iCalendar file to the calendar on start,
+     * or {@code --export file.ics} to write the calendar to an iCalendar file and exit.
+     * Pass {@code --batch [file]} to run the commands in the file, or on standard input, instead of the
+     * console interface; see BatchRunner for the commands. Standard output then carries only their results,
+     * and the import summary and metrics go to standard error.
      */
     public static void main(String[] args) {
-        System.out.println("Welcome to the Appointment Calendar Application!");
+        // In batch mode standard output carries only the results of the commands.
+        boolean batchMode = Arrays.asList(args).contains("--batch");
+        if (!batchMode) {
+            System.out.println("Welcome to the Appointment Calendar Application!");
+        }
+        boolean journalMode = Arrays.asList(args).contains("--journal");
+        // The journal folds into the text snapshot, so it takes precedence over the binary format.
+        boolean binaryMode = Arrays.asList(args).contains("--binary") && !journalMode;
+        int serverPort = parseServerPort(args);
+        boolean metricsMode = Arrays.asList(args).contains("--metrics");
+        Metrics.setEnabled(metricsMode);
+        String tenantsDirectory = parseOptionValue(args, "--tenants");
+        if (tenantsDirectory != null) {
+            runTenantServer(tenantsDirectory, serverPort >= 0 ? serverPort : 8080, metricsMode);
+            return;
+        }
+        if (Arrays.asList(args).contains("--segments")) {
+            if (serverPort < 0) {
+                String conflicting = findOption(args, SEGMENTS_CONFLICTS);
+                if (conflicting != null) {
+                    System.err.println("Error: " + conflicting + " cannot be combined with --segments.");
+                    return;
+                }
+                runSegmented(metricsMode, parseOptionValue(args, "--import"));
+                return;
+            }
+            // Queries load months as they go, so segments cannot be shared by concurrent clients.
+            System.err.println("Segmented storage is not available in server mode, using the text file.");
+        }
+
+        boolean compactMode = Arrays.asList(args).contains("--compact");
+        if (compactMode && serverPort >= 0) {
+            // The compact calendar has no locking, so it cannot be shared by concurrent clients.
+            System.err.println("The compact calendar is not available in server mode, using the default one.");
+            compactMode = false;
+        }
+
+        CompactAppointmentManager compactCalendar = compactMode ? loadCompact(binaryMode) : null;
+
+        // Background saves read the calendar on their own thread, so they need a thread-safe manager as well.
+        // A batch run saves once when it ends instead, so its commands neither contend for locks nor trigger saves.
+        boolean backgroundSaves = !journalMode && !binaryMode && !batchMode && compactCalendar == null;
+        AppointmentManager calendar;
+        if (compactCalendar != null) {
+            calendar = compactCalendar;
+        } else {
+            calendar = serverPort >= 0 || backgroundSaves ? new ConcurrentAppointmentManager() : new AppointmentManager();
+        }
+        AppointmentManager appointmentManager = metricsMode ? new InstrumentedAppointmentManager(calendar) : calendar;
+        if (compactCalendar == null) {
+            List<Appointment> loadedAppointments = binaryMode ? loadBinary() : FileManager.loadAppointments();
+            appointmentManager.setAppointments(loadedAppointments);
+        }
+
+        AppointmentJournal journal = null;
+        if (journalMode) {
+            try {
+                journal = AppointmentJournal.open(appointmentManager);
+            } catch (IOException e) {
+                System.err.println("Error opening journal, changes will be saved on exit: " + e.getMessage());
+            }
+        }
+
+        String importFileName = parseOptionValue(args, "--import");
+        if (importFileName != null) {
+            importIcs(appointmentManager, importFileName, batchMode ? System.err : System.out);
+        }
+        String exportFileName = parseOptionValue(args, "--export");
+        if (exportFileName != null) {
+            try {
+                IcsFile.exportFile(appointmentManager.getAllAppointments(), new File(exportFileName));
+                System.out.println("Exported the calendar to " + exportFileName);
+            } catch (IOException e) {
+                System.err.println("Error exporting appointments: " + e.getMessage());
+            }
+            save(appointmentManager, journal, null, binaryMode);
+            return;
+        }
+
+        if (batchMode) {
+            runBatch(appointmentManager, parseBatchFile(args));
+            save(appointmentManager, journal, null, binaryMode);
+            if (metricsMode) {
+                System.err.print(Metrics.snapshot());
+            }
+            return;
+        }
+
+        SnapshotWriter snapshotWriter = null;
+        if (backgroundSaves) {
+            snapshotWriter = SnapshotWriter.start(appointmentManager, new File(FileManager.FILE_NAME), SNAPSHOT_DEBOUNCE);
+            if (importFileName != null) {
+                snapshotWriter.requestSave();
+            }
+        }
+
+        int reminderMinutes = parseReminderMinutes(args);
+        Closeable reminders = reminderMinutes >= 0 ? startReminders(appointmentManager, reminderMinutes) : null;
 
-        AppointmentManager appointmentManager = new AppointmentManager();
-        List<Appointment> loadedAppointments = FileManager.loadAppointments();
-        appointmentManager.setAppointments(loadedAppointments);
+        AppointmentJournal openJournal = journal;
+        SnapshotWriter openSnapshotWriter = snapshotWriter;
+        Runnable save = () -> {
+            if (reminders != null) {
+                try {
+                    reminders.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing reminders: " + e.getMessage());
+                }
+            }
+            save(appointmentManager, openJournal, openSnapshotWriter, binaryMode);
+            if (metricsMode) {
+                System.out.print(Metrics.snapshot());
+            }
+        };
+        if (serverPort >= 0) {
+            runServer(appointmentManager, null, serverPort, save);
+        } else {
+            UIManager uiManager = new UIManager(appointmentManager);
+            uiManager.start();
+            save.run();
+        }
+    }
+
+    /**
+     * Persists the calendar on exit: closes the journal, finishes the background saves, or writes the binary
+     * or text snapshot.
+     */
+    private static void save(AppointmentManager appointmentManager, AppointmentJournal journal,
+                             SnapshotWriter snapshotWriter, boolean binaryMode) {
+        if (snapshotWriter != null) {
+            snapshotWriter.close();
+            return;
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+                return;
+            } catch (IOException e) {
+                System.err.println("Error closing journal: " + e.getMessage());
+            }
+        }
+        if (binaryMode) {
+            try {
+                if (appointmentManager instanceof CompactAppointmentManager) {
+                    ((CompactAppointmentManager) appointmentManager).writeBinary(BinarySnapshot.FILE_NAME);
+                } else {
+                    BinarySnapshot.write(appointmentManager.getAllAppointments(), BinarySnapshot.FILE_NAME);
+                }
+                return;
+            } catch (IOException e) {
+                System.err.println("Error saving binary snapshot, falling back to text: " + e.getMessage());
+            }
+        }
+        FileManager.saveAppointments(appointmentManager.getAllAppointments());
+    }
+
+    /**
+     * Runs the console interface on month segments, moving the text file into segments on the first run,
+     * adds the events of the iCalendar file if one is given, and saves the changed months on exit.
+     */
+    private static void runSegmented(boolean metricsMode, String importFileName) {
+        File directory = new File(SegmentedAppointmentManager.DIRECTORY_NAME);
+        boolean migrate = !SegmentedAppointmentManager.exists(directory);
+        SegmentedAppointmentManager segments;
+        try {
+            segments = SegmentedAppointmentManager.open(directory);
+        } catch (IOException e) {
+            System.err.println("Error opening appointment segments: " + e.getMessage());
+            return;
+        }
+        if (migrate) {
+            segments.setAppointments(FileManager.loadAppointments());
+        }
 
+        AppointmentManager appointmentManager = metricsMode ? new InstrumentedAppointmentManager(segments) : segments;
+        if (importFileName != null) {
+            importIcs(appointmentManager, importFileName, System.out);
+        }
         UIManager uiManager = new UIManager(appointmentManager);
         uiManager.start();
+        try {
+            segments.save();
+        } catch (IOException e) {
+            System.err.println("Error saving appointment segments, falling back to text: " + e.getMessage());
+            FileManager.saveAppointments(segments.getAllAppointments());
+        }
+        if (metricsMode) {
+            System.out.print(Metrics.snapshot());
+        }
+    }
 
-        FileManager.saveAppointments(appointmentManager.getAllAppointments());
+    /**
+     * Loads the binary snapshot, falling back to the text file if there is no usable snapshot.
+     */
+    private static List<Appointment> loadBinary() {
+        if (new File(BinarySnapshot.FILE_NAME).exists()) {
+            try {
+                return BinarySnapshot.load(BinarySnapshot.FILE_NAME);
+            } catch (IOException e) {
+                System.err.println("Error loading binary snapshot: " + e.getMessage());
+            }
+        }
+        return FileManager.loadAppointments();
+    }
+
+    /**
+     * Loads a compact calendar from the binary snapshot, copying its records straight in, or from the text file
+     * if there is no usable snapshot or binary mode is off.
+     * Returns null if the appointments cannot be held compactly, e.g. because a code is not a letter and digits.
+     */
+    private static CompactAppointmentManager loadCompact(boolean binaryMode) {
+        CompactAppointmentManager calendar = new CompactAppointmentManager();
+        if (binaryMode && new File(BinarySnapshot.FILE_NAME).exists()) {
+            try {
+                calendar.loadBinary(BinarySnapshot.FILE_NAME);
+                return calendar;
+            } catch (IOException e) {
+                System.err.println("Error loading binary snapshot: " + e.getMessage());
+            }
+        }
+        try {
+            calendar.setAppointments(FileManager.loadAppointments());
+            return calendar;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error loading the compact calendar, using the default one: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the port given with {@code --server}, 8080 if no port follows it, or -1 if server mode is off.
+     */
+    private static int parseServerPort(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--server")) {
+                if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                    return Integer.parseInt(args[i + 1]);
+                }
+                return 8080;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the minutes given with {@code --reminders}, the default if no number follows it,
+     * or -1 if reminders are off.
+     */
+    private static int parseReminderMinutes(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--reminders")) {
+                if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                    return Integer.parseInt(args[i + 1]);
+                }
+                return DEFAULT_REMINDER_MINUTES;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Starts firing reminders for the calendar's appointments to the console and the reminders file,
+     * and returns what stops them.
+     */
+    private static Closeable startReminders(AppointmentManager appointmentManager, int minutes) {
+        ReminderScheduler scheduler = new ReminderScheduler(Duration.ofMinutes(minutes), LocalDateTime.now());
+        scheduler.addSink(ReminderSink.console());
+        FileReminderSink fileSink = null;
+        try {
+            fileSink = new FileReminderSink(new File(REMINDERS_FILE_NAME));
+            scheduler.addSink(fileSink);
+        } catch (IOException e) {
+            System.err.println("Error opening reminders file, reminders are only printed: " + e.getMessage());
+        }
+        scheduler.watch(appointmentManager);
+        scheduler.start(Clock.systemDefaultZone());
+        FileReminderSink openFileSink = fileSink;
+        return () -> {
+            scheduler.close();
+            if (openFileSink != null) {
+                openFileSink.close();
+            }
+        };
+    }
+
+    /**
+     * Returns the file given with {@code --batch}, or null if no file follows it and commands come from standard input.
+     */
+    private static String parseBatchFile(String[] args) {
+        String fileName = parseOptionValue(args, "--batch");
+        return fileName == null || fileName.startsWith("--") ? null : fileName;
+    }
+
+    /**
+     * Runs the commands of the batch file, or of standard input if it is null, writing results to standard
+     * output through one large buffer, and reports the throughput on standard error.
+     */
+    private static void runBatch(AppointmentManager appointmentManager, String fileName) {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out),
+                StandardCharsets.UTF_8), BATCH_OUTPUT_BUFFER_SIZE);
+        long start = System.nanoTime();
+        try (Reader script = fileName == null
+                ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                : Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            long commands = new BatchRunner(appointmentManager, out).run(script);
+            long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            System.err.println("Ran " + commands + " commands in " + millis + " ms ("
+                    + commands * 1000 / millis + " commands/s)");
+        } catch (IOException e) {
+            System.err.println("Error running batch: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the first of the given options that appears in the arguments, or null if none does.
+     */
+    private static String findOption(String[] args, List<String> options) {
+        for (String arg : args) {
+            if (options.contains(arg)) {
+                return arg;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the argument following the given option, e.g. the directory given with {@code --tenants},
+     * or null if the option is not given.
+     */
+    private static String parseOptionValue(String[] args, String option) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(option)) {
+                return args[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the events of an iCalendar file to the calendar and reports how many were added to the given stream.
+     */
+    private static void importIcs(AppointmentManager appointmentManager, String fileName, PrintStream status) {
+        try {
+            int imported = IcsFile.importFile(new File(fileName), appointmentManager);
+            status.println("Imported " + imported + " appointments from " + fileName);
+        } catch (IOException e) {
+            System.err.println("Error importing appointments: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Serves the calendars of every tenant in the directory, writing back changed calendars on exit.
+     */
+    private static void runTenantServer(String directory, int port, boolean metricsMode) {
+        TenantRegistry tenants;
+        try {
+            tenants = new TenantRegistry(new File(directory), MAX_CACHED_TENANTS, MAX_CACHED_APPOINTMENTS);
+        } catch (IOException e) {
+            System.err.println("Error opening tenant directory: " + e.getMessage());
+            return;
+        }
+        runServer(null, tenants, port, () -> {
+            tenants.close();
+            if (metricsMode) {
+                System.out.print(Metrics.snapshot());
+            }
+        });
+    }
+
+    /**
+     * Serves the calendar, or the tenants' calendars if a registry is given, over HTTP until Enter is pressed
+     * or the process is asked to shut down, then stops the server and runs the save action.
+     */
+    private static void runServer(AppointmentManager appointmentManager, TenantRegistry tenants, int port,
+                                  Runnable save) {
+        CalendarServer server;
+        try {
+            server = tenants == null
+                    ? new CalendarServer(appointmentManager, port) : new CalendarServer(tenants, port);
+        } catch (IOException e) {
+            System.err.println("Error starting server: " + e.getMessage());
+            save.run();
+            return;
+        }
+        // Ctrl+C, or a kill when running without a console, still saves the calendar.
+        Thread shutdownHook = new Thread(() -> {
+            server.stop(1);
+            save.run();
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        server.start();
+        System.out.println("Serving appointments on http://localhost:" + server.getPort()
+                + (tenants == null ? "/appointments" : "/tenants/{tenant}/appointments"));
+        System.out.println("Press Enter to stop.");
+
+        Scanner scanner = new Scanner(System.in);
+        if (!scanner.hasNextLine()) {
+            // No console to read from; the shutdown hook takes care of stopping.
+            return;
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down, so the hook is stopping the server and saving.
+            return;
+        }
+        server.stop(1);
+        save.run();
     }
-}
\ No newline at end of file
+}
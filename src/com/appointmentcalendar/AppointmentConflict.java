@@ -0,0 +1,40 @@
+/**
+ * Represents a pair of appointments whose time ranges overlap.
+ * The first appointment never starts after the second one.
+ */
+package com.appointmentcalendar;
+
+public class AppointmentConflict {
+    private final Appointment first;
+    private final Appointment second;
+
+    /**
+     * Constructs a new AppointmentConflict between the two given appointments.
+     */
+    public AppointmentConflict(Appointment first, Appointment second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * Returns the appointment that starts first.
+     */
+    public Appointment getFirst() {
+        return first;
+    }
+
+    /**
+     * Returns the appointment that starts second.
+     */
+    public Appointment getSecond() {
+        return second;
+    }
+
+    /**
+     * Returns a string representation of the conflict.
+     */
+    @Override
+    public String toString() {
+        return String.format("Conflict [%s] overlaps [%s]", first.getCode(), second.getCode());
+    }
+}
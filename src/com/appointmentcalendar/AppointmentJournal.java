@@ -0,0 +1,313 @@
+/**
+ * Persists every change to an AppointmentManager as it happens by appending one record per
+ * added or deleted appointment to a journal file next to the snapshot.
+ * Records reach the operating system immediately and are forced to disk in batches (group commit).
+ * Once the journal grows past a threshold it is folded into a new snapshot on a background thread.
+ */
+package com.appointmentcalendar;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class AppointmentJournal implements AppointmentListener, Closeable {
+    private static final long FLUSH_INTERVAL_MS = 20;
+    private static final int COMPACTION_THRESHOLD = 10_000;
+
+    private final AppointmentManager manager;
+    private final File snapshotFile;
+    private final File journalFile;
+    private final File compactingFile;
+    private final ExecutorService compactor;
+    private final Thread flusher;
+    // Held while records are forced to disk, so a sync waits for one already in progress.
+    private final Object syncLock = new Object();
+
+    private FileChannel channel;
+    private boolean unflushed;
+    private boolean closed;
+    private int recordsSinceSnapshot;
+    private Future<?> compaction;
+
+    private AppointmentJournal(AppointmentManager manager, String snapshotFileName) {
+        this.manager = manager;
+        this.snapshotFile = new File(snapshotFileName);
+        this.journalFile = new File(snapshotFileName + ".journal");
+        this.compactingFile = new File(snapshotFileName + ".journal.old");
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher = new Thread(this::flushLoop, "journal-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /**
+     * Opens the journal of the default appointments file for the given manager.
+     * @see #open(AppointmentManager, String)
+     */
+    public static AppointmentJournal open(AppointmentManager manager) throws IOException {
+        return open(manager, FileManager.FILE_NAME);
+    }
+
+    /**
+     * Opens the journal that belongs to the given snapshot file.
+     * The manager is expected to already hold the snapshot; any journaled changes are replayed
+     * on top of it and folded into a fresh snapshot before the journal starts recording.
+     */
+    public static AppointmentJournal open(AppointmentManager manager, String snapshotFileName) throws IOException {
+        AppointmentJournal journal = new AppointmentJournal(manager, snapshotFileName);
+        int replayed = journal.replay(journal.compactingFile) + journal.replay(journal.journalFile);
+        if (replayed > 0 || journal.compactingFile.exists()) {
+            journal.writeSnapshot(manager.getAllAppointments());
+            Files.deleteIfExists(journal.compactingFile.toPath());
+        }
+        journal.channel = openChannel(journal.journalFile, true);
+        journal.flusher.start();
+        manager.addListener(journal);
+        return journal;
+    }
+
+    /**
+     * Records an added appointment.
+     */
+    @Override
+    public void appointmentAdded(Appointment appointment) {
+        append("A|" + FileManager.formatAppointment(appointment));
+    }
+
+    /**
+     * Records a deleted appointment.
+     */
+    @Override
+    public void appointmentDeleted(Appointment appointment) {
+        append("D|" + appointment.getCode());
+    }
+
+    /**
+     * Blocks until every record appended so far has been forced to disk.
+     * The journal lock is held only to take the pending records, not while they are forced,
+     * so appends carry on during the fsync.
+     */
+    public void sync() throws IOException {
+        synchronized (syncLock) {
+            FileChannel flushing;
+            synchronized (this) {
+                if (!unflushed) {
+                    return;
+                }
+                unflushed = false;
+                flushing = channel;
+            }
+            try {
+                flushing.force(false);
+            } catch (ClosedChannelException e) {
+                // The journal was rotated or closed meanwhile, which forces the channel before closing it.
+            } catch (IOException e) {
+                synchronized (this) {
+                    if (channel == flushing) {
+                        unflushed = true;
+                    }
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Stops recording, folds the journal into a final snapshot and releases the journal file.
+     */
+    @Override
+    public void close() throws IOException {
+        manager.removeListener(this);
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+            compactor.shutdown();
+            compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the journal", e);
+        }
+        synchronized (this) {
+            channel.force(false);
+            channel.close();
+        }
+        writeSnapshot(manager.getAllAppointments());
+        Files.deleteIfExists(journalFile.toPath());
+    }
+
+    private void append(String record) {
+        ByteBuffer buffer = ByteBuffer.wrap((record + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                unflushed = true;
+            } catch (IOException e) {
+                System.err.println("Error writing to journal: " + e.getMessage());
+                return;
+            }
+            recordsSinceSnapshot++;
+            if (recordsSinceSnapshot >= COMPACTION_THRESHOLD && (compaction == null || compaction.isDone())) {
+                // A leftover journal from a failed compaction must not be overwritten, so it is folded again.
+                if (compactingFile.exists()) {
+                    retryCompaction();
+                } else {
+                    startCompaction();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forces pending records to disk at most every FLUSH_INTERVAL_MS, so that many appends share one fsync.
+     */
+    private void flushLoop() {
+        while (true) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    wait(FLUSH_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            try {
+                sync();
+            } catch (IOException e) {
+                System.err.println("Error flushing journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Moves the current journal aside and writes the snapshot it belongs to in the background.
+     * Called with the journal lock held, on the thread that changed the manager, so the copy taken
+     * here matches the journal exactly; the appointments are copied, so later edits do not reach it.
+     */
+    private void startCompaction() {
+        List<Appointment> snapshot = manager.snapshot();
+        try {
+            channel.force(false);
+            channel.close();
+            Files.move(journalFile.toPath(), compactingFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            channel = openChannel(journalFile, false);
+            unflushed = false;
+            recordsSinceSnapshot = 0;
+        } catch (IOException e) {
+            System.err.println("Error rotating journal: " + e.getMessage());
+            try {
+                channel = openChannel(journalFile, true);
+            } catch (IOException reopenError) {
+                System.err.println("Error reopening journal: " + reopenError.getMessage());
+            }
+            return;
+        }
+        compaction = compactor.submit(() -> fold(snapshot));
+    }
+
+    /**
+     * Folds the journal left behind by a failed compaction into a snapshot of the whole calendar, in the
+     * background. The current journal keeps recording; replaying it over the newer snapshot is harmless.
+     */
+    private void retryCompaction() {
+        List<Appointment> snapshot = manager.snapshot();
+        recordsSinceSnapshot = 0;
+        compaction = compactor.submit(() -> fold(snapshot));
+    }
+
+    /**
+     * Writes the snapshot and deletes the journal it replaces. On failure the journal is kept and folded
+     * again once as many changes as trigger a compaction have been recorded.
+     */
+    private void fold(List<Appointment> snapshot) {
+        try {
+            writeSnapshot(snapshot);
+            Files.deleteIfExists(compactingFile.toPath());
+        } catch (IOException e) {
+            System.err.println("Error compacting journal, retrying after " + COMPACTION_THRESHOLD
+                    + " more changes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a snapshot to a temporary file and atomically renames it over the snapshot file.
+     */
+    private void writeSnapshot(List<Appointment> appointments) throws IOException {
+        File temp = new File(snapshotFile.getPath() + ".tmp");
+        FileManager.writeAppointments(appointments, temp);
+        Files.move(temp.toPath(), snapshotFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Applies the records of a journal file to the manager.
+     * Replaying is idempotent: adds replace appointments with the same code and deletes of
+     * missing codes are ignored. A torn last record left by a crash is reported and skipped.
+     * Returns the number of records applied.
+     */
+    private int replay(File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        int applied = 0;
+        int lineNumber = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.startsWith("A|")) {
+                    Appointment app = FileManager.parseAppointment(line.substring(2));
+                    if (app != null) {
+                        manager.addAppointment(app);
+                        applied++;
+                        continue;
+                    }
+                } else if (line.startsWith("D|") && line.length() > 2) {
+                    manager.deleteAppointment(line.substring(2));
+                    applied++;
+                    continue;
+                }
+                System.err.println("Skipping malformed journal record at " + file.getName() + ":" + lineNumber);
+            }
+        }
+        return applied;
+    }
+
+    private static FileChannel openChannel(File file, boolean append) throws IOException {
+        if (append) {
+            return FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Receives notifications about appointments being added to, changed in or deleted from an AppointmentManager.
+ * Listeners are called on the thread that performed the change, after the change has been applied.
+ */
+package com.appointmentcalendar;
+
+public interface AppointmentListener {
+    /**
+     * Called after an appointment has been added.
+     */
+    void appointmentAdded(Appointment appointment);
+
+    /**
+     * Called after an appointment has been deleted.
+     */
+    void appointmentDeleted(Appointment appointment);
+
+    /**
+     * Called after a held appointment has been changed through its setters.
+     * By default this is treated as deleting the appointment as it was and adding it again.
+     * @param previous A copy of the appointment as it was before the change.
+     * @param appointment The changed appointment.
+     */
+    default void appointmentUpdated(Appointment previous, Appointment appointment) {
+        appointmentDeleted(previous);
+        appointmentAdded(appointment);
+    }
+
+    /**
+     * Called after every appointment has been replaced at once, as by setAppointments.
+     * The appointments replaced and added are not reported one by one. Does nothing by default.
+     */
+    default void appointmentsReplaced() {
+    }
+}
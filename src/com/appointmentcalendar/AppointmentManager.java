@@ -4,127 +4,797 @@
  */
 package com.appointmentcalendar;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.stream.Collectors;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.function.Predicate;
 
 public class AppointmentManager {
-    private List<Appointment> appointments;
-    private Map<String, Integer> categoryCounters;
+    /**
+     * The number of most recent changes kept for changesSince.
+     */
+    static final int CHANGE_FEED_CAPACITY = 4096;
 
     /**
-     * Initializes a new AppointmentManager with an empty list of appointments
+     * Orders appointments by start time, breaking ties on the appointment code.
+     */
+    static final Comparator<Appointment> START_TIME_ORDER =
+            Comparator.comparing(Appointment::getStartTime).thenComparing(Appointment::getCode);
+
+    private NavigableSet<Appointment> appointments;
+    private List<RecurringAppointment> recurringAppointments;
+    private Map<String, Appointment> appointmentsByCode;
+    private IntervalTree intervals;
+    private Map<Category, NavigableSet<Appointment>> appointmentsByCategory;
+    private Map<Category, List<RecurringAppointment>> recurringByCategory;
+    private Map<Character, Integer> categoryCounters;
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final List<AppointmentListener> listeners = new ArrayList<>();
+    private final ChangeFeed changeFeed = new ChangeFeed(CHANGE_FEED_CAPACITY);
+
+    /**
+     * Initializes a new AppointmentManager with an empty set of appointments
      * and initializes category counters.
      */
     public AppointmentManager() {
-        this.appointments = new ArrayList<>();
+        this.appointments = new TreeSet<>(START_TIME_ORDER);
+        this.recurringAppointments = new ArrayList<>();
+        this.appointmentsByCode = new HashMap<>();
+        this.intervals = new IntervalTree();
+        this.appointmentsByCategory = new EnumMap<>(Category.class);
+        this.recurringByCategory = new EnumMap<>(Category.class);
+        for (Category category : Category.values()) {
+            appointmentsByCategory.put(category, new TreeSet<>(START_TIME_ORDER));
+            recurringByCategory.put(category, new ArrayList<>());
+        }
         this.categoryCounters = new HashMap<>();
-        categoryCounters.put("W", 0);
-        categoryCounters.put("P", 0);
-        categoryCounters.put("M", 0);
-        categoryCounters.put("O", 0);
+        for (Category category : Category.values()) {
+            categoryCounters.put(category.getCode(), 0);
+        }
     }
 
     /**
      * Adds a new appointment to the collection.
+     * An existing appointment with the same code is replaced.
      */
     public void addAppointment(Appointment appointment) {
-        appointments.add(appointment);
+        Appointment previous = index(appointment);
+        updateCategoryCounter(appointment.getCode());
+        if (previous != null) {
+            notifyDeleted(previous);
+        }
+        notifyAdded(appointment);
+    }
+
+    /**
+     * Registers a listener to be notified of added, changed and deleted appointments.
+     * Bulk replacement through setAppointments is only reported as a whole, through appointmentsReplaced.
+     */
+    public void addListener(AppointmentListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a previously added listener.
+     */
+    public void removeListener(AppointmentListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Records an added appointment in the change feed and tells every listener.
+     */
+    void notifyAdded(Appointment appointment) {
+        changeFeed.record(ChangeFeed.Type.ADDED, appointment);
+        for (AppointmentListener listener : listeners) {
+            listener.appointmentAdded(appointment);
+        }
+    }
+
+    /**
+     * Records a deleted appointment in the change feed and tells every listener.
+     */
+    void notifyDeleted(Appointment appointment) {
+        changeFeed.record(ChangeFeed.Type.DELETED, appointment);
+        for (AppointmentListener listener : listeners) {
+            listener.appointmentDeleted(appointment);
+        }
+    }
+
+    /**
+     * Records a changed appointment in the change feed and tells every listener.
+     */
+    void notifyUpdated(Appointment previous, Appointment appointment) {
+        changeFeed.record(ChangeFeed.Type.UPDATED, appointment);
+        for (AppointmentListener listener : listeners) {
+            listener.appointmentUpdated(previous, appointment);
+        }
+    }
+
+    /**
+     * Drops the changes kept for changesSince, so every client starts over from a snapshot, and tells every
+     * listener that the calendar was replaced. Called when the calendar is replaced as a whole.
+     */
+    void notifyReplaced() {
+        changeFeed.reset();
+        for (AppointmentListener listener : listeners) {
+            listener.appointmentsReplaced();
+        }
+    }
+
+    /**
+     * Returns what a client that has seen every change up to the given sequence number needs to catch up:
+     * the changes made since, or a snapshot of every appointment if some of them are no longer kept.
+     * A new client passes -1 to get a snapshot. The cost grows with the number of changes, not with the calendar.
+     */
+    public ChangeFeed.Changes changesSince(long sequence) {
+        return changesSince(changeFeed.getEpoch(), sequence);
+    }
+
+    /**
+     * Returns what a client needs to catch up, as changesSince(long) does, given the epoch that came with its
+     * sequence number. A client holding the epoch of another feed, such as that of an earlier run of the server,
+     * or no epoch at all, gets a snapshot.
+     */
+    public ChangeFeed.Changes changesSince(String epoch, long sequence) {
+        String current = changeFeed.getEpoch();
+        List<ChangeFeed.Change> changes = current.equals(epoch) ? changeFeed.since(sequence) : null;
+        if (changes != null) {
+            return new ChangeFeed.Changes(current, changeFeed.getSequence(), changes, null);
+        }
+        return new ChangeFeed.Changes(current, changeFeed.getSequence(), null, getAllAppointments());
+    }
+
+    /**
+     * Applies a change to a held appointment's fields, moving it in every index, and reports it.
+     * An appointment the calendar no longer holds is just changed.
+     */
+    void edit(Appointment appointment, Runnable change) {
+        if (appointmentsByCode.get(codeKey(appointment.getCode())) != appointment) {
+            change.run();
+            return;
+        }
+        Appointment previous = appointment.copy();
+        unindex(appointment);
+        try {
+            change.run();
+        } finally {
+            index(appointment);
+        }
+        notifyUpdated(previous, appointment);
+    }
+
+    /**
+     * Returns the appointment with the given code (case-insensitive), or null if there is none.
+     */
+    public Appointment findByCode(String code) {
+        return appointmentsByCode.get(codeKey(code));
     }
 
     /**
      * Returns a new list containing all appointments.
+     * A recurring appointment appears once, as its series record.
      */
     public List<Appointment> getAllAppointments() {
-        return new ArrayList<>(appointments);
+        return getSortedAppointments();
     }
 
     /**
-     * Returns a list of appointments for a specific day.
+     * Returns a list of appointments for a specific day, sorted by start time.
      */
     public List<Appointment> getAppointmentsForDay(LocalDateTime date) {
-        return appointments.stream()
-                .filter(app -> app.getStartTime().toLocalDate().equals(date.toLocalDate()))
-                .collect(Collectors.toList());
+        LocalDateTime startOfDay = date.toLocalDate().atStartOfDay();
+        return getAppointmentsBetween(startOfDay, startOfDay.plusDays(1));
+    }
+
+    /**
+     * Returns the appointments starting at or after {@code from} and before {@code to},
+     * sorted by start time. Recurring appointments contribute their occurrences within the range.
+     */
+    public List<Appointment> getAppointmentsBetween(LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            return new ArrayList<>();
+        }
+        if (recurringAppointments.isEmpty()) {
+            return new ArrayList<>(appointments.subSet(probe(from), true, probe(to), false));
+        }
+        List<Appointment> result = new ArrayList<>();
+        Iterator<Appointment> it = occurrencesFrom(appointments, recurringAppointments, probe(from), true);
+        while (it.hasNext()) {
+            Appointment app = it.next();
+            if (!app.getStartTime().isBefore(to)) {
+                break;
+            }
+            result.add(app);
+        }
+        return result;
     }
 
     /**
      * Returns the next upcoming appointment after the current time.
      */
     public Appointment getNextUpcomingAppointment() {
-        LocalDateTime now = LocalDateTime.now();
-        return appointments.stream()
-                .filter(app -> app.getStartTime().isAfter(now))
-                .min((a1, a2) -> a1.getStartTime().compareTo(a2.getStartTime()))
-                .orElse(null);
+        return getNextAppointmentAfter(LocalDateTime.now());
+    }
+
+    /**
+     * Returns the first appointment starting strictly after the given time, or null if there is none.
+     */
+    public Appointment getNextAppointmentAfter(LocalDateTime time) {
+        Appointment next = appointments.ceiling(probe(time.plusNanos(1)));
+        for (RecurringAppointment series : recurringAppointments) {
+            Appointment occurrence = series.nextOccurrenceAfter(time);
+            if (occurrence != null && (next == null || START_TIME_ORDER.compare(occurrence, next) < 0)) {
+                next = occurrence;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Returns a read-only iterator over the appointments starting at or after the given time, in start order.
+     * Appointments are visited lazily, so callers that stop early never touch the rest of the calendar.
+     * Recurring appointments contribute their occurrences.
+     */
+    public Iterator<Appointment> iterateFrom(LocalDateTime from) {
+        return occurrencesFrom(appointments, recurringAppointments, probe(from), true);
+    }
+
+    /**
+     * Returns up to {@code limit} appointments in start order that come after {@code afterKey} and match the filter.
+     * @param filter The condition appointments must meet, or null to accept every appointment.
+     * @param afterKey The last appointment of the previous page, or null to start from the beginning.
+     *                 The key does not need to still be in the calendar.
+     * @param limit The maximum number of appointments to return.
+     * @return A new list holding the page.
+     */
+    public List<Appointment> page(Predicate<Appointment> filter, Appointment afterKey, int limit) {
+        return page(null, null, filter, afterKey, limit);
+    }
+
+    /**
+     * Returns up to {@code limit} appointments in start order that start within [from, to),
+     * come after {@code afterKey} and match the filter.
+     * Only the appointments between the page start and the last returned row are visited.
+     * Recurring appointments contribute their occurrences.
+     * @param from The earliest start time to include, or null for no lower bound.
+     * @param to The start time to stop before, or null for no upper bound.
+     * @param filter The condition appointments must meet, or null to accept every appointment.
+     * @param afterKey The last appointment of the previous page, or null to start at {@code from}.
+     * @param limit The maximum number of appointments to return.
+     * @return A new list holding the page.
+     */
+    public List<Appointment> page(LocalDateTime from, LocalDateTime to, Predicate<Appointment> filter,
+                                  Appointment afterKey, int limit) {
+        return page(appointments, recurringAppointments, from, to, filter, afterKey, limit);
+    }
+
+    /**
+     * Returns the number of appointments in a category, counting a recurring appointment once.
+     * The count is kept by the category index, so no appointments are visited.
+     */
+    public int countByCategory(Category category) {
+        return appointmentsByCategory.get(category).size() + recurringByCategory.get(category).size();
+    }
+
+    /**
+     * Returns the appointments of a category starting at or after {@code from} and before {@code to},
+     * sorted by start time. Only the category's own index is read, so other categories are never visited.
+     */
+    public List<Appointment> getAppointmentsBetween(Category category, LocalDateTime from, LocalDateTime to) {
+        return page(category, from, to, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns up to {@code limit} appointments of a category in start order that start within [from, to)
+     * and come after {@code afterKey}. The date range is applied to the category index,
+     * so only appointments that are returned are visited.
+     * @param category The category to list, or null for every category.
+     * @param from The earliest start time to include, or null for no lower bound.
+     * @param to The start time to stop before, or null for no upper bound.
+     * @param afterKey The last appointment of the previous page, or null to start at {@code from}.
+     * @param limit The maximum number of appointments to return.
+     * @return A new list holding the page.
+     */
+    public List<Appointment> page(Category category, LocalDateTime from, LocalDateTime to,
+                                  Appointment afterKey, int limit) {
+        if (category == null) {
+            return page(from, to, null, afterKey, limit);
+        }
+        return page(appointmentsByCategory.get(category), recurringByCategory.get(category),
+                from, to, null, afterKey, limit);
+    }
+
+    /**
+     * Pages through the given one-off appointments and series, as described for the public page methods.
+     */
+    private static List<Appointment> page(NavigableSet<Appointment> oneOffs, List<RecurringAppointment> series,
+                                          LocalDateTime from, LocalDateTime to, Predicate<Appointment> filter,
+                                          Appointment afterKey, int limit) {
+        if ((from != null && to != null && !from.isBefore(to))
+                || (afterKey != null && to != null && START_TIME_ORDER.compare(afterKey, probe(to)) >= 0)) {
+            return new ArrayList<>();
+        }
+        Iterator<Appointment> view;
+        if (afterKey != null && (from == null || START_TIME_ORDER.compare(afterKey, probe(from)) >= 0)) {
+            view = occurrencesFrom(oneOffs, series, afterKey, false);
+        } else {
+            view = occurrencesFrom(oneOffs, series, from == null ? null : probe(from), true);
+        }
+
+        List<Appointment> page = new ArrayList<>(Math.min(limit, 64));
+        while (page.size() < limit && view.hasNext()) {
+            Appointment app = view.next();
+            if (to != null && !app.getStartTime().isBefore(to)) {
+                break;
+            }
+            if (filter == null || filter.test(app)) {
+                page.add(app);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Returns up to {@code limit} appointments whose descriptions match the query, closest in time to the
+     * reference first. Words must all occur, alternatives are separated by OR, and a word ending in *
+     * matches any word with that prefix, e.g. {@code "dent* OR doctor checkup"}. Matching ignores case and accents.
+     * A recurring appointment is returned as its first occurrence at or after the reference.
+     */
+    public List<Appointment> search(String query, LocalDateTime reference, int limit) {
+        SearchIndex.Query parsed = SearchIndex.Query.parse(query);
+        if (parsed.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return searchIndex.find(parsed, reference, limit);
     }
 
     /**
      * Returns a new list of all appointments sorted chronologically by start time.
-     * This method does not modify the original list of appointments.
+     * This method does not modify the original set of appointments.
+     * A recurring appointment appears once, at the start of its first occurrence.
      *
      * @return A new ArrayList containing all appointments sorted by start time.
      */
     public List<Appointment> getSortedAppointments() {
-        List<Appointment> sortedList = new ArrayList<>(appointments);
-        sortedList.sort(Comparator.comparing(Appointment::getStartTime));
-        return sortedList;
+        List<Appointment> sorted = new ArrayList<>(appointments);
+        if (!recurringAppointments.isEmpty()) {
+            sorted.addAll(recurringAppointments);
+            sorted.sort(START_TIME_ORDER);
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns copies of all appointments in start order, which later changes to the calendar or to its
+     * appointments do not affect, so they can be written out on another thread.
+     */
+    public List<Appointment> snapshot() {
+        List<Appointment> sorted = getSortedAppointments();
+        for (int i = 0; i < sorted.size(); i++) {
+            sorted.set(i, sorted.get(i).copy());
+        }
+        return sorted;
     }
 
     /**
      * Deletes an appointment with the given code.
+     * Deleting a recurring appointment removes the whole series.
      * Returns true if an appointment was deleted, false otherwise.
      */
     public boolean deleteAppointment(String code) {
-        return appointments.removeIf(app -> app.getCode().equalsIgnoreCase(code));
+        Appointment removed = appointmentsByCode.get(codeKey(code));
+        if (removed == null) {
+            return false;
+        }
+        unindex(removed);
+        notifyDeleted(removed);
+        return true;
     }
 
     /**
      * Sets the list of appointments and resets category counters.
+     * Clients following the change feed have to start over from a snapshot.
      */
     public void setAppointments(List<Appointment> appointments) {
-        this.appointments = new ArrayList<>(appointments);
+        this.appointments = new TreeSet<>(START_TIME_ORDER);
+        this.recurringAppointments = new ArrayList<>();
+        this.appointmentsByCode = new HashMap<>();
+        this.intervals.clear();
+        this.searchIndex.clear();
+        for (Category category : Category.values()) {
+            appointmentsByCategory.get(category).clear();
+            recurringByCategory.get(category).clear();
+        }
+        for (Appointment app : latestInStartOrder(appointments)) {
+            index(app);
+        }
         resetCategoryCounters();
+        notifyReplaced();
+    }
+
+    /**
+     * Adds a batch of appointments as addAppointment would add each of them, replacing held appointments
+     * with the same code, but indexes them in start order and raises the category counters once for the batch.
+     * Within the batch a later appointment replaces an earlier one with the same code, and only the later
+     * one is reported to listeners.
+     */
+    public void addAll(List<Appointment> batch) {
+        List<Appointment> ordered = latestInStartOrder(batch);
+        List<Appointment> replaced = new ArrayList<>();
+        for (Appointment app : ordered) {
+            Appointment previous = index(app);
+            if (previous != null) {
+                replaced.add(previous);
+            }
+        }
+        Map<Character, Integer> highest = new HashMap<>();
+        for (Appointment app : ordered) {
+            int number = codeNumber(app.getCode());
+            if (number >= 0) {
+                highest.merge(Character.toUpperCase(app.getCode().charAt(0)), number, Math::max);
+            }
+        }
+        highest.forEach((categoryCode, number) -> categoryCounters.merge(categoryCode, number, Math::max));
+        for (Appointment previous : replaced) {
+            notifyDeleted(previous);
+        }
+        for (Appointment app : ordered) {
+            notifyAdded(app);
+        }
+    }
+
+    /**
+     * Returns the appointments sorted in start order, keeping only the last one of each code.
+     * Indexing in start order makes every tree insert land next to the previous one instead of at a random place.
+     */
+    static List<Appointment> latestInStartOrder(List<Appointment> appointments) {
+        Map<String, Appointment> latestByCode = new HashMap<>();
+        for (Appointment app : appointments) {
+            latestByCode.put(codeKey(app.getCode()), app);
+        }
+        List<Appointment> ordered = new ArrayList<>(latestByCode.values());
+        ordered.sort(START_TIME_ORDER);
+        return ordered;
+    }
+
+    /**
+     * Adds appointments read from storage to those already held, without notifying listeners.
+     * Appointments with a code already in use replace the held ones.
+     */
+    void addLoaded(List<Appointment> loaded) {
+        for (Appointment app : loaded) {
+            index(app);
+            updateCategoryCounter(app.getCode());
+        }
+    }
+
+    /**
+     * Raises the counter of a category letter so that generated codes of that letter start above the number.
+     */
+    void reserveCodes(char categoryCode, int highestNumber) {
+        categoryCounters.merge(Character.toUpperCase(categoryCode), highestNumber, Math::max);
+    }
+
+    /**
+     * Returns the one-off appointments starting at or after {@code from} and before {@code to}, sorted by start time.
+     */
+    List<Appointment> getOneOffAppointmentsBetween(LocalDateTime from, LocalDateTime to) {
+        return new ArrayList<>(appointments.subSet(probe(from), true, probe(to), false));
+    }
+
+    /**
+     * Returns the recurring appointments as series records.
+     */
+    List<RecurringAppointment> getRecurringAppointments() {
+        return new ArrayList<>(recurringAppointments);
+    }
+
+    /**
+     * Adds an appointment to every index, replacing any appointment with the same code.
+     * Returns the replaced appointment, or null if the code was not in use.
+     */
+    private Appointment index(Appointment appointment) {
+        Appointment previous = appointmentsByCode.get(codeKey(appointment.getCode()));
+        if (previous != null) {
+            unindex(previous);
+        }
+        appointmentsByCode.put(codeKey(appointment.getCode()), appointment);
+        appointment.owner = this;
+        searchIndex.add(appointment);
+        Category category = Category.fromAppointmentCode(appointment.getCode());
+        if (appointment instanceof RecurringAppointment) {
+            recurringAppointments.add((RecurringAppointment) appointment);
+            if (category != null) {
+                recurringByCategory.get(category).add((RecurringAppointment) appointment);
+            }
+        } else {
+            appointments.add(appointment);
+            intervals.insert(appointment);
+            if (category != null) {
+                appointmentsByCategory.get(category).add(appointment);
+            }
+        }
+        return previous;
+    }
+
+    /**
+     * Removes an appointment from every index.
+     */
+    private void unindex(Appointment appointment) {
+        appointmentsByCode.remove(codeKey(appointment.getCode()));
+        if (appointment.owner == this) {
+            appointment.owner = null;
+        }
+        searchIndex.remove(appointment);
+        Category category = Category.fromAppointmentCode(appointment.getCode());
+        if (appointment instanceof RecurringAppointment) {
+            recurringAppointments.remove(appointment);
+            if (category != null) {
+                recurringByCategory.get(category).remove(appointment);
+            }
+        } else {
+            appointments.remove(appointment);
+            intervals.remove(appointment);
+            if (category != null) {
+                appointmentsByCategory.get(category).remove(appointment);
+            }
+        }
+    }
+
+    /**
+     * Returns the one-off appointments and the occurrences of every series that come after the lower key,
+     * merged in start order.
+     * @param oneOffs The one-off appointments to include, in start order.
+     * @param series The recurring appointments whose occurrences are included.
+     * @param lowerKey The key to start from, or null to start at the beginning of the calendar.
+     * @param inclusive Whether an appointment equal to the lower key is included.
+     */
+    private static Iterator<Appointment> occurrencesFrom(NavigableSet<Appointment> oneOffs,
+                                                         List<RecurringAppointment> series,
+                                                         Appointment lowerKey, boolean inclusive) {
+        NavigableSet<Appointment> view = lowerKey == null ? oneOffs : oneOffs.tailSet(lowerKey, inclusive);
+        Iterator<Appointment> oneOffIterator = Collections.unmodifiableNavigableSet(view).iterator();
+        if (series.isEmpty()) {
+            return oneOffIterator;
+        }
+        PriorityQueue<PeekingIterator> sources = new PriorityQueue<>(
+                Comparator.comparing((PeekingIterator source) -> source.head, START_TIME_ORDER));
+        PeekingIterator oneOffSource = new PeekingIterator(oneOffIterator, null, inclusive);
+        if (oneOffSource.head != null) {
+            sources.add(oneOffSource);
+        }
+        for (RecurringAppointment recurring : series) {
+            LocalDateTime from = lowerKey == null ? recurring.getStartTime() : lowerKey.getStartTime();
+            PeekingIterator source = new PeekingIterator(recurring.occurrencesFrom(from), lowerKey, inclusive);
+            if (source.head != null) {
+                sources.add(source);
+            }
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !sources.isEmpty();
+            }
+
+            @Override
+            public Appointment next() {
+                PeekingIterator source = sources.poll();
+                if (source == null) {
+                    throw new NoSuchElementException();
+                }
+                Appointment current = source.advance();
+                if (source.head != null) {
+                    sources.add(source);
+                }
+                return current;
+            }
+        };
+    }
+
+    /**
+     * An iterator in start order that exposes its next element, skipping elements before a lower key.
+     */
+    private static class PeekingIterator {
+        private final Iterator<Appointment> iterator;
+        private Appointment head;
+
+        PeekingIterator(Iterator<Appointment> iterator, Appointment lowerKey, boolean inclusive) {
+            this.iterator = iterator;
+            advance();
+            while (lowerKey != null && head != null) {
+                int cmp = START_TIME_ORDER.compare(head, lowerKey);
+                if (cmp > 0 || (cmp == 0 && inclusive)) {
+                    break;
+                }
+                advance();
+            }
+        }
+
+        Appointment advance() {
+            Appointment current = head;
+            head = iterator.hasNext() ? iterator.next() : null;
+            return current;
+        }
+    }
+
+    /**
+     * Returns the appointments that overlap the given appointment, excluding the appointment itself.
+     */
+    public List<Appointment> findConflicts(Appointment appointment) {
+        List<Appointment> conflicts = findConflicts(appointment.getStartTime(), appointment.getEndTime());
+        conflicts.removeIf(app -> app.getCode().equalsIgnoreCase(appointment.getCode()));
+        return conflicts;
+    }
+
+    /**
+     * Returns the appointments that overlap the time range from {@code start} (inclusive)
+     * to {@code end} (exclusive), sorted by start time.
+     * Recurring appointments contribute their overlapping occurrences.
+     */
+    public List<Appointment> findConflicts(LocalDateTime start, LocalDateTime end) {
+        List<Appointment> conflicts = intervals.findOverlapping(start, end);
+        if (recurringAppointments.isEmpty()) {
+            return conflicts;
+        }
+        for (RecurringAppointment series : recurringAppointments) {
+            Duration length = Duration.between(series.getStartTime(), series.getEndTime());
+            Iterator<Appointment> occurrences = series.occurrencesFrom(start.minus(length));
+            while (occurrences.hasNext()) {
+                Appointment occurrence = occurrences.next();
+                if (!occurrence.getStartTime().isBefore(end)) {
+                    break;
+                }
+                if (occurrence.getEndTime().isAfter(start)) {
+                    conflicts.add(occurrence);
+                }
+            }
+        }
+        conflicts.sort(START_TIME_ORDER);
+        return conflicts;
+    }
+
+    /**
+     * Returns every pair of overlapping one-off appointments in the calendar.
+     * Appointments are swept in start order while a queue ordered by end time
+     * holds the appointments that are still running. Recurring appointments may run forever,
+     * so their occurrences are checked when they are added through findConflicts instead.
+     */
+    public List<AppointmentConflict> findAllConflicts() {
+        List<AppointmentConflict> conflicts = new ArrayList<>();
+        PriorityQueue<Appointment> active = new PriorityQueue<>(Comparator.comparing(Appointment::getEndTime));
+        for (Appointment app : appointments) {
+            while (!active.isEmpty() && !active.peek().getEndTime().isAfter(app.getStartTime())) {
+                active.poll();
+            }
+            for (Appointment running : active) {
+                conflicts.add(new AppointmentConflict(running, app));
+            }
+            active.add(app);
+        }
+        return conflicts;
+    }
+
+    /**
+     * Builds a search key that sorts before every appointment starting at the given time.
+     */
+    static Appointment probe(LocalDateTime time) {
+        return new Appointment("", time, time, "", "");
     }
 
     /**
      * Resets the category counters based on the current appointments.
+     * Each counter holds the highest code number in use for its category.
      */
     private void resetCategoryCounters() {
-        for (String key : categoryCounters.keySet()) {
+        for (Character key : categoryCounters.keySet()) {
             categoryCounters.put(key, 0);
         }
-        for (Appointment app : appointments) {
-            String categoryCode = app.getCode().substring(0, 1);
-            categoryCounters.put(categoryCode, categoryCounters.get(categoryCode) + 1);
+        for (String code : appointmentsByCode.keySet()) {
+            updateCategoryCounter(code);
         }
     }
 
+    /**
+     * Raises the counter of the code's category to the code's number if it is higher.
+     * Codes without a numeric suffix leave the counters untouched.
+     */
+    private void updateCategoryCounter(String code) {
+        int number = codeNumber(code);
+        if (number >= 0) {
+            categoryCounters.merge(Character.toUpperCase(code.charAt(0)), number, Math::max);
+        }
+    }
+
+    /**
+     * Returns the numeric suffix of a code, or -1 if it has none or it does not fit an int.
+     */
+    private static int codeNumber(String code) {
+        if (code.length() < 2) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = 1; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c < '0' || c > '9' || number > (Integer.MAX_VALUE - 9) / 10) {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
     /**
      * Generates a unique appointment code for a given category.
+     * The category counter is advanced past the returned code, so repeated calls never hand out the same code.
      */
     public String generateAppointmentCode(String category) {
-        String categoryCode = category.substring(0, 1).toUpperCase();
-        int counter = categoryCounters.getOrDefault(categoryCode, 0) + 1;
-        categoryCounters.put(categoryCode, counter);
+        char categoryCode = Character.toUpperCase(category.charAt(0));
+        int counter = categoryCounters.getOrDefault(categoryCode, 0);
 
         String code;
         do {
-            code = String.format("%s%03d", categoryCode, counter);
             counter++;
+            code = String.format("%s%03d", categoryCode, counter);
         } while (isCodeTaken(code));
 
+        categoryCounters.put(categoryCode, counter);
         return code;
     }
 
+    /**
+     * Creates an appointment with a newly generated code and adds it to the collection.
+     * @param category The category name, e.g. "Work"; its first letter prefixes the code.
+     * @return The appointment that was added.
+     */
+    public Appointment createAppointment(String category, LocalDateTime startTime, LocalDateTime endTime,
+                                         String description) {
+        String code = generateAppointmentCode(category);
+        Appointment appointment = new Appointment(code, startTime, endTime, description, category);
+        addAppointment(appointment);
+        return appointment;
+    }
+
+    /**
+     * Creates a recurring appointment with a newly generated code and adds it to the collection.
+     * @param category The category name, e.g. "Work"; its first letter prefixes the code.
+     * @param startTime The start of the first occurrence.
+     * @param endTime The end of the first occurrence.
+     * @param rule The rule the appointment repeats by.
+     * @return The series that was added.
+     */
+    public RecurringAppointment createRecurringAppointment(String category, LocalDateTime startTime,
+                                                           LocalDateTime endTime, String description,
+                                                           RecurrenceRule rule) {
+        String code = generateAppointmentCode(category);
+        RecurringAppointment appointment =
+                new RecurringAppointment(code, startTime, endTime, description, category, rule);
+        addAppointment(appointment);
+        return appointment;
+    }
+
     /**
      * Checks if a given appointment code is already in use.
      */
     private boolean isCodeTaken(String code) {
-        return appointments.stream().anyMatch(app -> app.getCode().equals(code));
+        return appointmentsByCode.containsKey(codeKey(code));
+    }
+
+    /**
+     * Normalizes a code for use as a key in the code index.
+     */
+    private static String codeKey(String code) {
+        return code.toUpperCase();
     }
-}
\ No newline at end of file
+}
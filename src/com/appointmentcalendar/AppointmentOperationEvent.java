@@ -0,0 +1,21 @@
+/**
+ * A JDK Flight Recorder event for one query or change made through an InstrumentedAppointmentManager.
+ */
+package com.appointmentcalendar;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.appointmentcalendar.AppointmentOperation")
+@Label("Appointment Operation")
+@jdk.jfr.Category("Appointment Calendar")
+@Description("A query or change on the appointment calendar")
+class AppointmentOperationEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Results")
+    @Description("Number of appointments returned, or -1 if the operation does not return a list")
+    int results;
+}
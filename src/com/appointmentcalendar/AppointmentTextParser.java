@@ -0,0 +1,292 @@
+/**
+ * Parses the pipe-delimited appointment text format directly from bytes.
+ * Dates and times are read digit by digit instead of going through String.split and LocalDateTime.parse,
+ * and large inputs are cut into chunks on line boundaries that are parsed in parallel on a fork-join pool.
+ */
+package com.appointmentcalendar;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+class AppointmentTextParser {
+    /**
+     * Marks the optional trailing field that holds the rule of a recurring appointment.
+     */
+    static final String RULE_PREFIX = "RRULE:";
+    private static final byte[] RULE_MARKER = ("|" + RULE_PREFIX).getBytes(StandardCharsets.US_ASCII);
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    /**
+     * The appointments parsed from some input together with the lines that could not be parsed.
+     */
+    static class ParseResult {
+        private final List<Appointment> appointments;
+        private final List<MalformedLine> malformedLines;
+        private int lineCount;
+
+        ParseResult(List<Appointment> appointments, List<MalformedLine> malformedLines, int lineCount) {
+            this.appointments = appointments;
+            this.malformedLines = malformedLines;
+            this.lineCount = lineCount;
+        }
+
+        /**
+         * Returns the successfully parsed appointments in file order.
+         */
+        List<Appointment> getAppointments() {
+            return appointments;
+        }
+
+        /**
+         * Returns the lines that could not be parsed, in file order.
+         */
+        List<MalformedLine> getMalformedLines() {
+            return malformedLines;
+        }
+
+        /**
+         * Appends the result of the chunk that follows this one, renumbering its malformed lines.
+         */
+        void append(ParseResult next) {
+            appointments.addAll(next.appointments);
+            for (MalformedLine line : next.malformedLines) {
+                malformedLines.add(new MalformedLine(line.lineNumber + lineCount, line.text));
+            }
+            lineCount += next.lineCount;
+        }
+    }
+
+    /**
+     * A line that could not be parsed, with its 1-based line number.
+     */
+    static class MalformedLine {
+        private final int lineNumber;
+        private final String text;
+
+        MalformedLine(int lineNumber, String text) {
+            this.lineNumber = lineNumber;
+            this.text = text;
+        }
+
+        int getLineNumber() {
+            return lineNumber;
+        }
+
+        String getText() {
+            return text;
+        }
+    }
+
+    /**
+     * Parses a whole file's contents, in parallel if it is large.
+     */
+    static ParseResult parse(byte[] data) {
+        if (data.length <= CHUNK_SIZE) {
+            return parseChunk(data, 0, data.length);
+        }
+        return new ChunkTask(data, 0, data.length).invoke();
+    }
+
+    /**
+     * Parses a single line without its line terminator.
+     * Returns null if the line is malformed.
+     */
+    static Appointment parseLine(String line) {
+        byte[] data = line.getBytes(StandardCharsets.UTF_8);
+        return parseLine(data, 0, data.length, new DateCache());
+    }
+
+    /**
+     * Splits its range in half at a line boundary until the pieces are small enough to parse directly.
+     */
+    private static class ChunkTask extends RecursiveTask<ParseResult> {
+        private static final long serialVersionUID = 1L;
+        private final transient byte[] data;
+        private final int start;
+        private final int end;
+
+        ChunkTask(byte[] data, int start, int end) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected ParseResult compute() {
+            if (end - start <= CHUNK_SIZE) {
+                return parseChunk(data, start, end);
+            }
+            int middle = start + (end - start) / 2;
+            while (middle < end && data[middle - 1] != '\n') {
+                middle++;
+            }
+            if (middle == end) {
+                return parseChunk(data, start, end);
+            }
+            ChunkTask left = new ChunkTask(data, start, middle);
+            ChunkTask right = new ChunkTask(data, middle, end);
+            right.fork();
+            ParseResult result = left.compute();
+            result.append(right.join());
+            return result;
+        }
+    }
+
+    /**
+     * Parses the lines in data[start, end), where start is the beginning of a line.
+     */
+    private static ParseResult parseChunk(byte[] data, int start, int end) {
+        List<Appointment> appointments = new ArrayList<>((end - start) / 48 + 1);
+        List<MalformedLine> malformedLines = new ArrayList<>();
+        DateCache dates = new DateCache();
+        int lineNumber = 0;
+        int lineStart = start;
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            lineNumber++;
+            int contentEnd = lineEnd > lineStart && data[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            if (contentEnd > lineStart) {
+                Appointment app = parseLine(data, lineStart, contentEnd, dates);
+                if (app != null) {
+                    appointments.add(app);
+                } else {
+                    malformedLines.add(new MalformedLine(lineNumber,
+                            new String(data, lineStart, contentEnd - lineStart, StandardCharsets.UTF_8)));
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return new ParseResult(appointments, malformedLines, lineNumber);
+    }
+
+    /**
+     * Parses one line laid out as {@code CODE|yyyy-MM-dd|HH:mm|HH:mm|description},
+     * optionally followed by {@code |RRULE:rule} for a recurring appointment.
+     * Returns null if the line is malformed.
+     */
+    private static Appointment parseLine(byte[] data, int start, int end, DateCache dates) {
+        int codeEnd = start;
+        while (codeEnd < end && data[codeEnd] != '|') {
+            codeEnd++;
+        }
+        // Fixed-width fields: "|yyyy-MM-dd|HH:mm|HH:mm|" takes 24 bytes after the code.
+        int date = codeEnd + 1;
+        int startTime = date + 11;
+        int endTime = startTime + 6;
+        int description = endTime + 6;
+        if (codeEnd == start || description > end
+                || data[date + 4] != '-' || data[date + 7] != '-' || data[date + 10] != '|'
+                || data[startTime + 2] != ':' || data[startTime + 5] != '|'
+                || data[endTime + 2] != ':' || data[endTime + 5] != '|') {
+            return null;
+        }
+        int year = digits(data, date, 4);
+        int month = digits(data, date + 5, 2);
+        int day = digits(data, date + 8, 2);
+        int startHour = digits(data, startTime, 2);
+        int startMinute = digits(data, startTime + 3, 2);
+        int endHour = digits(data, endTime, 2);
+        int endMinute = digits(data, endTime + 3, 2);
+        if ((year | month | day | startHour | startMinute | endHour | endMinute) < 0) {
+            return null;
+        }
+        try {
+            LocalDate localDate = dates.get(year, month, day);
+            String code = new String(data, start, codeEnd - start, StandardCharsets.UTF_8);
+            LocalDateTime startDateTime = LocalDateTime.of(localDate, LocalTime.of(startHour, startMinute));
+            LocalDateTime endDateTime = LocalDateTime.of(localDate, LocalTime.of(endHour, endMinute));
+            int marker = lastFieldSeparator(data, description, end);
+            RecurrenceRule rule = marker >= 0 ? parseRule(data, marker, end) : null;
+            if (rule != null) {
+                return new RecurringAppointment(code, startDateTime, endDateTime,
+                        new String(data, description, marker - description, StandardCharsets.UTF_8),
+                        FileManager.getCategoryFromCode(code), rule);
+            }
+            return new Appointment(
+                    code,
+                    startDateTime,
+                    endDateTime,
+                    new String(data, description, end - description, StandardCharsets.UTF_8),
+                    FileManager.getCategoryFromCode(code));
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the position of the last '|' in data[start, end), or -1 if there is none.
+     */
+    private static int lastFieldSeparator(byte[] data, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (data[i] == '|') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the {@code |RRULE:rule} field at data[marker, end).
+     * Returns null if the field is not a valid rule, in which case it is part of the description.
+     */
+    private static RecurrenceRule parseRule(byte[] data, int marker, int end) {
+        if (end - marker <= RULE_MARKER.length) {
+            return null;
+        }
+        for (int i = 0; i < RULE_MARKER.length; i++) {
+            if (data[marker + i] != RULE_MARKER[i]) {
+                return null;
+            }
+        }
+        try {
+            int ruleStart = marker + RULE_MARKER.length;
+            return RecurrenceRule.parse(new String(data, ruleStart, end - ruleStart, StandardCharsets.US_ASCII));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a fixed number of ASCII digits as a non-negative number, or returns -1 if any byte is not a digit.
+     */
+    private static int digits(byte[] data, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Remembers the last date parsed, since consecutive lines usually share a date.
+     */
+    private static class DateCache {
+        private int year = -1;
+        private int month;
+        private int day;
+        private LocalDate date;
+
+        LocalDate get(int year, int month, int day) {
+            if (year != this.year || month != this.month || day != this.day) {
+                this.date = LocalDate.of(year, month, day);
+                this.year = year;
+                this.month = month;
+                this.day = day;
+            }
+            return date;
+        }
+    }
+}
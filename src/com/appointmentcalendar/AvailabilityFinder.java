@@ -0,0 +1,205 @@
+/**
+ * Finds free time across one or more calendars.
+ * The busy intervals of every calendar are merged in start order with a k-way merge,
+ * and the gaps between them are produced lazily, one slot at a time.
+ */
+package com.appointmentcalendar;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+public class AvailabilityFinder {
+    private final List<AppointmentManager> calendars;
+
+    /**
+     * Constructs an AvailabilityFinder over the given calendars.
+     */
+    public AvailabilityFinder(List<AppointmentManager> calendars) {
+        this.calendars = new ArrayList<>(calendars);
+    }
+
+    /**
+     * Returns the first free slot of at least the given length, or null if there is none.
+     * @param from The earliest time a slot may start.
+     * @param to The latest time a slot may end.
+     * @param dayStart The start of the daily window slots must fall within, e.g. 09:00.
+     * @param dayEnd The end of the daily window slots must fall within, e.g. 17:00.
+     * @param length The requested slot length.
+     * @return A slot of exactly the requested length, or null if no calendar-wide gap is long enough.
+     */
+    public TimeSlot findFirstFreeSlot(LocalDateTime from, LocalDateTime to,
+                                      LocalTime dayStart, LocalTime dayEnd, Duration length) {
+        Iterator<TimeSlot> slots = freeSlots(from, to, dayStart, dayEnd, length);
+        if (!slots.hasNext()) {
+            return null;
+        }
+        LocalDateTime start = slots.next().getStartTime();
+        return new TimeSlot(start, start.plus(length));
+    }
+
+    /**
+     * Returns the free gaps shared by all calendars that are at least {@code minLength} long,
+     * clipped to the daily window and returned in chronological order.
+     * Gaps are computed only as the iterator is advanced.
+     */
+    public Iterator<TimeSlot> freeSlots(LocalDateTime from, LocalDateTime to,
+                                        LocalTime dayStart, LocalTime dayEnd, Duration minLength) {
+        if (!dayStart.isBefore(dayEnd)) {
+            throw new IllegalArgumentException("The daily window must end after it starts.");
+        }
+        return new FreeSlotIterator(from, to, dayStart, dayEnd, minLength);
+    }
+
+    /**
+     * An iterator over one calendar's appointments that exposes the next element without consuming it.
+     */
+    private static class BusySource {
+        private final Iterator<Appointment> iterator;
+        private Appointment head;
+
+        BusySource(Iterator<Appointment> iterator) {
+            this.iterator = iterator;
+            this.head = iterator.hasNext() ? iterator.next() : null;
+        }
+
+        Appointment advance() {
+            Appointment current = head;
+            head = iterator.hasNext() ? iterator.next() : null;
+            return current;
+        }
+    }
+
+    private class FreeSlotIterator implements Iterator<TimeSlot> {
+        private final LocalDateTime to;
+        private final LocalTime dayStart;
+        private final LocalTime dayEnd;
+        private final Duration minLength;
+        private final PriorityQueue<BusySource> sources =
+                new PriorityQueue<>(Comparator.comparing((BusySource source) -> source.head.getStartTime()));
+
+        private LocalDateTime cursor;
+        private LocalDateTime gapStart;
+        private LocalDateTime gapEnd;
+        private TimeSlot next;
+
+        FreeSlotIterator(LocalDateTime from, LocalDateTime to, LocalTime dayStart, LocalTime dayEnd, Duration minLength) {
+            this.to = to;
+            this.dayStart = dayStart;
+            this.dayEnd = dayEnd;
+            this.minLength = minLength;
+            this.cursor = from;
+            for (AppointmentManager calendar : calendars) {
+                // Appointments already running at 'from' push the first free moment back.
+                for (Appointment app : calendar.findConflicts(from, from.plusNanos(1))) {
+                    if (app.getStartTime().isBefore(from) && app.getEndTime().isAfter(cursor)) {
+                        cursor = app.getEndTime();
+                    }
+                }
+                BusySource source = new BusySource(calendar.iterateFrom(from));
+                if (source.head != null) {
+                    sources.add(source);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = computeNext();
+            }
+            return next != null;
+        }
+
+        @Override
+        public TimeSlot next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TimeSlot slot = next;
+            next = null;
+            return slot;
+        }
+
+        private TimeSlot computeNext() {
+            if (Duration.between(dayStart, dayEnd).compareTo(minLength) < 0) {
+                return null;
+            }
+            while (true) {
+                if (gapStart != null) {
+                    TimeSlot slot = nextSlotInGap();
+                    if (slot != null) {
+                        return slot;
+                    }
+                    continue;
+                }
+                if (!cursor.isBefore(to)) {
+                    return null;
+                }
+                Appointment busy = nextBusy();
+                if (busy == null) {
+                    openGap(cursor, to);
+                    cursor = to;
+                } else {
+                    if (busy.getStartTime().isAfter(cursor)) {
+                        openGap(cursor, busy.getStartTime().isBefore(to) ? busy.getStartTime() : to);
+                    }
+                    if (busy.getEndTime().isAfter(cursor)) {
+                        cursor = busy.getEndTime();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Takes the earliest-starting appointment across all calendars, or null once none start before 'to'.
+         */
+        private Appointment nextBusy() {
+            BusySource source = sources.poll();
+            if (source == null || !source.head.getStartTime().isBefore(to)) {
+                sources.clear();
+                return null;
+            }
+            Appointment busy = source.advance();
+            if (source.head != null) {
+                sources.add(source);
+            }
+            return busy;
+        }
+
+        private void openGap(LocalDateTime start, LocalDateTime end) {
+            gapStart = start;
+            gapEnd = end;
+        }
+
+        /**
+         * Clips the current gap to the daily window of the day it starts on and moves the gap to the next day.
+         * Returns the clipped slot if it is long enough, or null if the caller should keep looking.
+         */
+        private TimeSlot nextSlotInGap() {
+            LocalDate day = gapStart.toLocalDate();
+            LocalDateTime windowStart = day.atTime(dayStart);
+            LocalDateTime windowEnd = day.atTime(dayEnd);
+            LocalDateTime start = gapStart.isAfter(windowStart) ? gapStart : windowStart;
+            LocalDateTime end = gapEnd.isBefore(windowEnd) ? gapEnd : windowEnd;
+
+            gapStart = day.plusDays(1).atTime(dayStart);
+            if (!gapStart.isBefore(gapEnd)) {
+                gapStart = null;
+                gapEnd = null;
+            }
+
+            if (start.isBefore(end) && Duration.between(start, end).compareTo(minLength) >= 0) {
+                return new TimeSlot(start, end);
+            }
+            return null;
+        }
+    }
+}
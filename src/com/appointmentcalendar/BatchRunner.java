@@ -0,0 +1,222 @@
+/**
+ * Runs calendar commands read one per line from a script, for provisioning jobs and other non-interactive use.
+ * Results go through a single large buffered writer, so output costs little per command.
+ *
+ * Commands:
+ *   add category yyyy-MM-dd HH:mm HH:mm description   adds an appointment and prints its code
+ *   delete code                                        prints "deleted code" or "not found code"
+ *   list                                               prints the number of appointments, then each one
+ *   day yyyy-MM-dd                                     likewise for the appointments starting that day
+ *   category name                                      likewise for a category, e.g. "W" or "Work"
+ *   next                                               prints the next upcoming appointment, or "none"
+ *
+ * Appointments are printed in the appointments file format, and recurring appointments in list and category
+ * output appear once, as their series. Empty lines and lines starting with # are skipped. A command that
+ * fails is reported with its line number on standard error, and the script goes on.
+ */
+package com.appointmentcalendar;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class BatchRunner {
+    private static final int PAGE_SIZE = 1024;
+
+    private final AppointmentManager appointmentManager;
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder(256);
+
+    /**
+     * Creates a runner for the given calendar that writes results to the given writer.
+     * The writer should be buffered; it is flushed when a script ends.
+     */
+    public BatchRunner(AppointmentManager appointmentManager, Writer out) {
+        this.appointmentManager = appointmentManager;
+        this.out = out;
+    }
+
+    /**
+     * Runs every command of the script and returns the number of commands run, failed ones included.
+     * The run is recorded in Metrics as "batch.run", with "batch.commands" and "batch.errors" counted.
+     * @throws IOException if the script cannot be read or the results cannot be written.
+     */
+    public long run(Reader script) throws IOException {
+        BufferedReader reader = script instanceof BufferedReader
+                ? (BufferedReader) script : new BufferedReader(script, 1 << 16);
+        long start = Metrics.startTimer();
+        long commands = 0;
+        long lineNumber = 0;
+        String command;
+        while ((command = reader.readLine()) != null) {
+            lineNumber++;
+            command = command.strip();
+            if (command.isEmpty() || command.charAt(0) == '#') {
+                continue;
+            }
+            commands++;
+            try {
+                execute(command);
+            } catch (IllegalArgumentException | DateTimeException e) {
+                Metrics.increment("batch.errors");
+                System.err.println("Error in line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+        out.flush();
+        Metrics.recordLatency("batch.run", start);
+        Metrics.add("batch.commands", commands);
+        return commands;
+    }
+
+    /**
+     * Runs a single command.
+     * @throws IllegalArgumentException if the command is unknown or its arguments are malformed.
+     */
+    void execute(String command) throws IOException {
+        int space = command.indexOf(' ');
+        String name = space < 0 ? command : command.substring(0, space);
+        String arguments = space < 0 ? "" : command.substring(space + 1).strip();
+        switch (name.toLowerCase()) {
+            case "add":
+                add(arguments);
+                break;
+            case "delete":
+                String code = requireArgument(arguments, "an appointment code");
+                out.write(appointmentManager.deleteAppointment(code) ? "deleted " : "not found ");
+                out.write(code);
+                out.write('\n');
+                break;
+            case "list":
+                writeAll(appointmentManager.getAllAppointments());
+                break;
+            case "day":
+                LocalDate day = LocalDate.parse(requireArgument(arguments, "a date"));
+                writeAll(appointmentManager.getAppointmentsForDay(day.atStartOfDay()));
+                break;
+            case "category":
+                writeAll(inCategory(parseCategory(requireArgument(arguments, "a category"))));
+                break;
+            case "next":
+                Appointment next = appointmentManager.getNextUpcomingAppointment();
+                if (next == null) {
+                    out.write("none\n");
+                } else {
+                    write(next);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command '" + name + "'");
+        }
+    }
+
+    /**
+     * Adds the appointment described by "category yyyy-MM-dd HH:mm HH:mm description" and prints its code.
+     */
+    private void add(String arguments) throws IOException {
+        String[] fields = new String[5];
+        int position = 0;
+        for (int i = 0; i < 4; i++) {
+            int end = arguments.indexOf(' ', position);
+            if (end < 0) {
+                throw new IllegalArgumentException("Expected: add category yyyy-MM-dd HH:mm HH:mm description");
+            }
+            fields[i] = arguments.substring(position, end);
+            position = end + 1;
+            while (position < arguments.length() && arguments.charAt(position) == ' ') {
+                position++;
+            }
+        }
+        fields[4] = arguments.substring(position);
+        if (fields[4].isEmpty()) {
+            throw new IllegalArgumentException("Expected: add category yyyy-MM-dd HH:mm HH:mm description");
+        }
+        Category category = parseCategory(fields[0]);
+        LocalDate date = LocalDate.parse(fields[1]);
+        LocalDateTime start = date.atTime(LocalTime.parse(fields[2]));
+        LocalDateTime end = date.atTime(LocalTime.parse(fields[3]));
+        if (end.isBefore(start)) {
+            throw new IllegalArgumentException("End time must be after the start time");
+        }
+        Appointment created = appointmentManager.createAppointment(category.getName(), start, end, fields[4]);
+        out.write(created.getCode());
+        out.write('\n');
+    }
+
+    /**
+     * Returns the category's appointments in start order, with each recurring appointment once.
+     * One-off appointments are read a page at a time from the category index, skipping the occurrences of
+     * the category's series, until all of them have been read; the series are then merged in by start time.
+     */
+    private List<Appointment> inCategory(Category category) {
+        Set<String> seriesCodes = new HashSet<>();
+        List<Appointment> series = new ArrayList<>();
+        for (RecurringAppointment recurring : appointmentManager.getRecurringAppointments()) {
+            if (Category.fromAppointmentCode(recurring.getCode()) == category) {
+                seriesCodes.add(recurring.getCode().toUpperCase());
+                series.add(recurring);
+            }
+        }
+        int oneOffs = appointmentManager.countByCategory(category) - series.size();
+        List<Appointment> matching = new ArrayList<>(oneOffs + series.size());
+        Appointment afterKey = null;
+        while (matching.size() < oneOffs) {
+            List<Appointment> page = appointmentManager.page(category, null, null, afterKey, PAGE_SIZE);
+            if (page.isEmpty()) {
+                break;
+            }
+            for (Appointment app : page) {
+                if (!seriesCodes.contains(app.getCode().toUpperCase()) && matching.size() < oneOffs) {
+                    matching.add(app);
+                }
+            }
+            afterKey = page.get(page.size() - 1);
+        }
+        if (!series.isEmpty()) {
+            matching.addAll(series);
+            matching.sort(AppointmentManager.START_TIME_ORDER);
+        }
+        return matching;
+    }
+
+    private void writeAll(List<Appointment> appointments) throws IOException {
+        out.write(Integer.toString(appointments.size()));
+        out.write('\n');
+        for (Appointment app : appointments) {
+            write(app);
+        }
+    }
+
+    private void write(Appointment app) throws IOException {
+        line.setLength(0);
+        FileManager.appendAppointment(line, app);
+        line.append('\n');
+        out.append(line);
+    }
+
+    /**
+     * Returns the category named by its code letter or any name starting with it, e.g. "W" or "Work".
+     */
+    private static Category parseCategory(String value) {
+        Category category = value.isEmpty() ? null : Category.fromCode(value.charAt(0));
+        if (category == null) {
+            throw new IllegalArgumentException("Category must be one of Work, Personal, Medical or Other");
+        }
+        return category;
+    }
+
+    private static String requireArgument(String arguments, String what) {
+        if (arguments.isEmpty()) {
+            throw new IllegalArgumentException("Expected " + what);
+        }
+        return arguments;
+    }
+}
@@ -0,0 +1,371 @@
+/**
+ * Reads and writes appointments in a compact fixed-width binary format that can be loaded through a memory map.
+ *
+ * The file starts with a 16-byte header (magic, version, record count, heap size), followed by one
+ * 24-byte record per appointment and finally a heap holding all descriptions as UTF-8.
+ * Each record stores the start and end time in minutes since 1970-01-01T00:00, the numeric part of the
+ * code, the offset and length of the description in the heap, the category letter and the number of
+ * digits in the code.
+ */
+package com.appointmentcalendar;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BinarySnapshot {
+    static final String FILE_NAME = "appointments.bin";
+    private static final int MAGIC = 0x41505054; // "APPT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 24;
+    private static final int MAX_CODE_DIGITS = 9;
+
+    /**
+     * Writes the appointments to the given binary file.
+     * The data is written to a temporary file first and renamed over the target once complete.
+     * @throws IOException if the file cannot be written, an appointment code is not a letter followed by digits,
+     *                     or an appointment is recurring.
+     */
+    public static void write(List<Appointment> appointments, String fileName) throws IOException {
+        try (SnapshotWriter writer = new SnapshotWriter(fileName, appointments.size())) {
+            for (Appointment app : appointments) {
+                if (app instanceof RecurringAppointment) {
+                    throw new IOException("Recurring appointments cannot be stored in a binary snapshot: "
+                            + app.getCode());
+                }
+                String code = app.getCode();
+                byte[] description = app.getDescription().getBytes(StandardCharsets.UTF_8);
+                writer.add(toEpochMinute(app.getStartTime()), toEpochMinute(app.getEndTime()),
+                        parseCodeNumber(code), code.charAt(0), code.length() - 1, description, description.length);
+            }
+            writer.commit();
+        }
+    }
+
+    /**
+     * Writes the records of a compact store to the given binary file, in the same way as write(List, String).
+     * @throws IOException if the file cannot be written.
+     */
+    static void write(CompactAppointmentStore store, String fileName) throws IOException {
+        try (SnapshotWriter writer = new SnapshotWriter(fileName, store.size())) {
+            byte[] description = new byte[256];
+            for (int i = 0; i < store.size(); i++) {
+                int length = store.copyDescription(i, description);
+                if (length > description.length) {
+                    description = new byte[Math.max(length, description.length * 2)];
+                    store.copyDescription(i, description);
+                }
+                String code = store.code(i);
+                writer.add(store.startMinute(i), store.endMinute(i), store.codeNumber(i), store.category(i),
+                        code.length() - 1, description, length);
+            }
+            writer.commit();
+        }
+    }
+
+    /**
+     * Streams records and descriptions side by side into their own regions of a temporary file,
+     * then fills in the header and renames the file over the target on commit.
+     */
+    private static class SnapshotWriter implements Closeable {
+        private final Path target;
+        private final Path temp;
+        private final FileChannel channel;
+        private final ByteBuffer records = ByteBuffer.allocateDirect(RECORD_SIZE * 4096).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer heap = ByteBuffer.allocateDirect(1 << 18);
+        private final int count;
+        private long recordPosition = HEADER_SIZE;
+        private long heapPosition;
+        private long offset;
+        private boolean committed;
+
+        SnapshotWriter(String fileName, int count) throws IOException {
+            this.target = new File(fileName).toPath();
+            this.temp = new File(fileName + ".tmp").toPath();
+            this.count = count;
+            this.heapPosition = HEADER_SIZE + (long) count * RECORD_SIZE;
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void add(int start, int end, int number, char category, int digits, byte[] description, int length)
+                throws IOException {
+            if (offset + length > Integer.MAX_VALUE) {
+                throw new IOException("Descriptions are too large for a binary snapshot");
+            }
+            if (!records.hasRemaining()) {
+                recordPosition = drain(records, channel, recordPosition);
+            }
+            records.putInt(start)
+                    .putInt(end)
+                    .putInt(number)
+                    .putInt((int) offset)
+                    .putInt(length)
+                    .put((byte) category)
+                    .put((byte) digits)
+                    .putShort((short) 0);
+            offset += length;
+
+            int written = 0;
+            while (written < length) {
+                if (!heap.hasRemaining()) {
+                    heapPosition = drain(heap, channel, heapPosition);
+                }
+                int chunk = Math.min(heap.remaining(), length - written);
+                heap.put(description, written, chunk);
+                written += chunk;
+            }
+        }
+
+        void commit() throws IOException {
+            drain(records, channel, recordPosition);
+            drain(heap, channel, heapPosition);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt((int) offset);
+            drain(header, channel, 0);
+            channel.force(true);
+            channel.close();
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        /**
+         * Closes the file, removing it unless the snapshot was committed.
+         */
+        @Override
+        public void close() throws IOException {
+            channel.close();
+            if (!committed) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Loads all appointments from the given binary file by memory-mapping it.
+     * @throws IOException if the file cannot be read or is not a valid snapshot.
+     */
+    public static List<Appointment> load(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(fileName).toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = map(channel, fileName);
+            int count = map.getInt(8);
+            int heapSize = map.getInt(12);
+            byte[] heap = new byte[heapSize];
+            map.get(HEADER_SIZE + count * RECORD_SIZE, heap);
+
+            List<Appointment> appointments = new ArrayList<>(count);
+            MinuteDecoder decoder = new MinuteDecoder();
+            char[] codeChars = new char[1 + MAX_CODE_DIGITS];
+            for (int i = 0; i < count; i++) {
+                int position = checkRecord(map, i, heapSize, fileName);
+                int start = map.getInt(position);
+                int end = map.getInt(position + 4);
+                int number = map.getInt(position + 8);
+                int descriptionOffset = map.getInt(position + 12);
+                int descriptionLength = map.getInt(position + 16);
+                char category = (char) map.get(position + 20);
+                int digits = map.get(position + 21);
+
+                codeChars[0] = category;
+                for (int d = digits; d >= 1; d--) {
+                    codeChars[d] = (char) ('0' + number % 10);
+                    number /= 10;
+                }
+                String code = new String(codeChars, 0, digits + 1);
+                appointments.add(new Appointment(
+                        code,
+                        decoder.decode(start),
+                        decoder.decode(end),
+                        new String(heap, descriptionOffset, descriptionLength, StandardCharsets.UTF_8),
+                        FileManager.getCategoryFromCode(code)));
+            }
+            return appointments;
+        }
+    }
+
+    /**
+     * Loads the given binary file into a compact store, copying records and descriptions without
+     * creating any objects per appointment.
+     * Returns null if the records are not in start order or a code repeats, which a store cannot hold as is.
+     * @throws IOException if the file cannot be read or is not a valid snapshot.
+     */
+    static CompactAppointmentStore loadStore(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(fileName).toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = map(channel, fileName);
+            int count = map.getInt(8);
+            int heapSize = map.getInt(12);
+            byte[] heap = new byte[heapSize];
+            map.get(HEADER_SIZE + count * RECORD_SIZE, heap);
+
+            CompactAppointmentStore store = new CompactAppointmentStore(count, heap);
+            for (int i = 0; i < count; i++) {
+                int position = checkRecord(map, i, heapSize, fileName);
+                char category = Character.toUpperCase((char) map.get(position + 20));
+                int digits = map.get(position + 21);
+                int number = map.getInt(position + 8);
+                if (category > 0x7F || !store.appendRecord(map.getInt(position), map.getInt(position + 4),
+                        category, digits, number, map.getInt(position + 12), map.getInt(position + 16))) {
+                    return null;
+                }
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Maps a snapshot file and checks its header.
+     * @throws IOException if the file is not a valid snapshot.
+     */
+    private static MappedByteBuffer map(FileChannel channel, String fileName) throws IOException {
+        if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+            throw new IOException("Not a binary appointment snapshot: " + fileName);
+        }
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            throw new IOException("Not a binary appointment snapshot: " + fileName);
+        }
+        int count = map.getInt(8);
+        int heapSize = map.getInt(12);
+        long heapStart = HEADER_SIZE + (long) count * RECORD_SIZE;
+        if (count < 0 || heapSize < 0 || heapStart + heapSize != channel.size()) {
+            throw new IOException("Truncated binary appointment snapshot: " + fileName);
+        }
+        return map;
+    }
+
+    /**
+     * Checks that a record's code and description fields are in range and returns the record's position.
+     * @throws IOException if the record is corrupt.
+     */
+    private static int checkRecord(MappedByteBuffer map, int index, int heapSize, String fileName)
+            throws IOException {
+        int position = HEADER_SIZE + index * RECORD_SIZE;
+        int number = map.getInt(position + 8);
+        int descriptionOffset = map.getInt(position + 12);
+        int descriptionLength = map.getInt(position + 16);
+        int digits = map.get(position + 21);
+        if (digits < 1 || digits > MAX_CODE_DIGITS || number < 0
+                || descriptionOffset < 0 || descriptionLength < 0
+                || descriptionOffset > heapSize - descriptionLength) {
+            throw new IOException("Corrupt record " + (index + 1) + " in " + fileName);
+        }
+        return position;
+    }
+
+    /**
+     * Converts between the pipe-delimited text format and the binary format.
+     * Usage: {@code BinarySnapshot to-binary <text file> <binary file>}
+     * or {@code BinarySnapshot to-text <binary file> <text file>}.
+     */
+    public static void main(String[] args) {
+        if (args.length != 3 || !(args[0].equals("to-binary") || args[0].equals("to-text"))) {
+            System.err.println("Usage: BinarySnapshot to-binary <text file> <binary file>");
+            System.err.println("       BinarySnapshot to-text <binary file> <text file>");
+            System.exit(2);
+        }
+        try {
+            if (args[0].equals("to-binary")) {
+                List<Appointment> appointments = FileManager.loadAppointments(args[1]);
+                write(appointments, args[2]);
+                System.out.println("Converted " + appointments.size() + " appointments to " + args[2]);
+            } else {
+                List<Appointment> appointments = load(args[1]);
+                FileManager.writeAppointments(appointments, new File(args[2]));
+                System.out.println("Converted " + appointments.size() + " appointments to " + args[2]);
+            }
+        } catch (IOException e) {
+            System.err.println("Error converting appointments: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parses the digits after the category letter of a code.
+     * @throws IOException if the code cannot be represented in a binary record.
+     */
+    private static int parseCodeNumber(String code) throws IOException {
+        int digits = code.length() - 1;
+        if (digits < 1 || digits > MAX_CODE_DIGITS || code.charAt(0) > 0x7F) {
+            throw new IOException("Appointment code cannot be stored in a binary snapshot: " + code);
+        }
+        int number = 0;
+        for (int i = 1; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IOException("Appointment code cannot be stored in a binary snapshot: " + code);
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Writes the buffered bytes at the given file position and returns the position after them.
+     */
+    private static long drain(ByteBuffer buffer, FileChannel channel, long position) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+        return position;
+    }
+
+    /**
+     * Converts a date and time to whole minutes since 1970-01-01T00:00, ignoring seconds.
+     */
+    static int toEpochMinute(LocalDateTime time) {
+        return Math.toIntExact(Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60));
+    }
+
+    /**
+     * Converts minutes since 1970-01-01T00:00 back to a date and time.
+     */
+    static LocalDateTime fromEpochMinute(int minute) {
+        return LocalDateTime.of(LocalDate.ofEpochDay(Math.floorDiv(minute, 24 * 60)),
+                MinuteDecoder.TIMES[Math.floorMod(minute, 24 * 60)]);
+    }
+
+    /**
+     * Converts epoch minutes to date-times while sharing LocalDate and LocalTime instances,
+     * since consecutive records mostly fall on the same few days and there are only 1440 distinct times.
+     */
+    private static class MinuteDecoder {
+        private static final LocalTime[] TIMES = new LocalTime[24 * 60];
+
+        static {
+            for (int i = 0; i < TIMES.length; i++) {
+                TIMES[i] = LocalTime.of(i / 60, i % 60);
+            }
+        }
+
+        private long cachedDay = Long.MIN_VALUE;
+        private LocalDate cachedDate;
+
+        LocalDateTime decode(int minute) {
+            long day = Math.floorDiv(minute, 24 * 60);
+            if (day != cachedDay) {
+                cachedDay = day;
+                cachedDate = LocalDate.ofEpochDay(day);
+            }
+            return LocalDateTime.of(cachedDate, TIMES[Math.floorMod(minute, 24 * 60)]);
+        }
+    }
+}
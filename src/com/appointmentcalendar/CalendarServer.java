@@ -0,0 +1,495 @@
+/**
+ * Serves an AppointmentManager over HTTP with JSON responses, as an alternative to the console interface.
+ * Every request runs on its own virtual thread, so thousands of slow or idle clients cost little more than
+ * their sockets. Responses are written straight to the connection as they are serialized.
+ *
+ * Endpoints:
+ *   GET    /appointments?day=yyyy-MM-dd                        appointments starting on that day
+ *   GET    /appointments?from=yyyy-MM-ddTHH:mm&to=...          appointments starting in [from, to)
+ *   GET    /appointments?q=dent*+OR+doctor&limit=20            description search, closest to now first
+ *   GET    /appointments/next                                  the next upcoming appointment
+ *   GET    /appointments/changes?epoch=...&since=42            the changes after sequence number 42 of that epoch, as
+ *                                                              {"epoch", "sequence", "changes": [{"sequence", "type", "appointment"}]},
+ *                                                              or {"epoch", "sequence", "snapshot": [...]} if the client is too
+ *                                                              far behind, leaves out since, or sends another epoch than the
+ *                                                              server's, e.g. one from before a restart; deletions carry only
+ *                                                              the code
+ *   GET    /appointments/{code}                                a single appointment
+ *   POST   /appointments                                       add one; body {"category", "start", "end", "description"}
+ *                                                              and optionally "recurrence", e.g. "FREQ=WEEKLY;COUNT=10"
+ *   DELETE /appointments/{code}                                delete one
+ *
+ * A server for a TenantRegistry serves the same endpoints for every tenant under /tenants/{tenant}/appointments.
+ */
+package com.appointmentcalendar;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class CalendarServer {
+    private static final String BASE_PATH = "/appointments";
+    private static final String TENANTS_PATH = "/tenants";
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+
+    private final AppointmentManager appointmentManager;
+    private final TenantRegistry tenants;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a server for the given manager, bound to the given port but not yet started.
+     * The manager must be safe for concurrent use, such as a ConcurrentAppointmentManager.
+     */
+    public CalendarServer(AppointmentManager appointmentManager, int port) throws IOException {
+        this(appointmentManager, null, port, BASE_PATH);
+    }
+
+    /**
+     * Creates a server for the calendars of a tenant registry, bound to the given port but not yet started.
+     * Each request keeps its tenant's calendar in memory until the response has been written.
+     */
+    public CalendarServer(TenantRegistry tenants, int port) throws IOException {
+        this(null, tenants, port, TENANTS_PATH);
+    }
+
+    private CalendarServer(AppointmentManager appointmentManager, TenantRegistry tenants, int port, String contextPath)
+            throws IOException {
+        this.appointmentManager = appointmentManager;
+        this.tenants = tenants;
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.createContext(contextPath, this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Starts accepting requests in the background.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waiting up to the given number of seconds for running exchanges to finish.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.close();
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (tenants == null) {
+                route(exchange, appointmentManager, BASE_PATH);
+            } else {
+                routeTenant(exchange);
+            }
+        }
+    }
+
+    /**
+     * Finds the tenant named in the path and dispatches the request on its calendar.
+     */
+    private void routeTenant(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (!path.startsWith(TENANTS_PATH + "/")) {
+            sendError(exchange, 404, "Not found");
+            return;
+        }
+        int end = path.indexOf('/', TENANTS_PATH.length() + 1);
+        String tenantId = path.substring(TENANTS_PATH.length() + 1, end < 0 ? path.length() : end);
+        if (!TenantRegistry.isValidTenantId(tenantId)) {
+            sendError(exchange, 404, "Not found");
+            return;
+        }
+        AppointmentManager calendar;
+        try {
+            calendar = tenants.acquire(tenantId);
+        } catch (IllegalStateException | UncheckedIOException e) {
+            sendError(exchange, 503, e.getMessage());
+            return;
+        }
+        try {
+            route(exchange, calendar, TENANTS_PATH + "/" + tenantId + BASE_PATH);
+        } finally {
+            tenants.release(tenantId);
+        }
+    }
+
+    /**
+     * Dispatches on path and method; malformed input is answered with 400 Bad Request.
+     * @param basePath The path of the calendar's appointment collection.
+     */
+    private void route(HttpExchange exchange, AppointmentManager calendar, String basePath) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            String code = path.length() > basePath.length() + 1 ? path.substring(basePath.length() + 1) : null;
+            if (!path.equals(basePath) && !path.startsWith(basePath + "/") || code != null && code.contains("/")) {
+                sendError(exchange, 404, "Not found");
+            } else if (code == null && method.equals("GET")) {
+                handleQuery(exchange, calendar);
+            } else if (code == null && method.equals("POST")) {
+                handleAdd(exchange, calendar, basePath);
+            } else if ("changes".equals(code) && method.equals("GET")) {
+                handleChanges(exchange, calendar);
+            } else if ("next".equals(code) && method.equals("GET")) {
+                sendAppointment(exchange, calendar.getNextUpcomingAppointment());
+            } else if (code != null && method.equals("GET")) {
+                sendAppointment(exchange, calendar.findByCode(code));
+            } else if (code != null && method.equals("DELETE")) {
+                if (calendar.deleteAppointment(code)) {
+                    exchange.sendResponseHeaders(204, -1);
+                } else {
+                    sendError(exchange, 404, "Appointment not found");
+                }
+            } else {
+                sendError(exchange, 405, "Method not allowed");
+            }
+        } catch (IllegalArgumentException | DateTimeException e) {
+            sendError(exchange, 400, e.getMessage());
+        }
+    }
+
+    private void handleQuery(HttpExchange exchange, AppointmentManager calendar) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        Category category = null;
+        if (query.containsKey("category")) {
+            category = parseCategory(query.get("category"));
+        }
+        List<Appointment> appointments;
+        if (query.containsKey("q")) {
+            int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : DEFAULT_SEARCH_LIMIT;
+            appointments = calendar.search(query.get("q"), LocalDateTime.now(), limit);
+        } else if (query.containsKey("day")) {
+            LocalDateTime day = LocalDate.parse(query.get("day")).atStartOfDay();
+            appointments = category == null
+                    ? calendar.getAppointmentsForDay(day)
+                    : calendar.getAppointmentsBetween(category, day, day.plusDays(1));
+        } else if (query.containsKey("from") && query.containsKey("to")) {
+            LocalDateTime from = LocalDateTime.parse(query.get("from"));
+            LocalDateTime to = LocalDateTime.parse(query.get("to"));
+            appointments = category == null
+                    ? calendar.getAppointmentsBetween(from, to)
+                    : calendar.getAppointmentsBetween(category, from, to);
+        } else {
+            throw new IllegalArgumentException("Expected a 'q', a 'day' or a 'from' and 'to' query parameter");
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer writer = responseWriter(exchange)) {
+            writer.write('[');
+            for (int i = 0; i < appointments.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeAppointment(writer, appointments.get(i));
+            }
+            writer.write(']');
+        }
+    }
+
+    private void handleChanges(HttpExchange exchange, AppointmentManager calendar) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        long since = query.containsKey("since") ? Long.parseLong(query.get("since")) : -1;
+        ChangeFeed.Changes changes = calendar.changesSince(query.get("epoch"), since);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer writer = responseWriter(exchange)) {
+            writer.write("{\"epoch\":");
+            writeString(writer, changes.getEpoch());
+            writer.write(",\"sequence\":");
+            writer.write(Long.toString(changes.getSequence()));
+            if (changes.isSnapshot()) {
+                writer.write(",\"snapshot\":[");
+                List<Appointment> snapshot = changes.getSnapshot();
+                for (int i = 0; i < snapshot.size(); i++) {
+                    if (i > 0) {
+                        writer.write(',');
+                    }
+                    writeAppointment(writer, snapshot.get(i));
+                }
+            } else {
+                writer.write(",\"changes\":[");
+                List<ChangeFeed.Change> list = changes.getChanges();
+                for (int i = 0; i < list.size(); i++) {
+                    ChangeFeed.Change change = list.get(i);
+                    if (i > 0) {
+                        writer.write(',');
+                    }
+                    writer.write("{\"sequence\":");
+                    writer.write(Long.toString(change.getSequence()));
+                    writer.write(",\"type\":\"");
+                    writer.write(change.getType().name().toLowerCase());
+                    if (change.getType() == ChangeFeed.Type.DELETED) {
+                        writer.write("\",\"code\":");
+                        writeString(writer, change.getAppointment().getCode());
+                    } else {
+                        writer.write("\",\"appointment\":");
+                        writeAppointment(writer, change.getAppointment());
+                    }
+                    writer.write('}');
+                }
+            }
+            writer.write("]}");
+        }
+    }
+
+    private void handleAdd(HttpExchange exchange, AppointmentManager calendar, String basePath) throws IOException {
+        Map<String, String> body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = JsonObjectReader.read(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        String category = parseCategory(body.get("category")).getName();
+        // The appointments file keeps minutes only, and takes the end's date from the start.
+        LocalDateTime start = LocalDateTime.parse(require(body, "start")).truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime end = LocalDateTime.parse(require(body, "end")).truncatedTo(ChronoUnit.MINUTES);
+        if (end.isBefore(start)) {
+            throw new IllegalArgumentException("End time must be after the start time");
+        }
+        if (!end.toLocalDate().equals(start.toLocalDate())) {
+            throw new IllegalArgumentException("Appointment must end on the day it starts");
+        }
+        String description = require(body, "description");
+        if (description.indexOf('\n') >= 0 || description.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Description must be a single line");
+        }
+        if (description.indexOf('|') >= 0) {
+            throw new IllegalArgumentException("Description must not contain '|'");
+        }
+        String recurrence = body.get("recurrence");
+        Appointment created = recurrence == null
+                ? calendar.createAppointment(category, start, end, description)
+                : calendar.createRecurringAppointment(category, start, end, description,
+                        RecurrenceRule.parse(recurrence));
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Location", basePath + "/" + created.getCode());
+        exchange.sendResponseHeaders(201, 0);
+        try (Writer writer = responseWriter(exchange)) {
+            writeAppointment(writer, created);
+        }
+    }
+
+    private void sendAppointment(HttpExchange exchange, Appointment appointment) throws IOException {
+        if (appointment == null) {
+            sendError(exchange, 404, "Appointment not found");
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer writer = responseWriter(exchange)) {
+            writeAppointment(writer, appointment);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, 0);
+        try (Writer writer = responseWriter(exchange)) {
+            writer.write("{\"error\":");
+            writeString(writer, message == null ? "Bad request" : message);
+            writer.write('}');
+        }
+    }
+
+    private static Writer responseWriter(HttpExchange exchange) {
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 8192);
+    }
+
+    /**
+     * Writes an appointment as a JSON object, including the rule of a recurring appointment.
+     */
+    static void writeAppointment(Writer writer, Appointment app) throws IOException {
+        writer.write("{\"code\":");
+        writeString(writer, app.getCode());
+        writer.write(",\"start\":\"");
+        writer.write(app.getStartTime().toString());
+        writer.write("\",\"end\":\"");
+        writer.write(app.getEndTime().toString());
+        writer.write("\",\"description\":");
+        writeString(writer, app.getDescription());
+        writer.write(",\"category\":");
+        writeString(writer, app.getCategory());
+        if (app instanceof RecurringAppointment) {
+            writer.write(",\"recurrence\":");
+            writeString(writer, ((RecurringAppointment) app).getRule().format());
+        }
+        writer.write('}');
+    }
+
+    /**
+     * Writes a JSON string literal, escaping quotes, backslashes and control characters.
+     */
+    static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': writer.write("\\\""); break;
+                case '\\': writer.write("\\\\"); break;
+                case '\n': writer.write("\\n"); break;
+                case '\r': writer.write("\\r"); break;
+                case '\t': writer.write("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Returns the category named by its code letter or any name starting with it, e.g. "W" or "Work".
+     */
+    private static Category parseCategory(String value) {
+        Category category = value == null || value.isEmpty() ? null : Category.fromCode(value.charAt(0));
+        if (category == null) {
+            throw new IllegalArgumentException("Category must be one of Work, Personal, Medical or Other");
+        }
+        return category;
+    }
+
+    private static String require(Map<String, String> body, String field) {
+        String value = body.get(field);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing field '" + field + "'");
+        }
+        return value;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Reads a flat JSON object whose values are all strings, which is all the request bodies need.
+     */
+    private static class JsonObjectReader {
+        private final String json;
+        private int position;
+
+        private JsonObjectReader(String json) {
+            this.json = json;
+        }
+
+        static Map<String, String> read(String json) {
+            JsonObjectReader reader = new JsonObjectReader(json);
+            Map<String, String> fields = new HashMap<>();
+            reader.expect('{');
+            if (reader.peek() == '}') {
+                reader.position++;
+            } else {
+                do {
+                    String name = reader.readString();
+                    reader.expect(':');
+                    fields.put(name, reader.readString());
+                } while (reader.tryConsume(','));
+                reader.expect('}');
+            }
+            if (reader.peek() != 0) {
+                throw new IllegalArgumentException("Unexpected content after JSON object");
+            }
+            return fields;
+        }
+
+        private char peek() {
+            while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+                position++;
+            }
+            return position < json.length() ? json.charAt(position) : 0;
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw new IllegalArgumentException("Expected '" + c + "' at position " + position);
+            }
+            position++;
+        }
+
+        private boolean tryConsume(char c) {
+            if (peek() == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < json.length()) {
+                char c = json.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= json.length()) {
+                    break;
+                }
+                char escaped = json.charAt(position++);
+                switch (escaped) {
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        if (position + 4 > json.length()) {
+                            throw new IllegalArgumentException("Truncated unicode escape");
+                        }
+                        value.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default: value.append(escaped);
+                }
+            }
+            throw new IllegalArgumentException("Unterminated string");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * The categories an appointment can belong to.
+ * Each category is identified by the letter that starts the codes of its appointments.
+ */
+package com.appointmentcalendar;
+
+public enum Category {
+    WORK('W', "Work"),
+    PERSONAL('P', "Personal"),
+    MEDICAL('M', "Medical"),
+    OTHER('O', "Other");
+
+    private final char code;
+    private final String name;
+
+    Category(char code, String name) {
+        this.code = code;
+        this.name = name;
+    }
+
+    /**
+     * Returns the letter that starts the codes of appointments in this category.
+     */
+    public char getCode() {
+        return code;
+    }
+
+    /**
+     * Returns the display name of the category, e.g. "Work".
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the category with the given code letter (case-insensitive), or null if there is none.
+     */
+    public static Category fromCode(char code) {
+        switch (Character.toUpperCase(code)) {
+            case 'W': return WORK;
+            case 'P': return PERSONAL;
+            case 'M': return MEDICAL;
+            case 'O': return OTHER;
+            default: return null;
+        }
+    }
+
+    /**
+     * Returns the category of an appointment code, or null if its first letter is not a category code.
+     */
+    public static Category fromAppointmentCode(String appointmentCode) {
+        return appointmentCode.isEmpty() ? null : fromCode(appointmentCode.charAt(0));
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * A log of the changes made to an AppointmentManager, numbered by a sequence that grows by one per change,
+ * so a client can stay in sync by asking for the changes after the last sequence number it has seen.
+ * Only the most recent changes are kept, in a ring buffer of fixed capacity; a client that has fallen
+ * further behind, or whose sequence number predates a bulk replacement of the calendar, has to start
+ * over from a snapshot. Sequence numbers start at zero for every manager, so each feed also has a random
+ * epoch: a sequence number means something only to the feed whose epoch came with it, and not, for example,
+ * to the feed of a later run of the server.
+ * This class is not thread-safe; the manager that owns it guards it.
+ */
+package com.appointmentcalendar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+public class ChangeFeed {
+    /**
+     * The kind of a change.
+     */
+    public enum Type { ADDED, UPDATED, DELETED }
+
+    private final String epoch = UUID.randomUUID().toString();
+    private final Change[] ring;
+    private long sequence;
+    // Clients at a lower sequence number missed a reset and need a snapshot.
+    private long resetSequence;
+
+    /**
+     * Creates an empty feed that keeps the given number of most recent changes.
+     */
+    public ChangeFeed(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.ring = new Change[capacity];
+    }
+
+    /**
+     * Returns the random identifier of this feed, which no other feed shares.
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the sequence number of the latest change, or of the latest reset if that came later.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Appends a change, overwriting the oldest one if the feed is full.
+     */
+    void record(Type type, Appointment appointment) {
+        sequence++;
+        ring[(int) (sequence % ring.length)] = new Change(sequence, type, appointment);
+    }
+
+    /**
+     * Drops every change and moves the sequence on, so that every client has to start over from a snapshot.
+     * Called when the calendar is replaced as a whole.
+     */
+    void reset() {
+        sequence++;
+        resetSequence = sequence;
+        Arrays.fill(ring, null);
+    }
+
+    /**
+     * Returns the changes made after the given sequence number, oldest first, or null if some of them are no
+     * longer kept or the sequence number was never handed out.
+     */
+    List<Change> since(long after) {
+        if (after < resetSequence || after > sequence || sequence - after > ring.length) {
+            return null;
+        }
+        if (after == sequence) {
+            return Collections.emptyList();
+        }
+        List<Change> changes = new ArrayList<>((int) (sequence - after));
+        for (long next = after + 1; next <= sequence; next++) {
+            changes.add(ring[(int) (next % ring.length)]);
+        }
+        return changes;
+    }
+
+    /**
+     * A single change. Updated and deleted appointments are reported as the objects the calendar held, so an
+     * appointment that was changed again since shows its latest details; only its code is final.
+     */
+    public static final class Change {
+        private final long sequence;
+        private final Type type;
+        private final Appointment appointment;
+
+        Change(long sequence, Type type, Appointment appointment) {
+            this.sequence = sequence;
+            this.type = type;
+            this.appointment = appointment;
+        }
+
+        /**
+         * Returns the sequence number of the change.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Returns whether the appointment was added, updated or deleted.
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * Returns the appointment that changed.
+         */
+        public Appointment getAppointment() {
+            return appointment;
+        }
+    }
+
+    /**
+     * What a client needs to catch up: either the changes since its sequence number or, if those are no
+     * longer kept, a snapshot of the whole calendar. Either way the client continues from getSequence.
+     */
+    public static final class Changes {
+        private final String epoch;
+        private final long sequence;
+        private final List<Change> changes;
+        private final List<Appointment> snapshot;
+
+        Changes(String epoch, long sequence, List<Change> changes, List<Appointment> snapshot) {
+            this.epoch = epoch;
+            this.sequence = sequence;
+            this.changes = changes;
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * Returns the epoch of the feed, to send along with the sequence number next time.
+         */
+        public String getEpoch() {
+            return epoch;
+        }
+
+        /**
+         * Returns the sequence number to ask for changes after next time.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Returns whether the client has to replace its copy with the snapshot instead of applying changes.
+         */
+        public boolean isSnapshot() {
+            return snapshot != null;
+        }
+
+        /**
+         * Returns the changes to apply, oldest first, or an empty list for a snapshot.
+         */
+        public List<Change> getChanges() {
+            return changes == null ? Collections.emptyList() : changes;
+        }
+
+        /**
+         * Returns every appointment in the calendar, or null if the changes were enough.
+         */
+        public List<Appointment> getSnapshot() {
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,603 @@
+/**
+ * An AppointmentManager that keeps its appointments in a CompactAppointmentStore instead of as objects,
+ * so very large calendars fit in a small heap and range scans walk contiguous arrays.
+ * Appointments returned by queries are created on demand and are copies: changing one does not change
+ * the calendar. Times are kept to the minute, codes must be a letter followed by one to nine digits,
+ * and categories follow the code letter.
+ * Recurring appointments are few and do not fit fixed-width records, so they are held by the indexes
+ * inherited from AppointmentManager, as they would be there; queries merge them with the store.
+ */
+package com.appointmentcalendar;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+public class CompactAppointmentManager extends AppointmentManager {
+    private CompactAppointmentStore store = new CompactAppointmentStore(0);
+    private final int[] highestCodeNumbers = new int[128];
+    private final int[] categoryCounts = new int[128];
+
+    /**
+     * Initializes a new, empty CompactAppointmentManager.
+     */
+    public CompactAppointmentManager() {
+        super();
+    }
+
+    /**
+     * Replaces the calendar with the contents of a binary snapshot, copying its records straight into the store.
+     * Listeners are only told that the calendar was replaced, as with setAppointments.
+     * @throws IOException if the file cannot be read or is not a valid snapshot.
+     */
+    public void loadBinary(String fileName) throws IOException {
+        CompactAppointmentStore loaded = BinarySnapshot.loadStore(fileName);
+        if (loaded == null) {
+            // The snapshot is not in start order or repeats a code, so it needs the general path.
+            setAppointments(BinarySnapshot.load(fileName));
+            return;
+        }
+        store = loaded;
+        resetCodeNumbers();
+        // Drops the recurring appointments and tells listeners that the calendar was replaced.
+        super.setAppointments(new ArrayList<>());
+    }
+
+    /**
+     * Writes the calendar to a binary snapshot without creating an Appointment for each record.
+     * @throws IOException if the file cannot be written, or the calendar holds recurring appointments,
+     *                     which a binary snapshot cannot store.
+     */
+    public void writeBinary(String fileName) throws IOException {
+        List<RecurringAppointment> series = getRecurringAppointments();
+        if (!series.isEmpty()) {
+            throw new IOException("Recurring appointments cannot be stored in a binary snapshot: "
+                    + series.get(0).getCode());
+        }
+        BinarySnapshot.write(store, fileName);
+    }
+
+    /**
+     * Adds a new appointment to the collection.
+     * An existing appointment with the same code is replaced.
+     * @throws IllegalArgumentException if the appointment is a one-off whose code cannot be stored compactly.
+     */
+    @Override
+    public void addAppointment(Appointment appointment) {
+        if (appointment instanceof RecurringAppointment) {
+            Appointment previous = removeFromStore(appointment.getCode());
+            if (previous != null) {
+                notifyDeleted(previous);
+            }
+            super.addAppointment(appointment);
+            return;
+        }
+        long key = CompactAppointmentStore.encodeCode(appointment.getCode());
+        if (key < 0) {
+            throw new IllegalArgumentException("Appointment code cannot be stored compactly: " + appointment.getCode());
+        }
+        // A series with the same code is replaced as well.
+        super.deleteAppointment(appointment.getCode());
+        Appointment previous = removeFromStore(appointment.getCode());
+        store.insert(appointment);
+        int category = (int) (key >>> 40);
+        highestCodeNumbers[category] = Math.max(highestCodeNumbers[category], (int) key);
+        categoryCounts[category]++;
+        if (previous != null) {
+            notifyDeleted(previous);
+        }
+        notifyAdded(appointment);
+    }
+
+    /**
+     * Adds a batch of appointments with one lookup for each code it replaces and one merge into the store,
+     * instead of a shift of the records for each appointment.
+     * Recurring appointments in the batch are added one by one after the others.
+     * @throws IllegalArgumentException if a one-off appointment's code cannot be stored compactly;
+     * nothing is added then.
+     */
+    @Override
+    public void addAll(List<Appointment> batch) {
+        Map<Long, Appointment> byCode = new HashMap<>();
+        List<Appointment> series = new ArrayList<>();
+        for (Appointment app : batch) {
+            if (app instanceof RecurringAppointment) {
+                series.add(app);
+                continue;
+            }
+            long key = CompactAppointmentStore.encodeCode(app.getCode());
+            if (key < 0) {
+                throw new IllegalArgumentException("Appointment code cannot be stored compactly: " + app.getCode());
+            }
+            byCode.put(key, app);
+        }
+        List<Appointment> replaced = new ArrayList<>();
+        for (long key : byCode.keySet()) {
+            int index = store.indexOf(key);
+            if (index >= 0) {
+                replaced.add(store.get(index));
+                categoryCounts[store.category(index)]--;
+                store.remove(index);
+            }
+        }
+        List<Appointment> ordered = new ArrayList<>(byCode.values());
+        ordered.sort(START_TIME_ORDER);
+        for (Appointment app : ordered) {
+            super.deleteAppointment(app.getCode());
+        }
+        store.insertAll(ordered);
+        for (long key : byCode.keySet()) {
+            int category = (int) (key >>> 40);
+            highestCodeNumbers[category] = Math.max(highestCodeNumbers[category], (int) key);
+            categoryCounts[category]++;
+        }
+        for (Appointment previous : replaced) {
+            notifyDeleted(previous);
+        }
+        for (Appointment app : ordered) {
+            notifyAdded(app);
+        }
+        for (Appointment app : series) {
+            addAppointment(app);
+        }
+    }
+
+    @Override
+    public Appointment findByCode(String code) {
+        int index = store.indexOf(code);
+        return index < 0 ? super.findByCode(code) : store.get(index);
+    }
+
+    @Override
+    public List<Appointment> getAllAppointments() {
+        return getSortedAppointments();
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsBetween(LocalDateTime from, LocalDateTime to) {
+        List<Appointment> result = new ArrayList<>();
+        if (!from.isBefore(to)) {
+            return result;
+        }
+        long end = CompactAppointmentStore.firstMinuteAtOrAfter(to);
+        for (int i = store.firstStartingAtOrAfter(CompactAppointmentStore.firstMinuteAtOrAfter(from));
+             i < store.size() && store.startMinute(i) < end; i++) {
+            result.add(store.get(i));
+        }
+        return merge(result, super.getAppointmentsBetween(from, to), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Appointment getNextAppointmentAfter(LocalDateTime time) {
+        int index = store.firstStartingAtOrAfter(CompactAppointmentStore.firstMinuteAtOrAfter(time.plusNanos(1)));
+        Appointment next = index < store.size() ? store.get(index) : null;
+        Appointment occurrence = super.getNextAppointmentAfter(time);
+        if (next == null || (occurrence != null && START_TIME_ORDER.compare(occurrence, next) < 0)) {
+            return occurrence;
+        }
+        return next;
+    }
+
+    @Override
+    public Iterator<Appointment> iterateFrom(LocalDateTime from) {
+        int first = store.firstStartingAtOrAfter(CompactAppointmentStore.firstMinuteAtOrAfter(from));
+        if (getRecurringAppointments().isEmpty()) {
+            return iterator(first);
+        }
+        return merge(iterator(first), super.iterateFrom(from));
+    }
+
+    @Override
+    public List<Appointment> page(LocalDateTime from, LocalDateTime to, Predicate<Appointment> filter,
+                                  Appointment afterKey, int limit) {
+        List<Appointment> page = new ArrayList<>(Math.min(limit, 64));
+        if ((from != null && to != null && !from.isBefore(to))
+                || (afterKey != null && to != null && START_TIME_ORDER.compare(afterKey, probe(to)) >= 0)) {
+            return page;
+        }
+        int index;
+        if (afterKey != null && (from == null || START_TIME_ORDER.compare(afterKey, probe(from)) >= 0)) {
+            index = store.firstAfter(afterKey);
+        } else {
+            index = from == null ? 0 : store.firstStartingAtOrAfter(CompactAppointmentStore.firstMinuteAtOrAfter(from));
+        }
+        long end = to == null ? Long.MAX_VALUE : CompactAppointmentStore.firstMinuteAtOrAfter(to);
+        for (; index < store.size() && page.size() < limit && store.startMinute(index) < end; index++) {
+            Appointment app = store.get(index);
+            if (filter == null || filter.test(app)) {
+                page.add(app);
+            }
+        }
+        return merge(page, super.page(from, to, filter, afterKey, limit), limit);
+    }
+
+    @Override
+    public int countByCategory(Category category) {
+        return categoryCounts[category.getCode()] + super.countByCategory(category);
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsBetween(Category category, LocalDateTime from, LocalDateTime to) {
+        return page(category, from, to, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns up to {@code limit} appointments of a category in start order that start within [from, to)
+     * and come after {@code afterKey}.
+     * The store keeps no per-category order, so the range is scanned and records of other categories
+     * are skipped by their category letter without creating an appointment for them.
+     */
+    @Override
+    public List<Appointment> page(Category category, LocalDateTime from, LocalDateTime to,
+                                  Appointment afterKey, int limit) {
+        if (category == null) {
+            return page(from, to, null, afterKey, limit);
+        }
+        List<Appointment> page = new ArrayList<>(Math.min(limit, 64));
+        if ((from != null && to != null && !from.isBefore(to))
+                || (afterKey != null && to != null && START_TIME_ORDER.compare(afterKey, probe(to)) >= 0)) {
+            return page;
+        }
+        int index;
+        if (afterKey != null && (from == null || START_TIME_ORDER.compare(afterKey, probe(from)) >= 0)) {
+            index = store.firstAfter(afterKey);
+        } else {
+            index = from == null ? 0 : store.firstStartingAtOrAfter(CompactAppointmentStore.firstMinuteAtOrAfter(from));
+        }
+        long end = to == null ? Long.MAX_VALUE : CompactAppointmentStore.firstMinuteAtOrAfter(to);
+        int remaining = categoryCounts[category.getCode()];
+        for (; index < store.size() && page.size() < limit && page.size() < remaining
+                && store.startMinute(index) < end; index++) {
+            if (store.category(index) == category.getCode()) {
+                page.add(store.get(index));
+            }
+        }
+        return merge(page, super.page(category, from, to, afterKey, limit), limit);
+    }
+
+    /**
+     * Returns up to {@code limit} appointments whose descriptions match the query, closest in time to the
+     * reference first. The store keeps no word index, so every description is matched in turn;
+     * appointments are created only for the records that match. Recurring appointments are found
+     * through the inherited word index.
+     */
+    @Override
+    public List<Appointment> search(String query, LocalDateTime reference, int limit) {
+        SearchIndex.Query parsed = SearchIndex.Query.parse(query);
+        List<Appointment> matches = new ArrayList<>();
+        if (parsed.isEmpty()) {
+            return matches;
+        }
+        for (int i = 0; i < store.size(); i++) {
+            if (parsed.matches(store.description(i))) {
+                matches.add(store.get(i));
+            }
+        }
+        matches.addAll(super.search(query, reference, limit));
+        return SearchIndex.rankByProximity(matches, reference, limit);
+    }
+
+    @Override
+    public List<Appointment> getSortedAppointments() {
+        return merge(storedAppointments(), super.getSortedAppointments(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the appointments in start order; records are created from the store, so they are copies already,
+     * and recurring appointments are copied.
+     */
+    @Override
+    public List<Appointment> snapshot() {
+        List<Appointment> series = new ArrayList<>();
+        for (RecurringAppointment recurring : getRecurringAppointments()) {
+            series.add(recurring.copy());
+        }
+        series.sort(START_TIME_ORDER);
+        return merge(storedAppointments(), series, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean deleteAppointment(String code) {
+        Appointment removed = removeFromStore(code);
+        if (removed == null) {
+            return super.deleteAppointment(code);
+        }
+        notifyDeleted(removed);
+        return true;
+    }
+
+    /**
+     * Sets the list of appointments and resets category counters.
+     * @throws IllegalArgumentException if a one-off appointment's code cannot be stored compactly.
+     */
+    @Override
+    public void setAppointments(List<Appointment> appointments) {
+        List<Appointment> series = new ArrayList<>();
+        List<Appointment> ordered = new ArrayList<>(appointments.size());
+        for (Appointment app : appointments) {
+            (app instanceof RecurringAppointment ? series : ordered).add(app);
+        }
+        if (!series.isEmpty()) {
+            // A series and a one-off appointment may share a code, so the later one has to win across both.
+            series.clear();
+            ordered.clear();
+            for (Appointment app : latestInStartOrder(appointments)) {
+                (app instanceof RecurringAppointment ? series : ordered).add(app);
+            }
+        }
+        if (hasDuplicateCodes(ordered)) {
+            // As in AppointmentManager, a later appointment replaces an earlier one with the same code.
+            Map<Long, Appointment> byCode = new HashMap<>();
+            for (Appointment app : ordered) {
+                byCode.put(CompactAppointmentStore.encodeCode(app.getCode()), app);
+            }
+            ordered = new ArrayList<>(byCode.values());
+        }
+        if (!isInStartOrder(ordered)) {
+            ordered = new ArrayList<>(ordered);
+            ordered.sort(START_TIME_ORDER);
+        }
+        // In start order every insert lands at the end, so no records are shifted.
+        CompactAppointmentStore replacement = new CompactAppointmentStore(ordered.size());
+        for (Appointment app : ordered) {
+            replacement.insert(app);
+        }
+        store = replacement;
+        resetCodeNumbers();
+        // Replaces the recurring appointments and tells listeners, once the store is in place.
+        super.setAppointments(series);
+    }
+
+    /**
+     * Adds appointments read from storage to those already held, without notifying listeners.
+     */
+    @Override
+    void addLoaded(List<Appointment> loaded) {
+        List<Appointment> series = new ArrayList<>();
+        for (Appointment app : loaded) {
+            if (app instanceof RecurringAppointment) {
+                series.add(app);
+            } else {
+                removeFromStore(app.getCode());
+                long key = CompactAppointmentStore.encodeCode(app.getCode());
+                store.insert(app);
+                int category = (int) (key >>> 40);
+                highestCodeNumbers[category] = Math.max(highestCodeNumbers[category], (int) key);
+                categoryCounts[category]++;
+            }
+        }
+        super.addLoaded(series);
+    }
+
+    @Override
+    void reserveCodes(char categoryCode, int highestNumber) {
+        super.reserveCodes(categoryCode, highestNumber);
+        char category = Character.toUpperCase(categoryCode);
+        if (category < highestCodeNumbers.length) {
+            highestCodeNumbers[category] = Math.max(highestCodeNumbers[category], highestNumber);
+        }
+    }
+
+    @Override
+    List<Appointment> getOneOffAppointmentsBetween(LocalDateTime from, LocalDateTime to) {
+        List<Appointment> result = new ArrayList<>();
+        long end = CompactAppointmentStore.firstMinuteAtOrAfter(to);
+        for (int i = store.firstStartingAtOrAfter(CompactAppointmentStore.firstMinuteAtOrAfter(from));
+             i < store.size() && store.startMinute(i) < end; i++) {
+            result.add(store.get(i));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Appointment> findConflicts(LocalDateTime start, LocalDateTime end) {
+        List<Appointment> conflicts = new ArrayList<>();
+        long startMinute = CompactAppointmentStore.firstMinuteAtOrAfter(start);
+        long endMinute = CompactAppointmentStore.firstMinuteAtOrAfter(end);
+        // No appointment is longer than the longest one stored, so earlier starts cannot reach the range.
+        for (int i = store.firstStartingAtOrAfter(startMinute - store.maxLength() - 1);
+             i < store.size() && store.startMinute(i) < endMinute; i++) {
+            Appointment app = store.get(i);
+            if (app.getEndTime().isAfter(start) && app.getStartTime().isBefore(end)) {
+                conflicts.add(app);
+            }
+        }
+        return merge(conflicts, super.findConflicts(start, end), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<AppointmentConflict> findAllConflicts() {
+        List<AppointmentConflict> conflicts = new ArrayList<>();
+        PriorityQueue<Integer> active = new PriorityQueue<>(Comparator.comparingInt(store::endMinute));
+        for (int i = 0; i < store.size(); i++) {
+            while (!active.isEmpty() && store.endMinute(active.peek()) <= store.startMinute(i)) {
+                active.poll();
+            }
+            if (!active.isEmpty()) {
+                Appointment app = store.get(i);
+                for (int running : active) {
+                    conflicts.add(new AppointmentConflict(store.get(running), app));
+                }
+            }
+            active.add(i);
+        }
+        return conflicts;
+    }
+
+    @Override
+    public String generateAppointmentCode(String category) {
+        char categoryCode = Character.toUpperCase(category.charAt(0));
+        if (categoryCode >= highestCodeNumbers.length) {
+            throw new IllegalArgumentException("Category cannot be stored compactly: " + category);
+        }
+        String code;
+        do {
+            int counter = ++highestCodeNumbers[categoryCode];
+            code = String.format("%s%03d", categoryCode, counter);
+        } while (super.findByCode(code) != null);
+        return code;
+    }
+
+    /**
+     * Removes the record with the given code from the store and returns it, or returns null if there is none.
+     */
+    private Appointment removeFromStore(String code) {
+        int index = store.indexOf(code);
+        if (index < 0) {
+            return null;
+        }
+        Appointment removed = store.get(index);
+        categoryCounts[store.category(index)]--;
+        store.remove(index);
+        return removed;
+    }
+
+    /**
+     * Returns every record of the store as an appointment, in start order.
+     */
+    private List<Appointment> storedAppointments() {
+        List<Appointment> sorted = new ArrayList<>(store.size());
+        for (int i = 0; i < store.size(); i++) {
+            sorted.add(store.get(i));
+        }
+        return sorted;
+    }
+
+    /**
+     * Merges two lists in start order into the first, keeping at most {@code limit} appointments.
+     * The second list is usually empty or short: it holds recurring appointments or their occurrences.
+     */
+    private static List<Appointment> merge(List<Appointment> stored, List<Appointment> recurring, int limit) {
+        if (recurring.isEmpty()) {
+            return stored;
+        }
+        List<Appointment> merged = new ArrayList<>(Math.min(limit, stored.size() + recurring.size()));
+        int i = 0;
+        int j = 0;
+        while (merged.size() < limit && (i < stored.size() || j < recurring.size())) {
+            if (j == recurring.size()
+                    || (i < stored.size() && START_TIME_ORDER.compare(stored.get(i), recurring.get(j)) <= 0)) {
+                merged.add(stored.get(i++));
+            } else {
+                merged.add(recurring.get(j++));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Merges two iterators in start order, reading each only as far as needed.
+     */
+    private static Iterator<Appointment> merge(Iterator<Appointment> stored, Iterator<Appointment> recurring) {
+        return new Iterator<>() {
+            private Appointment nextStored = stored.hasNext() ? stored.next() : null;
+            private Appointment nextRecurring = recurring.hasNext() ? recurring.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return nextStored != null || nextRecurring != null;
+            }
+
+            @Override
+            public Appointment next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Appointment current;
+                if (nextRecurring == null
+                        || (nextStored != null && START_TIME_ORDER.compare(nextStored, nextRecurring) <= 0)) {
+                    current = nextStored;
+                    nextStored = stored.hasNext() ? stored.next() : null;
+                } else {
+                    current = nextRecurring;
+                    nextRecurring = recurring.hasNext() ? recurring.next() : null;
+                }
+                return current;
+            }
+        };
+    }
+
+    /**
+     * Returns a read-only iterator over the records from the given index on, creating each appointment as it is reached.
+     */
+    private Iterator<Appointment> iterator(int first) {
+        CompactAppointmentStore iterated = store;
+        int expectedModCount = iterated.modCount();
+        return new Iterator<>() {
+            private int index = first;
+
+            @Override
+            public boolean hasNext() {
+                return index < iterated.size();
+            }
+
+            @Override
+            public Appointment next() {
+                if (iterated.modCount() != expectedModCount || iterated != store) {
+                    throw new ConcurrentModificationException();
+                }
+                if (index >= iterated.size()) {
+                    throw new NoSuchElementException();
+                }
+                return iterated.get(index++);
+            }
+        };
+    }
+
+    /**
+     * Returns whether the appointments are in start order.
+     */
+    private static boolean isInStartOrder(List<Appointment> appointments) {
+        for (int i = 1; i < appointments.size(); i++) {
+            if (START_TIME_ORDER.compare(appointments.get(i - 1), appointments.get(i)) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether two appointments share a code, ignoring case.
+     * @throws IllegalArgumentException if an appointment's code cannot be stored compactly.
+     */
+    private static boolean hasDuplicateCodes(List<Appointment> appointments) {
+        long[] codes = new long[appointments.size()];
+        for (int i = 0; i < codes.length; i++) {
+            Appointment app = appointments.get(i);
+            codes[i] = CompactAppointmentStore.encodeCode(app.getCode());
+            if (codes[i] < 0) {
+                throw new IllegalArgumentException("Appointment code cannot be stored compactly: " + app.getCode());
+            }
+        }
+        Arrays.sort(codes);
+        for (int i = 1; i < codes.length; i++) {
+            if (codes[i] == codes[i - 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Recomputes the highest code number in use and the number of appointments for every category letter.
+     */
+    private void resetCodeNumbers() {
+        Arrays.fill(highestCodeNumbers, 0);
+        Arrays.fill(categoryCounts, 0);
+        for (int i = 0; i < store.size(); i++) {
+            char category = store.category(i);
+            highestCodeNumbers[category] = Math.max(highestCodeNumbers[category], store.codeNumber(i));
+            categoryCounts[category]++;
+        }
+    }
+}
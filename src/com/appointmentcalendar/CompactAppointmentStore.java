@@ -0,0 +1,592 @@
+/**
+ * Holds appointments as parallel primitive arrays sorted by start time, instead of as objects.
+ * Each record takes 22 bytes plus its description, which lives as UTF-8 in one shared byte pool:
+ * start and end in minutes since 1970-01-01T00:00, the numeric part of the code and its digit count,
+ * the category letter, and the description's offset and length in the pool.
+ * Appointment objects are created only when a record is read, and are detached copies of it.
+ * Times are kept to the minute and code letters are kept upper-case.
+ * The record layout matches the binary snapshot, so a snapshot loads with a straight copy.
+ * Codes are looked up through a hash index from code to start minute, which takes another 16 to 32 bytes
+ * per record; the start minute stays put when records shift, so keeping the index up to date is cheap.
+ */
+package com.appointmentcalendar;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+class CompactAppointmentStore {
+    static final int MAX_CODE_DIGITS = 9;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size;
+    private int[] starts;
+    private int[] ends;
+    private int[] codeNumbers;
+    private byte[] codeDigits;
+    private byte[] categories;
+    private int[] descriptionOffsets;
+    private int[] descriptionLengths;
+    // The pool is a fixed base region, e.g. a loaded snapshot's heap, followed by a growable region for
+    // descriptions added later, so adding to a large store never copies the whole pool.
+    private byte[] baseDescriptions;
+    private byte[] descriptions;
+    private int descriptionsUsed;
+    private int descriptionsGarbage;
+    private int maxLength;
+    private int modCount;
+    private final CodeIndex codeIndex;
+
+    /**
+     * Creates an empty store with room for the given number of records.
+     */
+    CompactAppointmentStore(int capacity) {
+        this(capacity, new byte[0]);
+    }
+
+    /**
+     * Creates an empty store whose description pool starts with the given bytes,
+     * so records appended with appendRecord can point into them.
+     */
+    CompactAppointmentStore(int capacity, byte[] baseDescriptions) {
+        capacity = Math.max(capacity, INITIAL_CAPACITY);
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.codeNumbers = new int[capacity];
+        this.codeDigits = new byte[capacity];
+        this.categories = new byte[capacity];
+        this.descriptionOffsets = new int[capacity];
+        this.descriptionLengths = new int[capacity];
+        this.baseDescriptions = baseDescriptions;
+        this.descriptions = new byte[Math.min(capacity, 1 << 16) * 16];
+        this.codeIndex = new CodeIndex(capacity);
+    }
+
+    /**
+     * Returns the number of records.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns a counter that changes whenever records are added or removed.
+     */
+    int modCount() {
+        return modCount;
+    }
+
+    /**
+     * Returns the longest duration of any record ever stored, in minutes.
+     */
+    int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Returns the start of a record in minutes since 1970-01-01T00:00.
+     */
+    int startMinute(int index) {
+        return starts[index];
+    }
+
+    /**
+     * Returns the end of a record in minutes since 1970-01-01T00:00.
+     */
+    int endMinute(int index) {
+        return ends[index];
+    }
+
+    /**
+     * Returns the numeric part of a record's code.
+     */
+    int codeNumber(int index) {
+        return codeNumbers[index];
+    }
+
+    /**
+     * Returns the category letter of a record's code.
+     */
+    char category(int index) {
+        return (char) categories[index];
+    }
+
+    /**
+     * Returns the code of a record encoded as by encodeCode.
+     */
+    long encodedCode(int index) {
+        return ((long) categories[index] << 40) | ((long) (codeDigits[index] & 0xFF) << 32)
+                | (codeNumbers[index] & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Builds the code of a record, e.g. "W007".
+     */
+    String code(int index) {
+        char[] chars = new char[1 + codeDigits[index]];
+        chars[0] = (char) categories[index];
+        int number = codeNumbers[index];
+        for (int d = chars.length - 1; d >= 1; d--) {
+            chars[d] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Creates an Appointment holding a copy of a record.
+     */
+    Appointment get(int index) {
+        String code = code(index);
+        return new Appointment(
+                code,
+                BinarySnapshot.fromEpochMinute(starts[index]),
+                BinarySnapshot.fromEpochMinute(ends[index]),
+                description(index),
+                FileManager.getCategoryFromCode(code));
+    }
+
+    /**
+     * Decodes the description of a record.
+     */
+    String description(int index) {
+        int offset = descriptionOffsets[index];
+        if (offset < baseDescriptions.length) {
+            return new String(baseDescriptions, offset, descriptionLengths[index], StandardCharsets.UTF_8);
+        }
+        return new String(descriptions, offset - baseDescriptions.length, descriptionLengths[index],
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the index of the first record starting at or after the given minute, or size if there is none.
+     */
+    int firstStartingAtOrAfter(long minute) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] < minute) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first record that sorts after the given appointment in start order,
+     * or size if there is none. The appointment does not need to be in the store.
+     */
+    int firstAfter(Appointment key) {
+        int index = firstStartingAtOrAfter(firstMinuteAtOrAfter(key.getStartTime()));
+        while (index < size && AppointmentManager.START_TIME_ORDER.compare(get(index), key) <= 0) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of the record with the given code (case-insensitive), or -1 if there is none.
+     */
+    int indexOf(String code) {
+        long key = encodeCode(code);
+        return key < 0 ? -1 : indexOf(key);
+    }
+
+    /**
+     * Returns the index of the record with the given encoded code, or -1 if there is none.
+     * The code index gives the record's start minute, and the record is found among those starting then.
+     */
+    int indexOf(long key) {
+        int slot = codeIndex.find(key);
+        if (slot < 0) {
+            return -1;
+        }
+        int minute = codeIndex.minute(slot);
+        for (int i = firstStartingAtOrAfter(minute); i < size && starts[i] == minute; i++) {
+            if (encodedCode(i) == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Inserts an appointment at its place in start order and returns its index. The code must not be stored yet.
+     * @throws IllegalArgumentException if the appointment cannot be stored compactly.
+     */
+    int insert(Appointment appointment) {
+        long key = encodeCode(appointment.getCode());
+        if (key < 0) {
+            throw new IllegalArgumentException("Appointment code cannot be stored compactly: " + appointment.getCode());
+        }
+        int start = BinarySnapshot.toEpochMinute(appointment.getStartTime());
+        int end = BinarySnapshot.toEpochMinute(appointment.getEndTime());
+        byte[] description = appointment.getDescription().getBytes(StandardCharsets.UTF_8);
+        int offset = appendDescription(description);
+
+        String code = appointment.getCode().toUpperCase();
+        int index = firstStartingAtOrAfter(start);
+        while (index < size && starts[index] == start && code(index).compareTo(code) < 0) {
+            index++;
+        }
+        ensureCapacity(size + 1);
+        int tail = size - index;
+        System.arraycopy(starts, index, starts, index + 1, tail);
+        System.arraycopy(ends, index, ends, index + 1, tail);
+        System.arraycopy(codeNumbers, index, codeNumbers, index + 1, tail);
+        System.arraycopy(codeDigits, index, codeDigits, index + 1, tail);
+        System.arraycopy(categories, index, categories, index + 1, tail);
+        System.arraycopy(descriptionOffsets, index, descriptionOffsets, index + 1, tail);
+        System.arraycopy(descriptionLengths, index, descriptionLengths, index + 1, tail);
+        set(index, start, end, (byte) (key >>> 40), (byte) (key >>> 32), (int) key, offset, description.length);
+        codeIndex.put(key, start);
+        size++;
+        modCount++;
+        return index;
+    }
+
+    /**
+     * Inserts appointments given in start order with one merge from the back, so every record already stored
+     * is moved at most once however many are inserted. The codes must not be stored yet.
+     * @throws IllegalArgumentException if an appointment cannot be stored compactly; nothing is inserted then.
+     */
+    void insertAll(List<Appointment> sorted) {
+        int count = sorted.size();
+        long[] keys = new long[count];
+        byte[][] descriptionBytes = new byte[count][];
+        int descriptionTotal = 0;
+        for (int j = 0; j < count; j++) {
+            Appointment appointment = sorted.get(j);
+            keys[j] = encodeCode(appointment.getCode());
+            if (keys[j] < 0) {
+                throw new IllegalArgumentException("Appointment code cannot be stored compactly: "
+                        + appointment.getCode());
+            }
+            descriptionBytes[j] = appointment.getDescription().getBytes(StandardCharsets.UTF_8);
+            descriptionTotal += descriptionBytes[j].length;
+        }
+        if ((long) baseDescriptions.length + descriptionsUsed + descriptionTotal > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Description pool is full");
+        }
+        // Made room for up front, so appending cannot compact the pool under descriptions not yet in a record.
+        ensureDescriptionCapacity(descriptionTotal);
+        ensureCapacity(size + count);
+        int read = size - 1;
+        int write = size + count - 1;
+        for (int j = count - 1; j >= 0; j--) {
+            Appointment appointment = sorted.get(j);
+            int start = BinarySnapshot.toEpochMinute(appointment.getStartTime());
+            char category = (char) (keys[j] >>> 40);
+            int digits = (int) (keys[j] >>> 32) & 0xFF;
+            int number = (int) keys[j];
+            while (read >= 0 && (starts[read] > start
+                    || (starts[read] == start && compareCodes(read, category, digits, number) > 0))) {
+                move(read--, write--);
+            }
+            set(write--, start, BinarySnapshot.toEpochMinute(appointment.getEndTime()), (byte) category,
+                    (byte) digits, number, appendDescription(descriptionBytes[j]), descriptionBytes[j].length);
+            codeIndex.put(keys[j], start);
+        }
+        size += count;
+        modCount++;
+    }
+
+    /**
+     * Appends a record that points into the description pool, keeping start order.
+     * Returns false without appending if the record would sort before the current last record
+     * or its code is stored already.
+     */
+    boolean appendRecord(int start, int end, char category, int digits, int number,
+                         int descriptionOffset, int descriptionLength) {
+        if (size > 0 && (start < starts[size - 1] || (start == starts[size - 1]
+                && compareCodes(size - 1, category, digits, number) > 0))) {
+            return false;
+        }
+        long key = ((long) category << 40) | ((long) digits << 32) | (number & 0xFFFFFFFFL);
+        if (codeIndex.find(key) >= 0) {
+            return false;
+        }
+        ensureCapacity(size + 1);
+        set(size, start, end, (byte) category, (byte) digits, number, descriptionOffset, descriptionLength);
+        codeIndex.put(key, start);
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Removes the record at the given index.
+     */
+    void remove(int index) {
+        codeIndex.remove(encodedCode(index));
+        descriptionsGarbage += descriptionLengths[index];
+        int tail = size - index - 1;
+        System.arraycopy(starts, index + 1, starts, index, tail);
+        System.arraycopy(ends, index + 1, ends, index, tail);
+        System.arraycopy(codeNumbers, index + 1, codeNumbers, index, tail);
+        System.arraycopy(codeDigits, index + 1, codeDigits, index, tail);
+        System.arraycopy(categories, index + 1, categories, index, tail);
+        System.arraycopy(descriptionOffsets, index + 1, descriptionOffsets, index, tail);
+        System.arraycopy(descriptionLengths, index + 1, descriptionLengths, index, tail);
+        size--;
+        modCount++;
+    }
+
+    /**
+     * Copies the UTF-8 description of a record into the destination at the given position and returns its length.
+     */
+    private int copyDescription(int index, byte[] destination, int position) {
+        int offset = descriptionOffsets[index];
+        int length = descriptionLengths[index];
+        if (offset < baseDescriptions.length) {
+            System.arraycopy(baseDescriptions, offset, destination, position, length);
+        } else {
+            System.arraycopy(descriptions, offset - baseDescriptions.length, destination, position, length);
+        }
+        return length;
+    }
+
+    /**
+     * Copies the UTF-8 description of a record into the destination array and returns its length,
+     * or returns its length without copying if the destination is too small.
+     */
+    int copyDescription(int index, byte[] destination) {
+        int length = descriptionLengths[index];
+        return length > destination.length ? length : copyDescription(index, destination, 0);
+    }
+
+    /**
+     * Encodes a code of one ASCII letter followed by one to nine digits as
+     * {@code letter << 40 | digitCount << 32 | number}, with the letter upper-cased.
+     * Returns -1 if the code does not have that form.
+     */
+    static long encodeCode(String code) {
+        int digits = code.length() - 1;
+        if (digits < 1 || digits > MAX_CODE_DIGITS || code.charAt(0) > 0x7F) {
+            return -1;
+        }
+        long number = 0;
+        for (int i = 1; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return ((long) Character.toUpperCase(code.charAt(0)) << 40) | ((long) digits << 32) | number;
+    }
+
+    /**
+     * Returns the first whole minute at or after the given time.
+     */
+    static long firstMinuteAtOrAfter(LocalDateTime time) {
+        long second = time.toEpochSecond(ZoneOffset.UTC);
+        long minute = Math.floorDiv(second, 60);
+        return Math.floorMod(second, 60) == 0 && time.getNano() == 0 ? minute : minute + 1;
+    }
+
+    /**
+     * Compares the code of a record with the given code parts in the string order of the codes.
+     */
+    private int compareCodes(int index, char category, int digits, int number) {
+        if (categories[index] != category) {
+            return Character.compare((char) categories[index], category);
+        }
+        if (codeDigits[index] == digits) {
+            return Integer.compare(codeNumbers[index], number);
+        }
+        StringBuilder other = new StringBuilder().append(category);
+        String digitsText = Integer.toString(number);
+        for (int i = digitsText.length(); i < digits; i++) {
+            other.append('0');
+        }
+        return code(index).compareTo(other.append(digitsText).toString());
+    }
+
+    private void move(int from, int to) {
+        starts[to] = starts[from];
+        ends[to] = ends[from];
+        categories[to] = categories[from];
+        codeDigits[to] = codeDigits[from];
+        codeNumbers[to] = codeNumbers[from];
+        descriptionOffsets[to] = descriptionOffsets[from];
+        descriptionLengths[to] = descriptionLengths[from];
+    }
+
+    private void set(int index, int start, int end, byte category, byte digits, int number,
+                     int descriptionOffset, int descriptionLength) {
+        starts[index] = start;
+        ends[index] = end;
+        categories[index] = category;
+        codeDigits[index] = digits;
+        codeNumbers[index] = number;
+        descriptionOffsets[index] = descriptionOffset;
+        descriptionLengths[index] = descriptionLength;
+        maxLength = Math.max(maxLength, end - start);
+    }
+
+    /**
+     * Appends a description to the pool and returns its offset, compacting the pool first
+     * if most of it belongs to removed records.
+     */
+    private int appendDescription(byte[] description) {
+        ensureDescriptionCapacity(description.length);
+        if ((long) baseDescriptions.length + descriptionsUsed + description.length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Description pool is full");
+        }
+        System.arraycopy(description, 0, descriptions, descriptionsUsed, description.length);
+        int offset = baseDescriptions.length + descriptionsUsed;
+        descriptionsUsed += description.length;
+        return offset;
+    }
+
+    /**
+     * Makes room for the given number of description bytes, compacting the pool first
+     * if most of it belongs to removed records.
+     */
+    private void ensureDescriptionCapacity(int length) {
+        if (descriptionsUsed + length > descriptions.length) {
+            if (descriptionsGarbage > (baseDescriptions.length + descriptionsUsed) / 2) {
+                compactDescriptions();
+            }
+            if (descriptionsUsed + length > descriptions.length) {
+                int capacity = Math.max(descriptions.length + (descriptions.length >> 1), descriptionsUsed + length);
+                descriptions = Arrays.copyOf(descriptions, Math.max(capacity, 1024));
+            }
+        }
+    }
+
+    /**
+     * Rewrites the pool so its base region holds only the descriptions of current records, in record order.
+     */
+    private void compactDescriptions() {
+        byte[] compacted = new byte[baseDescriptions.length + descriptionsUsed - descriptionsGarbage];
+        int used = 0;
+        for (int i = 0; i < size; i++) {
+            used += copyDescription(i, compacted, used);
+        }
+        for (int i = 0, offset = 0; i < size; i++) {
+            descriptionOffsets[i] = offset;
+            offset += descriptionLengths[i];
+        }
+        baseDescriptions = compacted;
+        descriptions = new byte[1024];
+        descriptionsUsed = 0;
+        descriptionsGarbage = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= starts.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, starts.length + (starts.length >> 1));
+        starts = Arrays.copyOf(starts, newCapacity);
+        ends = Arrays.copyOf(ends, newCapacity);
+        codeNumbers = Arrays.copyOf(codeNumbers, newCapacity);
+        codeDigits = Arrays.copyOf(codeDigits, newCapacity);
+        categories = Arrays.copyOf(categories, newCapacity);
+        descriptionOffsets = Arrays.copyOf(descriptionOffsets, newCapacity);
+        descriptionLengths = Arrays.copyOf(descriptionLengths, newCapacity);
+    }
+
+    /**
+     * An open-addressing hash map with linear probing from encoded codes to start minutes.
+     * Removal shifts later entries of a probe run back instead of leaving tombstones.
+     */
+    private static final class CodeIndex {
+        private static final long EMPTY = -1;
+        // Spreads the letter, digit count and number over the high bits used to pick a slot.
+        private static final long MIX = 0x9E3779B97F4A7C15L;
+
+        private long[] keys;
+        private int[] minutes;
+        private int shift;
+        private int size;
+
+        CodeIndex(int capacity) {
+            allocate(capacity);
+        }
+
+        /**
+         * Returns the slot holding the key, or -1 if it is not in the map.
+         */
+        int find(long key) {
+            int mask = keys.length - 1;
+            for (int slot = home(key); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        int minute(int slot) {
+            return minutes[slot];
+        }
+
+        void put(long key, int minute) {
+            if ((long) (size + 1) * 4 > (long) keys.length * 3) {
+                long[] oldKeys = keys;
+                int[] oldMinutes = minutes;
+                allocate(keys.length);
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != EMPTY) {
+                        put(oldKeys[i], oldMinutes[i]);
+                    }
+                }
+            }
+            int mask = keys.length - 1;
+            int slot = home(key);
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == EMPTY) {
+                size++;
+            }
+            keys[slot] = key;
+            minutes[slot] = minute;
+        }
+
+        void remove(long key) {
+            int hole = find(key);
+            if (hole < 0) {
+                return;
+            }
+            int mask = keys.length - 1;
+            for (int slot = (hole + 1) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                // An entry may fill the hole if the hole lies between its home slot and where it is now.
+                if (((slot - home(keys[slot])) & mask) >= ((slot - hole) & mask)) {
+                    keys[hole] = keys[slot];
+                    minutes[hole] = minutes[slot];
+                    hole = slot;
+                }
+            }
+            keys[hole] = EMPTY;
+            size--;
+        }
+
+        private int home(long key) {
+            return (int) ((key * MIX) >>> shift);
+        }
+
+        /**
+         * Replaces the table with an empty one large enough for more than the given number of entries.
+         */
+        private void allocate(int entries) {
+            int length = 16;
+            while ((long) length * 3 <= (long) entries * 4) {
+                length <<= 1;
+            }
+            keys = new long[length];
+            Arrays.fill(keys, EMPTY);
+            minutes = new int[length];
+            shift = 64 - Integer.numberOfTrailingZeros(length);
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/**
+ * A thread-safe AppointmentManager for calendars shared by several clients.
+ * Reads run in parallel under the read side of a read-write lock, while writes, code generation
+ * and listener notifications are serialized under the write side. New readers queue behind a
+ * waiting writer, so a steady stream of queries cannot starve writes.
+ */
+package com.appointmentcalendar;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+public class ConcurrentAppointmentManager extends AppointmentManager {
+    private static final int ITERATOR_BATCH_SIZE = 256;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Initializes a new, empty ConcurrentAppointmentManager.
+     */
+    public ConcurrentAppointmentManager() {
+        super();
+    }
+
+    @Override
+    public void addAppointment(Appointment appointment) {
+        write(() -> {
+            super.addAppointment(appointment);
+            return null;
+        });
+    }
+
+    /**
+     * Adds the batch under a single acquisition of the write lock.
+     */
+    @Override
+    public void addAll(List<Appointment> batch) {
+        write(() -> {
+            super.addAll(batch);
+            return null;
+        });
+    }
+
+    @Override
+    public void addListener(AppointmentListener listener) {
+        write(() -> {
+            super.addListener(listener);
+            return null;
+        });
+    }
+
+    @Override
+    public void removeListener(AppointmentListener listener) {
+        write(() -> {
+            super.removeListener(listener);
+            return null;
+        });
+    }
+
+    @Override
+    public Appointment findByCode(String code) {
+        return read(() -> super.findByCode(code));
+    }
+
+    @Override
+    public List<Appointment> getAllAppointments() {
+        return read(super::getAllAppointments);
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsForDay(LocalDateTime date) {
+        return read(() -> super.getAppointmentsForDay(date));
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsBetween(LocalDateTime from, LocalDateTime to) {
+        return read(() -> super.getAppointmentsBetween(from, to));
+    }
+
+    @Override
+    public Appointment getNextUpcomingAppointment() {
+        return read(super::getNextUpcomingAppointment);
+    }
+
+    @Override
+    public Appointment getNextAppointmentAfter(LocalDateTime time) {
+        return read(() -> super.getNextAppointmentAfter(time));
+    }
+
+    /**
+     * Returns an iterator over the appointments starting at or after the given time, in start order.
+     * The iterator reads the calendar in small pages under the read lock, so it never blocks writers
+     * for long and never fails because of concurrent changes. Each page reflects the calendar at the
+     * time it was read.
+     */
+    @Override
+    public Iterator<Appointment> iterateFrom(LocalDateTime from) {
+        return new Iterator<>() {
+            private final ArrayDeque<Appointment> batch = new ArrayDeque<>();
+            private Appointment last;
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (batch.isEmpty() && !exhausted) {
+                    List<Appointment> page = page(from, null, null, last, ITERATOR_BATCH_SIZE);
+                    exhausted = page.size() < ITERATOR_BATCH_SIZE;
+                    batch.addAll(page);
+                }
+                return !batch.isEmpty();
+            }
+
+            @Override
+            public Appointment next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = batch.poll();
+                return last;
+            }
+        };
+    }
+
+    @Override
+    public List<Appointment> page(LocalDateTime from, LocalDateTime to, Predicate<Appointment> filter,
+                                  Appointment afterKey, int limit) {
+        return read(() -> super.page(from, to, filter, afterKey, limit));
+    }
+
+    @Override
+    public int countByCategory(Category category) {
+        return read(() -> super.countByCategory(category));
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsBetween(Category category, LocalDateTime from, LocalDateTime to) {
+        return read(() -> super.getAppointmentsBetween(category, from, to));
+    }
+
+    @Override
+    public List<Appointment> page(Category category, LocalDateTime from, LocalDateTime to,
+                                  Appointment afterKey, int limit) {
+        return read(() -> super.page(category, from, to, afterKey, limit));
+    }
+
+    @Override
+    public List<Appointment> search(String query, LocalDateTime reference, int limit) {
+        return read(() -> super.search(query, reference, limit));
+    }
+
+    @Override
+    public List<Appointment> getSortedAppointments() {
+        return read(super::getSortedAppointments);
+    }
+
+    /**
+     * Copies the appointments under the read lock, so the snapshot reflects a single point in time.
+     */
+    @Override
+    public List<Appointment> snapshot() {
+        return read(super::snapshot);
+    }
+
+    @Override
+    public boolean deleteAppointment(String code) {
+        return write(() -> super.deleteAppointment(code));
+    }
+
+    @Override
+    public void setAppointments(List<Appointment> appointments) {
+        write(() -> {
+            super.setAppointments(appointments);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the changes since the sequence number, or a snapshot consistent with the returned sequence number.
+     */
+    @Override
+    public ChangeFeed.Changes changesSince(long sequence) {
+        return read(() -> super.changesSince(sequence));
+    }
+
+    /**
+     * Returns the changes since the sequence number of the given epoch, or a snapshot consistent with the
+     * returned sequence number.
+     */
+    @Override
+    public ChangeFeed.Changes changesSince(String epoch, long sequence) {
+        return read(() -> super.changesSince(epoch, sequence));
+    }
+
+    /**
+     * Changes a held appointment under the write lock, so readers never see it half moved between indexes.
+     */
+    @Override
+    void edit(Appointment appointment, Runnable change) {
+        write(() -> {
+            super.edit(appointment, change);
+            return null;
+        });
+    }
+
+    @Override
+    public List<Appointment> findConflicts(Appointment appointment) {
+        return read(() -> super.findConflicts(appointment));
+    }
+
+    @Override
+    public List<Appointment> findConflicts(LocalDateTime start, LocalDateTime end) {
+        return read(() -> super.findConflicts(start, end));
+    }
+
+    @Override
+    public List<AppointmentConflict> findAllConflicts() {
+        return read(super::findAllConflicts);
+    }
+
+    /**
+     * Generates a unique appointment code for a given category.
+     * Concurrent callers always receive distinct codes.
+     */
+    @Override
+    public String generateAppointmentCode(String category) {
+        return write(() -> super.generateAppointmentCode(category));
+    }
+
+    /**
+     * Generates a code and adds the appointment as one atomic step,
+     * so no other client can take the code in between.
+     */
+    @Override
+    public Appointment createAppointment(String category, LocalDateTime startTime, LocalDateTime endTime,
+                                         String description) {
+        return write(() -> super.createAppointment(category, startTime, endTime, description));
+    }
+
+    @Override
+    public RecurringAppointment createRecurringAppointment(String category, LocalDateTime startTime,
+                                                           LocalDateTime endTime, String description,
+                                                           RecurrenceRule rule) {
+        return write(() -> super.createRecurringAppointment(category, startTime, endTime, description, rule));
+    }
+
+    private <T> T read(Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs the action while holding the write lock.
+     * @throws IllegalStateException if this thread is inside a read, since a read lock cannot be upgraded.
+     */
+    private <T> T write(Supplier<T> action) {
+        if (lock.getReadHoldCount() > 0) {
+            throw new IllegalStateException("Cannot modify the calendar while reading it");
+        }
+        lock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
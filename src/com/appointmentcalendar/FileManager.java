@@ -5,83 +5,301 @@
 package com.appointmentcalendar;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
 
 public class FileManager {
-    private static final String FILE_NAME = "appointments.txt";
+    static final String FILE_NAME = "appointments.txt";
     private static final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm");
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RULE_FIELD = ("|" + AppointmentTextParser.RULE_PREFIX).getBytes(StandardCharsets.US_ASCII);
+    private static final int BUFFER_SIZE = 1 << 16;
 
     /**
      * Saves the list of appointments to a text file.
      */
     public static void saveAppointments(List<Appointment> appointments) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(FILE_NAME))) {
-            for (Appointment app : appointments) {
-                writer.println(String.format("%s|%s|%s|%s|%s",
-                        app.getCode(),
-                        app.getStartTime().format(dateFormatter),
-                        app.getStartTime().format(timeFormatter),
-                        app.getEndTime().format(timeFormatter),
-                        app.getDescription()));
-            }
+        saveAppointments(appointments, FILE_NAME);
+    }
+
+    /**
+     * Saves the list of appointments to the given text file.
+     * The file is replaced atomically, so a crash while saving leaves the previous contents intact.
+     */
+    public static void saveAppointments(List<Appointment> appointments, String fileName) {
+        try {
+            replaceAppointments(appointments, new File(fileName), ByteBuffer.allocate(BUFFER_SIZE));
         } catch (IOException e) {
             System.err.println("Error saving appointments: " + e.getMessage());
         }
     }
 
+    /**
+     * Writes the list of appointments to the given file and forces it to disk.
+     * Unlike saveAppointments, failures are reported to the caller.
+     * The write is recorded in Metrics as "file.save" and as a FileOperationEvent.
+     */
+    static void writeAppointments(List<Appointment> appointments, File file) throws IOException {
+        writeAppointments(appointments, file, ByteBuffer.allocate(BUFFER_SIZE));
+    }
+
+    /**
+     * Writes the appointments to a temporary file next to the given one and atomically renames it over the file.
+     * @param buffer The buffer to encode the lines in, which callers that save repeatedly can reuse.
+     */
+    static void replaceAppointments(List<Appointment> appointments, File file, ByteBuffer buffer) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        writeAppointments(appointments, temp, buffer);
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes the list of appointments to the given file through the given buffer and forces it to disk.
+     */
+    static void writeAppointments(List<Appointment> appointments, File file, ByteBuffer buffer) throws IOException {
+        FileOperationEvent event = new FileOperationEvent();
+        event.begin();
+        long start = Metrics.startTimer();
+        try {
+            writeLines(appointments, file, buffer);
+        } catch (IOException e) {
+            Metrics.increment("file.save.errors");
+            throw e;
+        } finally {
+            Metrics.recordLatency("file.save", start);
+        }
+        Metrics.add("file.save.appointments", appointments.size());
+        if (event.shouldCommit()) {
+            event.operation = "save";
+            event.fileName = file.getPath();
+            event.appointments = appointments.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Writes one line per appointment and forces the file to disk.
+     * Lines are encoded as UTF-8 straight into the buffer, which is written out whenever the next line may not fit.
+     */
+    private static void writeLines(List<Appointment> appointments, File file, ByteBuffer buffer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.clear();
+            for (Appointment app : appointments) {
+                RecurrenceRule rule = app instanceof RecurringAppointment ? ((RecurringAppointment) app).getRule() : null;
+                String ruleText = rule == null ? "" : rule.format();
+                // A char takes at most three bytes in UTF-8; the dates, times and separators take under 32.
+                int maxLength = 3 * (app.getCode().length() + app.getDescription().length() + ruleText.length()) + 32;
+                if (buffer.remaining() < maxLength) {
+                    drain(buffer, channel);
+                }
+                if (buffer.remaining() < maxLength || !hasFourDigitYear(app.getStartTime())) {
+                    // Too long for the buffer, or a year the digit-by-digit encoding does not cover.
+                    drain(buffer, channel);
+                    ByteBuffer line = ByteBuffer.wrap(
+                            (formatAppointment(app) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+                    while (line.hasRemaining()) {
+                        channel.write(line);
+                    }
+                    continue;
+                }
+                encodeLine(app, ruleText, rule != null, buffer);
+            }
+            drain(buffer, channel);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Encodes an appointment as formatAppointment would, followed by a line separator.
+     */
+    private static void encodeLine(Appointment app, String ruleText, boolean recurring, ByteBuffer buffer) {
+        LocalDateTime start = app.getStartTime();
+        LocalDateTime end = app.getEndTime();
+        putText(buffer, app.getCode());
+        buffer.put((byte) '|');
+        putDigits(buffer, start.getYear(), 4);
+        buffer.put((byte) '-');
+        putDigits(buffer, start.getMonthValue(), 2);
+        buffer.put((byte) '-');
+        putDigits(buffer, start.getDayOfMonth(), 2);
+        buffer.put((byte) '|');
+        putDigits(buffer, start.getHour(), 2);
+        buffer.put((byte) ':');
+        putDigits(buffer, start.getMinute(), 2);
+        buffer.put((byte) '|');
+        putDigits(buffer, end.getHour(), 2);
+        buffer.put((byte) ':');
+        putDigits(buffer, end.getMinute(), 2);
+        buffer.put((byte) '|');
+        putText(buffer, app.getDescription());
+        if (recurring) {
+            buffer.put(RULE_FIELD);
+            putText(buffer, ruleText);
+        }
+        buffer.put(LINE_SEPARATOR);
+    }
+
+    private static void putDigits(ByteBuffer buffer, int value, int digits) {
+        for (int divisor = digits == 4 ? 1000 : 10; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + value / divisor % 10));
+        }
+    }
+
+    /**
+     * Puts a string as UTF-8, byte by byte while it is ASCII.
+     */
+    private static void putText(ByteBuffer buffer, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                buffer.put(text.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            buffer.put((byte) c);
+        }
+    }
+
+    private static boolean hasFourDigitYear(LocalDateTime time) {
+        return time.getYear() >= 1 && time.getYear() <= 9999;
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
     /**
      * Loads appointments from the text file.
      * Returns a list of all loaded appointments.
      */
     public static List<Appointment> loadAppointments() {
-        List<Appointment> appointments = new ArrayList<>();
-        File file = new File(FILE_NAME);
+        return loadAppointments(FILE_NAME);
+    }
+
+    /**
+     * Loads appointments from the given text file.
+     * Returns a list of all loaded appointments; malformed lines are reported with their line numbers and skipped.
+     */
+    public static List<Appointment> loadAppointments(String fileName) {
+        File file = new File(fileName);
 
         if (!file.exists()) {
-            return appointments;
-        }
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length == 5) {
-                    try {
-                        LocalDateTime startDateTime = LocalDateTime.parse(parts[1] + "T" + parts[2]);
-                        LocalDateTime endDateTime = LocalDateTime.parse(parts[1] + "T" + parts[3]);
-                        Appointment app = new Appointment(
-                                parts[0],
-                                startDateTime,
-                                endDateTime,
-                                parts[4],
-                                getCategoryFromCode(parts[0]));
-                        appointments.add(app);
-                    } catch (DateTimeParseException e) {
-                        System.err.println("Error parsing date/time: " + e.getMessage());
-                    }
-                }
-            }
+            return new ArrayList<>();
+        }
+
+        try {
+            return readAppointments(file);
         } catch (IOException e) {
             System.err.println("Error loading appointments: " + e.getMessage());
+            return new ArrayList<>();
         }
-        return appointments;
     }
 
     /**
-     * Determines the category of an appointment based on its code.
+     * Reads appointments from the given text file, reporting malformed lines with their line numbers and skipping them.
+     * Unlike loadAppointments, failures are reported to the caller.
+     * The load is recorded in Metrics as "file.load" and as a FileOperationEvent.
+     */
+    static List<Appointment> readAppointments(File file) throws IOException {
+        FileOperationEvent event = new FileOperationEvent();
+        event.begin();
+        long start = Metrics.startTimer();
+        AppointmentTextParser.ParseResult result;
+        try {
+            result = AppointmentTextParser.parse(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            Metrics.increment("file.load.errors");
+            throw e;
+        } finally {
+            Metrics.recordLatency("file.load", start);
+        }
+        for (AppointmentTextParser.MalformedLine line : result.getMalformedLines()) {
+            System.err.println("Skipping malformed line " + line.getLineNumber() + " in " + file.getPath()
+                    + ": " + line.getText());
+        }
+        Metrics.add("file.load.appointments", result.getAppointments().size());
+        Metrics.add("file.load.skippedLines", result.getMalformedLines().size());
+        if (event.shouldCommit()) {
+            event.operation = "load";
+            event.fileName = file.getPath();
+            event.appointments = result.getAppointments().size();
+            event.skippedLines = result.getMalformedLines().size();
+            event.commit();
+        }
+        return result.getAppointments();
+    }
+
+    /**
+     * Formats an appointment as a single pipe-delimited line, without a line terminator.
+     * Recurring appointments get a trailing {@code |RRULE:} field holding their rule.
      */
-    private static String getCategoryFromCode(String code) {
-        switch (code.charAt(0)) {
-            case 'W': return "Work";
-            case 'P': return "Personal";
-            case 'M': return "Medical";
-            case 'O': return "Other";
-            default: return "Unknown";
+    static String formatAppointment(Appointment app) {
+        StringBuilder line = new StringBuilder(64);
+        appendAppointment(line, app);
+        return line.toString();
+    }
+
+    /**
+     * Appends an appointment formatted as by formatAppointment, so callers formatting many appointments can
+     * reuse one builder. Dates and times are appended digit by digit.
+     */
+    static void appendAppointment(StringBuilder line, Appointment app) {
+        LocalDateTime start = app.getStartTime();
+        LocalDateTime end = app.getEndTime();
+        line.append(app.getCode()).append('|');
+        if (hasFourDigitYear(start)) {
+            appendDigits(line, start.getYear(), 4).append('-');
+            appendDigits(line, start.getMonthValue(), 2).append('-');
+            appendDigits(line, start.getDayOfMonth(), 2).append('|');
+            appendDigits(line, start.getHour(), 2).append(':');
+            appendDigits(line, start.getMinute(), 2).append('|');
+            appendDigits(line, end.getHour(), 2).append(':');
+            appendDigits(line, end.getMinute(), 2).append('|');
+        } else {
+            line.append(start.format(dateFormatter)).append('|')
+                    .append(start.format(timeFormatter)).append('|')
+                    .append(end.format(timeFormatter)).append('|');
+        }
+        line.append(app.getDescription());
+        if (app instanceof RecurringAppointment) {
+            line.append('|').append(AppointmentTextParser.RULE_PREFIX)
+                    .append(((RecurringAppointment) app).getRule().format());
         }
     }
-}
\ No newline at end of file
+
+    private static StringBuilder appendDigits(StringBuilder line, int value, int digits) {
+        for (int divisor = digits == 4 ? 1000 : 10; divisor > 0; divisor /= 10) {
+            line.append((char) ('0' + value / divisor % 10));
+        }
+        return line;
+    }
+
+    /**
+     * Parses a single pipe-delimited line.
+     * Returns null if the line is malformed.
+     */
+    static Appointment parseAppointment(String line) {
+        return AppointmentTextParser.parseLine(line);
+    }
+
+    /**
+     * Determines the category of an appointment based on its code.
+     */
+    static String getCategoryFromCode(String code) {
+        Category category = Category.fromAppointmentCode(code);
+        return category == null ? "Unknown" : category.getName();
+    }
+}
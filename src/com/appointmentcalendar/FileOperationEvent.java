@@ -0,0 +1,27 @@
+/**
+ * A JDK Flight Recorder event for loading or saving the calendar file.
+ */
+package com.appointmentcalendar;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.appointmentcalendar.FileOperation")
+@Label("Calendar File Operation")
+@jdk.jfr.Category("Appointment Calendar")
+@Description("Loading or saving appointments")
+class FileOperationEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("File")
+    String fileName;
+
+    @Label("Appointments")
+    int appointments;
+
+    @Label("Skipped Lines")
+    @Description("Malformed lines skipped while loading")
+    int skippedLines;
+}
@@ -0,0 +1,46 @@
+/**
+ * A ReminderSink that appends every reminder to a local file, one line each: the time it fired,
+ * followed by the appointment in the appointments file format.
+ */
+package com.appointmentcalendar;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+
+public class FileReminderSink implements ReminderSink, Closeable {
+    private final BufferedWriter writer;
+
+    /**
+     * Opens the file for appending, creating it if needed.
+     * @throws IOException if the file cannot be opened.
+     */
+    public FileReminderSink(File file) throws IOException {
+        this.writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Appends the reminder and flushes it, so reminders are visible in the file as they fire.
+     */
+    @Override
+    public synchronized void remind(Appointment appointment, LocalDateTime now) {
+        try {
+            writer.write(now + "|" + FileManager.formatAppointment(appointment));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Error writing reminder: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
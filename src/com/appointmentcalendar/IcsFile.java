@@ -0,0 +1,607 @@
+/**
+ * Imports and exports appointments in the iCalendar (.ics) format.
+ * Files are read line by line and every VEVENT is turned into an appointment as soon as it ends, so an import
+ * holds one batch of appointments in memory however large the file is; the batches go through addAll.
+ *
+ * The calendar keeps local times to the minute, and an appointment ends on the day it starts. UTC times and
+ * times with a TZID are converted to the system time zone, whole-day events start at midnight, and events
+ * ending on a later day are cut at 23:59. Recurrence rules are imported as far as RecurrenceRule can express
+ * them: daily, weekly or monthly with an interval, count, end date and exception dates. Events with other
+ * rules, cancelled events and changed occurrences of a series are skipped and reported.
+ * Imported appointments get new codes in the category named by their first CATEGORIES value, or Other.
+ */
+package com.appointmentcalendar;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public final class IcsFile {
+    static final int BATCH_SIZE = 10_000;
+    private static final int MAX_LINE_OCTETS = 75;
+    private static final String UID_SUFFIX = "@appointment-calendar";
+
+    private IcsFile() {
+    }
+
+    /**
+     * Adds the events of an iCalendar file to the calendar and returns the number of appointments added.
+     * Events that cannot be imported are reported with the line they start on and skipped.
+     * The import is recorded in Metrics as "ics.import" and as a FileOperationEvent.
+     * @throws IOException if the file cannot be read; the batches added before the failure are kept.
+     */
+    public static int importFile(File file, AppointmentManager manager) throws IOException {
+        FileOperationEvent event = new FileOperationEvent();
+        event.begin();
+        long start = Metrics.startTimer();
+        Importer importer = new Importer(file, manager);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            importer.read(reader);
+        } catch (IOException e) {
+            Metrics.increment("ics.import.errors");
+            throw e;
+        } finally {
+            Metrics.recordLatency("ics.import", start);
+        }
+        Metrics.add("ics.import.appointments", importer.imported);
+        Metrics.add("ics.import.skippedEvents", importer.skipped);
+        if (event.shouldCommit()) {
+            event.operation = "import";
+            event.fileName = file.getPath();
+            event.appointments = importer.imported;
+            event.skippedLines = importer.skipped;
+            event.commit();
+        }
+        return importer.imported;
+    }
+
+    /**
+     * Writes the appointments to an iCalendar file, one VEVENT each, with floating local times.
+     * The export is recorded in Metrics as "ics.export" and as a FileOperationEvent.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void exportFile(List<Appointment> appointments, File file) throws IOException {
+        FileOperationEvent event = new FileOperationEvent();
+        event.begin();
+        long start = Metrics.startTimer();
+        String stamp = formatDateTime(LocalDateTime.now(ZoneOffset.UTC)) + "Z";
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            writeLine(writer, "BEGIN:VCALENDAR");
+            writeLine(writer, "VERSION:2.0");
+            writeLine(writer, "PRODID:-//Appointment Calendar//EN");
+            for (Appointment app : appointments) {
+                writeEvent(writer, app, stamp);
+            }
+            writeLine(writer, "END:VCALENDAR");
+        } catch (IOException e) {
+            Metrics.increment("ics.export.errors");
+            throw e;
+        } finally {
+            Metrics.recordLatency("ics.export", start);
+        }
+        Metrics.add("ics.export.appointments", appointments.size());
+        if (event.shouldCommit()) {
+            event.operation = "export";
+            event.fileName = file.getPath();
+            event.appointments = appointments.size();
+            event.commit();
+        }
+    }
+
+    private static void writeEvent(Writer writer, Appointment app, String stamp) throws IOException {
+        writeLine(writer, "BEGIN:VEVENT");
+        writeLine(writer, "UID:" + escapeText(app.getCode()) + UID_SUFFIX);
+        writeLine(writer, "DTSTAMP:" + stamp);
+        writeLine(writer, "DTSTART:" + formatDateTime(app.getStartTime()));
+        writeLine(writer, "DTEND:" + formatDateTime(app.getEndTime()));
+        writeLine(writer, "SUMMARY:" + escapeText(app.getDescription()));
+        writeLine(writer, "CATEGORIES:" + escapeText(app.getCategory()));
+        if (app instanceof RecurringAppointment) {
+            RecurrenceRule rule = ((RecurringAppointment) app).getRule();
+            StringBuilder line = new StringBuilder("RRULE:FREQ=").append(rule.getFrequency());
+            if (rule.getInterval() != 1) {
+                line.append(";INTERVAL=").append(rule.getInterval());
+            }
+            if (rule.getCount() > 0) {
+                line.append(";COUNT=").append(rule.getCount());
+            }
+            if (rule.getUntil() != null) {
+                // UNTIL takes the value type of DTSTART, so the last day is given as its last second.
+                line.append(";UNTIL=").append(formatDateTime(rule.getUntil().atTime(23, 59, 59)));
+            }
+            writeLine(writer, line.toString());
+            if (!rule.getExceptions().isEmpty()) {
+                StringBuilder dates = new StringBuilder("EXDATE:");
+                LocalTime time = app.getStartTime().toLocalTime();
+                for (LocalDate date : rule.getExceptions()) {
+                    if (dates.length() > "EXDATE:".length()) {
+                        dates.append(',');
+                    }
+                    dates.append(formatDateTime(date.atTime(time)));
+                }
+                writeLine(writer, dates.toString());
+            }
+        }
+        writeLine(writer, "END:VEVENT");
+    }
+
+    /**
+     * Writes a content line, folding it so no line is longer than 75 octets without splitting a character.
+     */
+    private static void writeLine(Writer writer, String line) throws IOException {
+        int segmentStart = 0;
+        int octets = 0;
+        for (int i = 0; i < line.length(); ) {
+            int codePoint = line.codePointAt(i);
+            int length = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if (octets + length > MAX_LINE_OCTETS) {
+                writer.write(line, segmentStart, i - segmentStart);
+                writer.write("\r\n ");
+                segmentStart = i;
+                octets = 1;
+            }
+            octets += length;
+            i += Character.charCount(codePoint);
+        }
+        writer.write(line, segmentStart, line.length() - segmentStart);
+        writer.write("\r\n");
+    }
+
+    private static String escapeText(String text) {
+        StringBuilder escaped = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\': escaped.append("\\\\"); break;
+                case ';': escaped.append("\\;"); break;
+                case ',': escaped.append("\\,"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Undoes the escapes of a TEXT value. Line breaks become spaces, as descriptions are a single line.
+     */
+    private static String unescapeText(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder unescaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                unescaped.append(next == 'n' || next == 'N' ? ' ' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    private static String formatDateTime(LocalDateTime time) {
+        StringBuilder text = new StringBuilder(15);
+        appendDigits(text, time.getYear(), 4);
+        appendDigits(text, time.getMonthValue(), 2);
+        appendDigits(text, time.getDayOfMonth(), 2);
+        text.append('T');
+        appendDigits(text, time.getHour(), 2);
+        appendDigits(text, time.getMinute(), 2);
+        appendDigits(text, time.getSecond(), 2);
+        return text.toString();
+    }
+
+    private static void appendDigits(StringBuilder text, int number, int width) {
+        String digits = Integer.toString(number);
+        for (int i = digits.length(); i < width; i++) {
+            text.append('0');
+        }
+        text.append(digits);
+    }
+
+    /**
+     * Reads a DATE or DATE-TIME value as a local time: UTC and zoned times are converted to the system time zone.
+     * @throws IllegalArgumentException if the value is not a valid date or date-time.
+     */
+    private static LocalDateTime parseDateTime(String value, String timeZone) {
+        try {
+            if (value.length() == 8) {
+                return LocalDate.of(digits(value, 0, 4), digits(value, 4, 2), digits(value, 6, 2)).atStartOfDay();
+            }
+            if (value.length() < 15 || value.charAt(8) != 'T') {
+                throw new IllegalArgumentException("Invalid date-time: " + value);
+            }
+            LocalDateTime time = LocalDateTime.of(digits(value, 0, 4), digits(value, 4, 2), digits(value, 6, 2),
+                    digits(value, 9, 2), digits(value, 11, 2), digits(value, 13, 2));
+            ZoneId zone = null;
+            if (value.length() == 16 && value.charAt(15) == 'Z') {
+                zone = ZoneOffset.UTC;
+            } else if (value.length() != 15) {
+                throw new IllegalArgumentException("Invalid date-time: " + value);
+            } else if (timeZone != null) {
+                zone = ZoneId.of(timeZone);
+            }
+            return zone == null ? time : time.atZone(zone).withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid date-time: " + value, e);
+        }
+    }
+
+    private static int digits(String value, int start, int count) {
+        int number = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Invalid date-time: " + value);
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Reads a DURATION value such as PT1H30M, P1D or P2W.
+     * @throws IllegalArgumentException if the value is not a valid duration.
+     */
+    private static Duration parseDuration(String value) {
+        boolean negative = value.startsWith("-");
+        String unsigned = negative || value.startsWith("+") ? value.substring(1) : value;
+        Duration duration;
+        try {
+            if (unsigned.endsWith("W")) {
+                duration = Duration.ofDays(7L * Integer.parseInt(unsigned.substring(1, unsigned.length() - 1)));
+            } else {
+                duration = Duration.parse(unsigned);
+            }
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid duration: " + value, e);
+        }
+        return negative ? duration.negated() : duration;
+    }
+
+    /**
+     * Turns the VEVENTs of a file into appointments and adds them to the calendar in batches.
+     */
+    private static final class Importer {
+        private final File file;
+        private final AppointmentManager manager;
+        private final List<Appointment> batch = new ArrayList<>();
+        private int imported;
+        private int skipped;
+
+        // The event being read, from its BEGIN:VEVENT line to its END:VEVENT line.
+        private Map<String, Property> event;
+        private List<Property> exceptionDates;
+        private int eventLine;
+        // The name of a component nested in the event, such as a VALARM, whose properties are ignored.
+        private String nested;
+
+        Importer(File file, AppointmentManager manager) {
+            this.file = file;
+            this.manager = manager;
+        }
+
+        void read(BufferedReader reader) throws IOException {
+            String line = null;
+            // Only a line that is folded is copied into a builder.
+            StringBuilder unfolded = null;
+            int lineNumber = 0;
+            int startLine = 0;
+            String text;
+            while ((text = reader.readLine()) != null) {
+                lineNumber++;
+                if (line != null && !text.isEmpty() && (text.charAt(0) == ' ' || text.charAt(0) == '\t')) {
+                    // A folded line continues the previous one.
+                    if (unfolded == null) {
+                        unfolded = new StringBuilder(line);
+                    }
+                    unfolded.append(text, 1, text.length());
+                    continue;
+                }
+                if (line != null) {
+                    accept(unfolded != null ? unfolded.toString() : line, startLine);
+                }
+                line = text;
+                unfolded = null;
+                startLine = lineNumber;
+            }
+            if (line != null) {
+                accept(unfolded != null ? unfolded.toString() : line, startLine);
+            }
+            if (event != null) {
+                skip(eventLine, "the file ends inside the event");
+            }
+            flush();
+        }
+
+        private void accept(String line, int lineNumber) {
+            if (line.isEmpty()) {
+                return;
+            }
+            Property property = Property.parse(line);
+            if (property == null) {
+                if (event != null && nested == null) {
+                    skip(eventLine, "malformed line " + lineNumber);
+                    event = null;
+                }
+                return;
+            }
+            if (event == null) {
+                if (property.name.equals("BEGIN") && property.value.equalsIgnoreCase("VEVENT")) {
+                    event = new HashMap<>();
+                    exceptionDates = new ArrayList<>();
+                    eventLine = lineNumber;
+                    nested = null;
+                }
+                return;
+            }
+            if (nested != null) {
+                if (property.name.equals("END") && property.value.equalsIgnoreCase(nested)) {
+                    nested = null;
+                }
+            } else if (property.name.equals("BEGIN")) {
+                nested = property.value.toUpperCase(Locale.ROOT);
+            } else if (property.name.equals("END")) {
+                finishEvent();
+            } else if (property.name.equals("EXDATE")) {
+                exceptionDates.add(property);
+            } else {
+                event.putIfAbsent(property.name, property);
+            }
+        }
+
+        private void finishEvent() {
+            Map<String, Property> finished = event;
+            event = null;
+            try {
+                Appointment appointment = toAppointment(finished);
+                if (appointment != null) {
+                    batch.add(appointment);
+                    if (batch.size() >= BATCH_SIZE) {
+                        flush();
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                skip(eventLine, e.getMessage());
+            }
+        }
+
+        /**
+         * Builds the appointment for an event, or returns null after reporting why the event is skipped.
+         * @throws IllegalArgumentException if a value of the event is malformed.
+         */
+        private Appointment toAppointment(Map<String, Property> properties) {
+            if (properties.containsKey("RECURRENCE-ID")) {
+                skip(eventLine, "changed occurrences of a recurring event are not supported");
+                return null;
+            }
+            Property status = properties.get("STATUS");
+            if (status != null && status.value.equalsIgnoreCase("CANCELLED")) {
+                skip(eventLine, "the event is cancelled");
+                return null;
+            }
+            Property dtStart = properties.get("DTSTART");
+            if (dtStart == null) {
+                throw new IllegalArgumentException("the event has no DTSTART");
+            }
+            LocalDateTime start = parseDateTime(dtStart.value, dtStart.params.get("TZID"));
+            boolean wholeDay = dtStart.value.length() == 8;
+            LocalDateTime end;
+            Property dtEnd = properties.get("DTEND");
+            Property duration = properties.get("DURATION");
+            if (dtEnd != null) {
+                end = parseDateTime(dtEnd.value, dtEnd.params.get("TZID"));
+            } else if (duration != null) {
+                end = start.plus(parseDuration(duration.value));
+            } else {
+                end = wholeDay ? start.plusDays(1) : start;
+            }
+            start = start.truncatedTo(ChronoUnit.MINUTES);
+            end = end.truncatedTo(ChronoUnit.MINUTES);
+            if (end.isBefore(start)) {
+                end = start;
+            } else if (!end.toLocalDate().equals(start.toLocalDate())) {
+                end = start.toLocalDate().atTime(23, 59);
+            }
+
+            Property summary = properties.get("SUMMARY");
+            Property description = properties.get("DESCRIPTION");
+            String text = summary != null ? unescapeText(summary.value)
+                    : description != null ? unescapeText(description.value) : "";
+            Category category = category(properties.get("CATEGORIES"));
+
+            Property rrule = properties.get("RRULE");
+            RecurrenceRule rule = null;
+            if (rrule != null) {
+                rule = toRule(rrule.value, start);
+                if (rule == null) {
+                    skip(eventLine, "unsupported recurrence rule " + rrule.value);
+                    return null;
+                }
+            }
+            String code = manager.generateAppointmentCode(category.getName());
+            if (rule != null) {
+                return new RecurringAppointment(code, start, end, text, category.getName(), rule);
+            }
+            return new Appointment(code, start, end, text, category.getName());
+        }
+
+        /**
+         * Converts an RRULE value, or returns null if it uses parts RecurrenceRule cannot express.
+         * BYDAY and BYMONTHDAY are accepted when they only repeat the first occurrence's weekday or day.
+         */
+        private RecurrenceRule toRule(String value, LocalDateTime start) {
+            RecurrenceRule.Frequency frequency = null;
+            int interval = 1;
+            int count = 0;
+            LocalDate until = null;
+            for (String part : value.split(";")) {
+                int equals = part.indexOf('=');
+                if (equals < 0) {
+                    return null;
+                }
+                String name = part.substring(0, equals).toUpperCase(Locale.ROOT);
+                String partValue = part.substring(equals + 1);
+                switch (name) {
+                    case "FREQ":
+                        switch (partValue.toUpperCase(Locale.ROOT)) {
+                            case "DAILY": frequency = RecurrenceRule.Frequency.DAILY; break;
+                            case "WEEKLY": frequency = RecurrenceRule.Frequency.WEEKLY; break;
+                            case "MONTHLY": frequency = RecurrenceRule.Frequency.MONTHLY; break;
+                            default: return null;
+                        }
+                        break;
+                    case "INTERVAL": interval = Integer.parseInt(partValue); break;
+                    case "COUNT": count = Integer.parseInt(partValue); break;
+                    case "UNTIL": until = parseDateTime(partValue, null).toLocalDate(); break;
+                    case "WKST": break;
+                    case "BYDAY":
+                        if (!partValue.equalsIgnoreCase(start.getDayOfWeek().name().substring(0, 2))) {
+                            return null;
+                        }
+                        break;
+                    case "BYMONTHDAY":
+                        if (Integer.parseInt(partValue) != start.getDayOfMonth()) {
+                            return null;
+                        }
+                        break;
+                    default: return null;
+                }
+            }
+            if (frequency == null) {
+                return null;
+            }
+            List<LocalDate> exceptions = new ArrayList<>();
+            for (Property exceptionDate : exceptionDates) {
+                for (String date : exceptionDate.value.split(",")) {
+                    exceptions.add(parseDateTime(date, exceptionDate.params.get("TZID")).toLocalDate());
+                }
+            }
+            return new RecurrenceRule(frequency, interval, count, until, exceptions);
+        }
+
+        private Category category(Property categories) {
+            if (categories != null) {
+                int comma = categories.value.indexOf(',');
+                while (comma > 0 && categories.value.charAt(comma - 1) == '\\') {
+                    comma = categories.value.indexOf(',', comma + 1);
+                }
+                String first = unescapeText(comma < 0 ? categories.value : categories.value.substring(0, comma)).trim();
+                for (Category category : Category.values()) {
+                    if (category.getName().equalsIgnoreCase(first)) {
+                        return category;
+                    }
+                }
+            }
+            return Category.OTHER;
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                manager.addAll(batch);
+                imported += batch.size();
+            } catch (IllegalArgumentException e) {
+                // One appointment the calendar cannot hold fails the whole batch, so it is added one by one instead.
+                for (Appointment appointment : batch) {
+                    try {
+                        manager.addAppointment(appointment);
+                        imported++;
+                    } catch (IllegalArgumentException rejected) {
+                        skipped++;
+                        System.err.println("Skipping event " + appointment.getDescription() + " in " + file.getPath()
+                                + ": " + rejected.getMessage());
+                    }
+                }
+            }
+            batch.clear();
+        }
+
+        private void skip(int lineNumber, String reason) {
+            skipped++;
+            System.err.println("Skipping event at line " + lineNumber + " in " + file.getPath() + ": " + reason);
+        }
+    }
+
+    /**
+     * A content line split into its upper-cased name, its parameters and its raw value.
+     */
+    private static final class Property {
+        private final String name;
+        private final Map<String, String> params;
+        private final String value;
+
+        private Property(String name, Map<String, String> params, String value) {
+            this.name = name;
+            this.params = params;
+            this.value = value;
+        }
+
+        /**
+         * Parses a content line of the form {@code NAME;PARAM=value:VALUE}, or returns null if it has no value.
+         * Colons and semicolons inside quoted parameter values do not end the parameter.
+         */
+        static Property parse(String line) {
+            int colon = -1;
+            boolean quoted = false;
+            List<Integer> semicolons = new ArrayList<>(2);
+            for (int i = 0; i < line.length() && colon < 0; i++) {
+                char c = line.charAt(i);
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (!quoted && c == ';') {
+                    semicolons.add(i);
+                } else if (!quoted && c == ':') {
+                    colon = i;
+                }
+            }
+            if (colon <= 0) {
+                return null;
+            }
+            int nameEnd = semicolons.isEmpty() ? colon : semicolons.get(0);
+            Map<String, String> params = semicolons.isEmpty() ? Map.of() : new HashMap<>();
+            for (int p = 0; p < semicolons.size(); p++) {
+                int end = p + 1 < semicolons.size() ? semicolons.get(p + 1) : colon;
+                String param = line.substring(semicolons.get(p) + 1, end);
+                int equals = param.indexOf('=');
+                if (equals > 0) {
+                    String paramValue = param.substring(equals + 1);
+                    if (paramValue.length() >= 2 && paramValue.startsWith("\"") && paramValue.endsWith("\"")) {
+                        paramValue = paramValue.substring(1, paramValue.length() - 1);
+                    }
+                    params.put(param.substring(0, equals).toUpperCase(Locale.ROOT), paramValue);
+                }
+            }
+            return new Property(line.substring(0, nameEnd).toUpperCase(Locale.ROOT), params,
+                    line.substring(colon + 1));
+        }
+    }
+}
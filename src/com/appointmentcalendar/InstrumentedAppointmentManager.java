@@ -0,0 +1,282 @@
+/**
+ * An AppointmentManager that forwards every call to another manager while recording it in Metrics
+ * and as an AppointmentOperationEvent for JDK Flight Recorder.
+ * The wrapped manager holds the calendar, so this class is as thread-safe as the manager it wraps.
+ * Every overridable method of AppointmentManager is forwarded, including the package-private ones, so none
+ * of them runs against the empty calendar this class inherits.
+ * Latencies are recorded only while Metrics are enabled, and events only while a recording is running.
+ */
+package com.appointmentcalendar;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+public class InstrumentedAppointmentManager extends AppointmentManager {
+    private final AppointmentManager delegate;
+
+    /**
+     * Wraps the given manager. Additions, changes and deletions made through it are counted as well.
+     */
+    public InstrumentedAppointmentManager(AppointmentManager delegate) {
+        super();
+        this.delegate = delegate;
+        delegate.addListener(new AppointmentListener() {
+            @Override
+            public void appointmentAdded(Appointment appointment) {
+                Metrics.increment("manager.appointmentsAdded");
+            }
+
+            @Override
+            public void appointmentDeleted(Appointment appointment) {
+                Metrics.increment("manager.appointmentsDeleted");
+            }
+
+            @Override
+            public void appointmentUpdated(Appointment previous, Appointment appointment) {
+                Metrics.increment("manager.appointmentsUpdated");
+            }
+        });
+    }
+
+    @Override
+    public void addAppointment(Appointment appointment) {
+        measure("manager.addAppointment", () -> {
+            delegate.addAppointment(appointment);
+            return null;
+        });
+    }
+
+    @Override
+    public void addAll(List<Appointment> batch) {
+        measure("manager.addAll", () -> {
+            delegate.addAll(batch);
+            return null;
+        });
+    }
+
+    @Override
+    public void addListener(AppointmentListener listener) {
+        delegate.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(AppointmentListener listener) {
+        delegate.removeListener(listener);
+    }
+
+    @Override
+    public Appointment findByCode(String code) {
+        return measure("manager.findByCode", () -> delegate.findByCode(code));
+    }
+
+    @Override
+    public List<Appointment> getAllAppointments() {
+        return measure("manager.getAllAppointments", delegate::getAllAppointments);
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsForDay(LocalDateTime date) {
+        return measure("manager.getAppointmentsForDay", () -> delegate.getAppointmentsForDay(date));
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsBetween(LocalDateTime from, LocalDateTime to) {
+        return measure("manager.getAppointmentsBetween", () -> delegate.getAppointmentsBetween(from, to));
+    }
+
+    @Override
+    public Appointment getNextUpcomingAppointment() {
+        return measure("manager.getNextUpcomingAppointment", delegate::getNextUpcomingAppointment);
+    }
+
+    @Override
+    public Appointment getNextAppointmentAfter(LocalDateTime time) {
+        return measure("manager.getNextAppointmentAfter", () -> delegate.getNextAppointmentAfter(time));
+    }
+
+    /**
+     * Returns the wrapped manager's iterator. Only creating the iterator is measured, not walking it.
+     */
+    @Override
+    public Iterator<Appointment> iterateFrom(LocalDateTime from) {
+        return measure("manager.iterateFrom", () -> delegate.iterateFrom(from));
+    }
+
+    @Override
+    public List<Appointment> page(Predicate<Appointment> filter, Appointment afterKey, int limit) {
+        return measure("manager.page", () -> delegate.page(filter, afterKey, limit));
+    }
+
+    @Override
+    public List<Appointment> page(LocalDateTime from, LocalDateTime to, Predicate<Appointment> filter,
+                                  Appointment afterKey, int limit) {
+        return measure("manager.page", () -> delegate.page(from, to, filter, afterKey, limit));
+    }
+
+    @Override
+    public int countByCategory(Category category) {
+        return measure("manager.countByCategory", () -> delegate.countByCategory(category));
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsBetween(Category category, LocalDateTime from, LocalDateTime to) {
+        return measure("manager.getAppointmentsBetween", () -> delegate.getAppointmentsBetween(category, from, to));
+    }
+
+    @Override
+    public List<Appointment> page(Category category, LocalDateTime from, LocalDateTime to,
+                                  Appointment afterKey, int limit) {
+        return measure("manager.page", () -> delegate.page(category, from, to, afterKey, limit));
+    }
+
+    @Override
+    public List<Appointment> search(String query, LocalDateTime reference, int limit) {
+        return measure("manager.search", () -> delegate.search(query, reference, limit));
+    }
+
+    @Override
+    public List<Appointment> getSortedAppointments() {
+        return measure("manager.getSortedAppointments", delegate::getSortedAppointments);
+    }
+
+    @Override
+    public List<Appointment> snapshot() {
+        return measure("manager.snapshot", delegate::snapshot);
+    }
+
+    @Override
+    public boolean deleteAppointment(String code) {
+        return measure("manager.deleteAppointment", () -> delegate.deleteAppointment(code));
+    }
+
+    @Override
+    public void setAppointments(List<Appointment> appointments) {
+        measure("manager.setAppointments", () -> {
+            delegate.setAppointments(appointments);
+            return null;
+        });
+    }
+
+    @Override
+    public ChangeFeed.Changes changesSince(long sequence) {
+        return measure("manager.changesSince", () -> delegate.changesSince(sequence));
+    }
+
+    @Override
+    public ChangeFeed.Changes changesSince(String epoch, long sequence) {
+        return measure("manager.changesSince", () -> delegate.changesSince(epoch, sequence));
+    }
+
+    @Override
+    public List<Appointment> findConflicts(Appointment appointment) {
+        return measure("manager.findConflicts", () -> delegate.findConflicts(appointment));
+    }
+
+    @Override
+    public List<Appointment> findConflicts(LocalDateTime start, LocalDateTime end) {
+        return measure("manager.findConflicts", () -> delegate.findConflicts(start, end));
+    }
+
+    @Override
+    public List<AppointmentConflict> findAllConflicts() {
+        return measure("manager.findAllConflicts", delegate::findAllConflicts);
+    }
+
+    @Override
+    public String generateAppointmentCode(String category) {
+        return measure("manager.generateAppointmentCode", () -> delegate.generateAppointmentCode(category));
+    }
+
+    @Override
+    public Appointment createAppointment(String category, LocalDateTime startTime, LocalDateTime endTime,
+                                         String description) {
+        return measure("manager.createAppointment",
+                () -> delegate.createAppointment(category, startTime, endTime, description));
+    }
+
+    @Override
+    public RecurringAppointment createRecurringAppointment(String category, LocalDateTime startTime,
+                                                           LocalDateTime endTime, String description,
+                                                           RecurrenceRule rule) {
+        return measure("manager.createRecurringAppointment",
+                () -> delegate.createRecurringAppointment(category, startTime, endTime, description, rule));
+    }
+
+    @Override
+    void edit(Appointment appointment, Runnable change) {
+        measure("manager.edit", () -> {
+            delegate.edit(appointment, change);
+            return null;
+        });
+    }
+
+    @Override
+    void addLoaded(List<Appointment> loaded) {
+        measure("manager.addLoaded", () -> {
+            delegate.addLoaded(loaded);
+            return null;
+        });
+    }
+
+    @Override
+    void reserveCodes(char categoryCode, int highestNumber) {
+        delegate.reserveCodes(categoryCode, highestNumber);
+    }
+
+    @Override
+    List<Appointment> getOneOffAppointmentsBetween(LocalDateTime from, LocalDateTime to) {
+        return measure("manager.getOneOffAppointmentsBetween", () -> delegate.getOneOffAppointmentsBetween(from, to));
+    }
+
+    @Override
+    List<RecurringAppointment> getRecurringAppointments() {
+        return delegate.getRecurringAppointments();
+    }
+
+    @Override
+    void notifyAdded(Appointment appointment) {
+        delegate.notifyAdded(appointment);
+    }
+
+    @Override
+    void notifyDeleted(Appointment appointment) {
+        delegate.notifyDeleted(appointment);
+    }
+
+    @Override
+    void notifyUpdated(Appointment previous, Appointment appointment) {
+        delegate.notifyUpdated(previous, appointment);
+    }
+
+    @Override
+    void notifyReplaced() {
+        delegate.notifyReplaced();
+    }
+
+    /**
+     * Runs the action, recording its latency under the operation name and committing an event for it.
+     * Failures are counted under the operation name followed by ".errors".
+     */
+    private static <T> T measure(String operation, Supplier<T> action) {
+        AppointmentOperationEvent event = new AppointmentOperationEvent();
+        event.begin();
+        long start = Metrics.startTimer();
+        try {
+            T result = action.get();
+            if (event.shouldCommit()) {
+                event.operation = operation;
+                event.results = result instanceof List ? ((List<?>) result).size() : -1;
+                event.commit();
+            }
+            return result;
+        } catch (RuntimeException e) {
+            Metrics.increment(operation + ".errors");
+            throw e;
+        } finally {
+            Metrics.recordLatency(operation, start);
+        }
+    }
+}
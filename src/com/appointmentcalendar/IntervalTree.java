@@ -0,0 +1,170 @@
+/**
+ * An interval tree over appointments, used to answer overlap queries without scanning the calendar.
+ * Implemented as a treap ordered by start time and code, where every node also tracks the latest
+ * end time found in its subtree so that whole branches can be skipped during a query.
+ */
+package com.appointmentcalendar;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+class IntervalTree {
+    private Node root;
+    private int size;
+
+    private static class Node {
+        final Appointment appointment;
+        final int priority;
+        LocalDateTime maxEnd;
+        Node left;
+        Node right;
+
+        Node(Appointment appointment) {
+            this.appointment = appointment;
+            this.priority = ThreadLocalRandom.current().nextInt();
+            this.maxEnd = appointment.getEndTime();
+        }
+    }
+
+    /**
+     * Adds an appointment to the tree.
+     */
+    void insert(Appointment appointment) {
+        root = insert(root, appointment);
+    }
+
+    /**
+     * Removes an appointment from the tree.
+     * Returns true if the appointment was present.
+     */
+    boolean remove(Appointment appointment) {
+        int before = size;
+        root = remove(root, appointment);
+        return size < before;
+    }
+
+    /**
+     * Removes every appointment from the tree.
+     */
+    void clear() {
+        root = null;
+        size = 0;
+    }
+
+    /**
+     * Returns the number of appointments in the tree.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the appointments that overlap the half-open range [start, end), sorted by start time.
+     */
+    List<Appointment> findOverlapping(LocalDateTime start, LocalDateTime end) {
+        List<Appointment> result = new ArrayList<>();
+        collectOverlapping(root, start, end, result);
+        return result;
+    }
+
+    private Node insert(Node node, Appointment appointment) {
+        if (node == null) {
+            size++;
+            return new Node(appointment);
+        }
+        int cmp = AppointmentManager.START_TIME_ORDER.compare(appointment, node.appointment);
+        if (cmp == 0) {
+            return node;
+        }
+        if (cmp < 0) {
+            node.left = insert(node.left, appointment);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, appointment);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        update(node);
+        return node;
+    }
+
+    private Node remove(Node node, Appointment appointment) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = AppointmentManager.START_TIME_ORDER.compare(appointment, node.appointment);
+        if (cmp < 0) {
+            node.left = remove(node.left, appointment);
+        } else if (cmp > 0) {
+            node.right = remove(node.right, appointment);
+        } else {
+            if (node.left == null) {
+                size--;
+                return node.right;
+            }
+            if (node.right == null) {
+                size--;
+                return node.left;
+            }
+            if (node.left.priority > node.right.priority) {
+                node = rotateRight(node);
+                node.right = remove(node.right, appointment);
+            } else {
+                node = rotateLeft(node);
+                node.left = remove(node.left, appointment);
+            }
+        }
+        update(node);
+        return node;
+    }
+
+    private void collectOverlapping(Node node, LocalDateTime start, LocalDateTime end, List<Appointment> result) {
+        if (node == null || !node.maxEnd.isAfter(start)) {
+            return;
+        }
+        collectOverlapping(node.left, start, end, result);
+        Appointment app = node.appointment;
+        if (!app.getStartTime().isBefore(end)) {
+            // Everything to the right starts even later, so nothing there can overlap.
+            return;
+        }
+        if (app.getEndTime().isAfter(start)) {
+            result.add(app);
+        }
+        collectOverlapping(node.right, start, end, result);
+    }
+
+    private static Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static void update(Node node) {
+        LocalDateTime maxEnd = node.appointment.getEndTime();
+        if (node.left != null && node.left.maxEnd.isAfter(maxEnd)) {
+            maxEnd = node.left.maxEnd;
+        }
+        if (node.right != null && node.right.maxEnd.isAfter(maxEnd)) {
+            maxEnd = node.right.maxEnd;
+        }
+        node.maxEnd = maxEnd;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Process-wide counters and latency histograms for the calendar's load, save and query paths.
+ * Metrics are off by default; while off every method returns immediately without reading the clock
+ * or touching shared state, so instrumented code costs one volatile read.
+ */
+package com.appointmentcalendar;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class Metrics {
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private static volatile boolean enabled;
+
+    private Metrics() {
+    }
+
+    /**
+     * Turns recording on or off. Values recorded so far are kept.
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Returns whether metrics are being recorded.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the current time for a later call to recordLatency, or 0 if metrics are off.
+     */
+    static long startTimer() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time elapsed since startTimer under the given name.
+     * Does nothing if the timer was started while metrics were off.
+     */
+    static void recordLatency(String name, long startNanos) {
+        if (startNanos == 0 || !enabled) {
+            return;
+        }
+        long elapsed = System.nanoTime() - startNanos;
+        latencies.computeIfAbsent(name, key -> new LatencyHistogram()).record(elapsed);
+    }
+
+    /**
+     * Adds one to the named counter.
+     */
+    static void increment(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Adds the given amount to the named counter.
+     */
+    static void add(String name, long amount) {
+        if (!enabled) {
+            return;
+        }
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(amount);
+    }
+
+    /**
+     * Returns the current value of the named counter, or 0 if nothing was counted.
+     */
+    public static long counter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Discards every recorded value.
+     */
+    public static void reset() {
+        counters.clear();
+        latencies.clear();
+    }
+
+    /**
+     * Returns a readable snapshot of every counter and latency histogram, one per line, sorted by name.
+     * Latencies are given in microseconds.
+     */
+    public static String snapshot() {
+        StringBuilder out = new StringBuilder("--- Metrics ---").append(System.lineSeparator());
+        new TreeMap<>(counters).forEach((name, counter) ->
+                out.append(String.format("%-40s %d%n", name, counter.sum())));
+        new TreeMap<>(latencies).forEach((name, histogram) ->
+                out.append(String.format("%-40s count=%d mean=%s p50=%s p99=%s max=%s%n", name, histogram.count(),
+                        micros(histogram.mean()), micros(histogram.percentile(0.5)),
+                        micros(histogram.percentile(0.99)), micros(histogram.max()))));
+        return out.toString();
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1fus", nanos / (double) TimeUnit.MICROSECONDS.toNanos(1));
+    }
+}
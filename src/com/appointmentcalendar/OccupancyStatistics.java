@@ -0,0 +1,384 @@
+/**
+ * Occupancy reports over a calendar: busy time per week and category, utilization by weekday and hour,
+ * and the average appointment length per month.
+ * One-off appointments are summed into one bucket per day holding, for each category, the number of
+ * appointments starting that day, their total length and the busy minutes in each hour of the day. The buckets
+ * are built by a fork-join pass over the calendar and then kept up to date as appointments are added, changed
+ * and deleted, so a report only reads the buckets of the days it covers. Recurring appointments are expanded
+ * into their occurrences in the reported range when a report is made.
+ *
+ * Appointments whose code does not start with a category letter are counted as Other. An appointment that
+ * runs past midnight adds its busy minutes to the following days; its length counts on the day it starts.
+ */
+package com.appointmentcalendar;
+
+import java.io.Closeable;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.RecursiveTask;
+
+public class OccupancyStatistics implements AppointmentListener, Closeable {
+    private static final Category[] CATEGORIES = Category.values();
+    private static final int HOURS = 24;
+    // Slices of the calendar summed by a single fork-join task.
+    private static final int SLICE_SIZE = 1 << 14;
+
+    private final AppointmentManager manager;
+    private NavigableMap<LocalDate, DayBucket> days = new TreeMap<>();
+    private final Map<String, RecurringAppointment> series = new HashMap<>();
+
+    private OccupancyStatistics(AppointmentManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Builds the statistics of the manager's appointments and keeps them up to date with its changes.
+     */
+    public static OccupancyStatistics watch(AppointmentManager manager) {
+        OccupancyStatistics statistics = new OccupancyStatistics(manager);
+        manager.addListener(statistics);
+        statistics.appointmentsReplaced();
+        return statistics;
+    }
+
+    /**
+     * Builds the statistics of a fixed list of appointments.
+     */
+    public static OccupancyStatistics of(List<Appointment> appointments) {
+        OccupancyStatistics statistics = new OccupancyStatistics(null);
+        statistics.rebuild(appointments);
+        return statistics;
+    }
+
+    @Override
+    public synchronized void appointmentAdded(Appointment appointment) {
+        apply(appointment, 1);
+    }
+
+    @Override
+    public synchronized void appointmentDeleted(Appointment appointment) {
+        apply(appointment, -1);
+    }
+
+    @Override
+    public synchronized void appointmentUpdated(Appointment previous, Appointment appointment) {
+        apply(previous, -1);
+        apply(appointment, 1);
+    }
+
+    /**
+     * Rebuilds the statistics from every appointment of the manager.
+     */
+    @Override
+    public void appointmentsReplaced() {
+        List<Appointment> appointments = manager.getAllAppointments();
+        synchronized (this) {
+            rebuild(appointments);
+        }
+    }
+
+    /**
+     * Stops following the manager's changes.
+     */
+    @Override
+    public void close() {
+        if (manager != null) {
+            manager.removeListener(this);
+        }
+    }
+
+    /**
+     * Returns the busy time per category of every week that has any, keyed by the Monday the week starts on.
+     * Only days from {@code from} up to but excluding {@code to} are counted.
+     */
+    public synchronized SortedMap<LocalDate, Map<Category, Duration>> busyTimePerWeek(LocalDate from, LocalDate to) {
+        SortedMap<LocalDate, long[]> minutesPerWeek = new TreeMap<>();
+        forEachDay(from, to, (day, bucket) -> {
+            LocalDate monday = day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            long[] minutes = minutesPerWeek.computeIfAbsent(monday, week -> new long[CATEGORIES.length]);
+            for (int category = 0; category < CATEGORIES.length; category++) {
+                for (int hour = 0; hour < HOURS; hour++) {
+                    minutes[category] += bucket.busyMinutes[category * HOURS + hour];
+                }
+            }
+        });
+        SortedMap<LocalDate, Map<Category, Duration>> report = new TreeMap<>();
+        minutesPerWeek.forEach((monday, minutes) -> report.put(monday, toDurations(minutes)));
+        return report;
+    }
+
+    /**
+     * Returns the share of each hour of each weekday that was taken by appointments of the category, or of any
+     * category if it is null, from {@code from} up to but excluding {@code to}.
+     * The result is indexed by the weekday's value minus one (Monday is 0) and the hour. Overlapping appointments
+     * both count, so a share can exceed one.
+     */
+    public synchronized double[][] utilization(LocalDate from, LocalDate to, Category category) {
+        long[][] minutes = new long[7][HOURS];
+        forEachDay(from, to, (day, bucket) -> {
+            long[] row = minutes[day.getDayOfWeek().getValue() - 1];
+            for (int c = 0; c < CATEGORIES.length; c++) {
+                if (category == null || CATEGORIES[c] == category) {
+                    for (int hour = 0; hour < HOURS; hour++) {
+                        row[hour] += bucket.busyMinutes[c * HOURS + hour];
+                    }
+                }
+            }
+        });
+        long totalDays = Math.max(0, ChronoUnit.DAYS.between(from, to));
+        int firstWeekday = from.getDayOfWeek().getValue() - 1;
+        double[][] shares = new double[7][HOURS];
+        for (int weekday = 0; weekday < 7; weekday++) {
+            // The number of times this weekday occurs in the range.
+            long occurrences = totalDays / 7 + (Math.floorMod(weekday - firstWeekday, 7) < totalDays % 7 ? 1 : 0);
+            for (int hour = 0; hour < HOURS && occurrences > 0; hour++) {
+                shares[weekday][hour] = minutes[weekday][hour] / (occurrences * 60.0);
+            }
+        }
+        return shares;
+    }
+
+    /**
+     * Returns the average length of the appointments of the category, or of any category if it is null, that
+     * start in each month from {@code from} up to but excluding {@code to}. Months without appointments are left out.
+     */
+    public synchronized SortedMap<YearMonth, Duration> averageLengthPerMonth(LocalDate from, LocalDate to,
+                                                                              Category category) {
+        SortedMap<YearMonth, long[]> totals = new TreeMap<>();
+        forEachDay(from, to, (day, bucket) -> {
+            long[] total = totals.computeIfAbsent(YearMonth.from(day), month -> new long[2]);
+            for (int c = 0; c < CATEGORIES.length; c++) {
+                if (category == null || CATEGORIES[c] == category) {
+                    total[0] += bucket.counts[c];
+                    total[1] += bucket.lengthMinutes[c];
+                }
+            }
+        });
+        SortedMap<YearMonth, Duration> report = new TreeMap<>();
+        totals.forEach((month, total) -> {
+            if (total[0] > 0) {
+                report.put(month, Duration.ofSeconds(Math.round(total[1] * 60.0 / total[0])));
+            }
+        });
+        return report;
+    }
+
+    /**
+     * Returns the number of days that have a bucket.
+     */
+    public synchronized int bucketCount() {
+        return days.size();
+    }
+
+    /**
+     * Adds or, with a sign of -1, removes an appointment's contribution.
+     */
+    private void apply(Appointment appointment, int sign) {
+        if (appointment instanceof RecurringAppointment) {
+            String key = appointment.getCode().toUpperCase();
+            if (sign > 0) {
+                series.put(key, (RecurringAppointment) appointment);
+            } else {
+                series.remove(key);
+            }
+            return;
+        }
+        add(days, appointment, sign);
+        if (sign < 0) {
+            removeEmpty(appointment);
+        }
+    }
+
+    /**
+     * Drops the buckets the appointment touched that no appointment touches any more.
+     */
+    private void removeEmpty(Appointment appointment) {
+        LocalDate last = lastBusyDay(appointment);
+        for (LocalDate day = appointment.getStartTime().toLocalDate(); !day.isAfter(last); day = day.plusDays(1)) {
+            DayBucket bucket = days.get(day);
+            if (bucket != null && bucket.appointments == 0) {
+                days.remove(day);
+            }
+        }
+    }
+
+    private void rebuild(List<Appointment> appointments) {
+        series.clear();
+        List<Appointment> oneOffs = new ArrayList<>(appointments.size());
+        for (Appointment appointment : appointments) {
+            if (appointment instanceof RecurringAppointment) {
+                series.put(appointment.getCode().toUpperCase(), (RecurringAppointment) appointment);
+            } else {
+                oneOffs.add(appointment);
+            }
+        }
+        days = new TreeMap<>(new SumTask(oneOffs, 0, oneOffs.size()).invoke());
+    }
+
+    /**
+     * Calls the consumer with the bucket of every day in the range that has appointments, including the
+     * occurrences of recurring appointments; a day may be passed more than once, its buckets adding up.
+     */
+    private void forEachDay(LocalDate from, LocalDate to, BucketConsumer consumer) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        for (Map.Entry<LocalDate, DayBucket> entry : days.subMap(from, true, to, false).entrySet()) {
+            consumer.accept(entry.getKey(), entry.getValue());
+        }
+        if (series.isEmpty()) {
+            return;
+        }
+        // Occurrences that start the day before may run into the range.
+        LocalDateTime end = to.atStartOfDay();
+        Map<LocalDate, DayBucket> occurrences = new HashMap<>();
+        for (RecurringAppointment recurring : series.values()) {
+            Iterator<Appointment> iterator = recurring.occurrencesFrom(from.minusDays(1).atStartOfDay());
+            while (iterator.hasNext()) {
+                Appointment occurrence = iterator.next();
+                if (!occurrence.getStartTime().isBefore(end)) {
+                    break;
+                }
+                add(occurrences, occurrence, 1);
+            }
+        }
+        for (Map.Entry<LocalDate, DayBucket> entry : occurrences.entrySet()) {
+            if (!entry.getKey().isBefore(from) && entry.getKey().isBefore(to)) {
+                consumer.accept(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Adds an appointment's count and length to the bucket of its start day, and its busy minutes to the
+     * buckets of the hours it covers, multiplied by the sign.
+     */
+    private static void add(Map<LocalDate, DayBucket> days, Appointment appointment, int sign) {
+        int category = categoryIndex(appointment);
+        LocalDateTime start = appointment.getStartTime().truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime end = appointment.getEndTime().truncatedTo(ChronoUnit.MINUTES);
+        DayBucket first = days.computeIfAbsent(start.toLocalDate(), day -> new DayBucket());
+        first.counts[category] += sign;
+        first.lengthMinutes[category] += sign * Math.max(0, Duration.between(start, end).toMinutes());
+        first.appointments += sign;
+        LocalDate previousDay = start.toLocalDate();
+        DayBucket bucket = first;
+        for (LocalDateTime hourStart = start; hourStart.isBefore(end); ) {
+            LocalDateTime hourEnd = hourStart.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            if (hourEnd.isAfter(end)) {
+                hourEnd = end;
+            }
+            if (!hourStart.toLocalDate().equals(previousDay)) {
+                previousDay = hourStart.toLocalDate();
+                bucket = days.computeIfAbsent(previousDay, day -> new DayBucket());
+                bucket.appointments += sign;
+            }
+            bucket.busyMinutes[category * HOURS + hourStart.getHour()] +=
+                    sign * (int) Duration.between(hourStart, hourEnd).toMinutes();
+            hourStart = hourEnd;
+        }
+    }
+
+    private static LocalDate lastBusyDay(Appointment appointment) {
+        LocalDateTime start = appointment.getStartTime().truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime end = appointment.getEndTime().truncatedTo(ChronoUnit.MINUTES);
+        return end.isAfter(start) ? end.minusMinutes(1).toLocalDate() : start.toLocalDate();
+    }
+
+    private static int categoryIndex(Appointment appointment) {
+        Category category = Category.fromAppointmentCode(appointment.getCode());
+        return (category == null ? Category.OTHER : category).ordinal();
+    }
+
+    private static Map<Category, Duration> toDurations(long[] minutes) {
+        Map<Category, Duration> durations = new EnumMap<>(Category.class);
+        for (int category = 0; category < CATEGORIES.length; category++) {
+            durations.put(CATEGORIES[category], Duration.ofMinutes(minutes[category]));
+        }
+        return durations;
+    }
+
+    private interface BucketConsumer {
+        void accept(LocalDate day, DayBucket bucket);
+    }
+
+    /**
+     * The sums of one day, per category.
+     */
+    private static final class DayBucket {
+        private final int[] counts = new int[CATEGORIES.length];
+        private final long[] lengthMinutes = new long[CATEGORIES.length];
+        private final int[] busyMinutes = new int[CATEGORIES.length * HOURS];
+        // The number of appointments that add to this bucket, so it can be dropped when the last one goes.
+        private int appointments;
+
+        void addAll(DayBucket other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+                lengthMinutes[i] += other.lengthMinutes[i];
+            }
+            for (int i = 0; i < busyMinutes.length; i++) {
+                busyMinutes[i] += other.busyMinutes[i];
+            }
+            appointments += other.appointments;
+        }
+    }
+
+    /**
+     * Sums a slice of the appointments into day buckets, splitting it in halves summed in parallel while it is large.
+     */
+    private static final class SumTask extends RecursiveTask<Map<LocalDate, DayBucket>> {
+        private static final long serialVersionUID = 1L;
+        private final transient List<Appointment> appointments;
+        private final int from;
+        private final int to;
+
+        SumTask(List<Appointment> appointments, int from, int to) {
+            this.appointments = appointments;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<LocalDate, DayBucket> compute() {
+            if (to - from <= SLICE_SIZE) {
+                Map<LocalDate, DayBucket> days = new HashMap<>();
+                for (int i = from; i < to; i++) {
+                    add(days, appointments.get(i), 1);
+                }
+                return days;
+            }
+            int middle = (from + to) >>> 1;
+            SumTask right = new SumTask(appointments, middle, to);
+            right.fork();
+            Map<LocalDate, DayBucket> days = new SumTask(appointments, from, middle).compute();
+            Map<LocalDate, DayBucket> other = right.join();
+            if (other.size() > days.size()) {
+                Map<LocalDate, DayBucket> swap = days;
+                days = other;
+                other = swap;
+            }
+            for (Map.Entry<LocalDate, DayBucket> entry : other.entrySet()) {
+                DayBucket bucket = days.putIfAbsent(entry.getKey(), entry.getValue());
+                if (bucket != null) {
+                    bucket.addAll(entry.getValue());
+                }
+            }
+            return days;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Describes how an appointment repeats: every n days, weeks or months, optionally limited by a number
+ * of occurrences or a last date, and with individual dates skipped.
+ * Occurrence starts are computed by index rather than by stepping from the first one, so finding the
+ * occurrences in a window costs the same however far the window is from the start of the series.
+ */
+package com.appointmentcalendar;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.NavigableSet;
+import java.util.StringJoiner;
+import java.util.TreeSet;
+
+public class RecurrenceRule {
+    /**
+     * The unit the interval of a rule is counted in.
+     */
+    public enum Frequency {
+        DAILY, WEEKLY, MONTHLY
+    }
+
+    private final Frequency frequency;
+    private final int interval;
+    private final int count;
+    private final LocalDate until;
+    private final NavigableSet<LocalDate> exceptions;
+
+    /**
+     * Constructs a rule.
+     * @param frequency Whether the appointment repeats daily, weekly or monthly.
+     * @param interval The number of days, weeks or months between occurrences, at least 1.
+     * @param count The total number of occurrences including skipped ones, or 0 for no limit.
+     * @param until The last date an occurrence may start on, or null for no limit.
+     * @param exceptions The dates on which no occurrence takes place.
+     */
+    public RecurrenceRule(Frequency frequency, int interval, int count, LocalDate until,
+                          Collection<LocalDate> exceptions) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Recurrence interval must be at least 1");
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("Recurrence count cannot be negative");
+        }
+        this.frequency = frequency;
+        this.interval = interval;
+        this.count = count;
+        this.until = until;
+        this.exceptions = Collections.unmodifiableNavigableSet(new TreeSet<>(exceptions));
+    }
+
+    /**
+     * Returns whether the rule repeats daily, weekly or monthly.
+     */
+    public Frequency getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * Returns the number of days, weeks or months between occurrences.
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Returns the total number of occurrences, or 0 if the count is unlimited.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the last date an occurrence may start on, or null if there is none.
+     */
+    public LocalDate getUntil() {
+        return until;
+    }
+
+    /**
+     * Returns the dates on which the appointment does not take place, in order.
+     */
+    public NavigableSet<LocalDate> getExceptions() {
+        return exceptions;
+    }
+
+    /**
+     * Returns a copy of this rule that also skips the given date.
+     */
+    public RecurrenceRule withException(LocalDate date) {
+        TreeSet<LocalDate> dates = new TreeSet<>(exceptions);
+        dates.add(date);
+        return new RecurrenceRule(frequency, interval, count, until, dates);
+    }
+
+    /**
+     * Returns whether the series has a last occurrence.
+     */
+    public boolean isBounded() {
+        return count > 0 || until != null;
+    }
+
+    /**
+     * Returns the start of the occurrence with the given 0-based index, ignoring limits and exceptions.
+     * Monthly occurrences on days a month does not have fall on the last day of that month.
+     */
+    LocalDateTime nthStart(LocalDateTime seriesStart, long index) {
+        long steps = index * interval;
+        switch (frequency) {
+            case DAILY: return seriesStart.plusDays(steps);
+            case WEEKLY: return seriesStart.plusWeeks(steps);
+            default: return seriesStart.plusMonths(steps);
+        }
+    }
+
+    /**
+     * Returns the index of the first occurrence starting at or after the given time, ignoring limits and exceptions.
+     */
+    long firstIndexAtOrAfter(LocalDateTime seriesStart, LocalDateTime time) {
+        if (!time.isAfter(seriesStart)) {
+            return 0;
+        }
+        long elapsed;
+        switch (frequency) {
+            case DAILY: elapsed = ChronoUnit.DAYS.between(seriesStart.toLocalDate(), time.toLocalDate()); break;
+            case WEEKLY: elapsed = ChronoUnit.DAYS.between(seriesStart.toLocalDate(), time.toLocalDate()) / 7; break;
+            default: elapsed = ChronoUnit.MONTHS.between(YearMonth.from(seriesStart), YearMonth.from(time));
+        }
+        // The estimate can be one step short when the time of day comes before the series' time of day.
+        long index = Math.max(0, elapsed / interval - 1);
+        while (nthStart(seriesStart, index).isBefore(time)) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Returns whether the occurrence with the given index and start lies within the count and until limits.
+     */
+    boolean isWithinLimits(long index, LocalDateTime start) {
+        return (count == 0 || index < count) && (until == null || !start.toLocalDate().isAfter(until));
+    }
+
+    /**
+     * Returns whether an occurrence starting at the given time is skipped.
+     */
+    boolean isException(LocalDateTime start) {
+        return exceptions.contains(start.toLocalDate());
+    }
+
+    /**
+     * Formats the rule as {@code FREQ=WEEKLY;INTERVAL=2;COUNT=10;UNTIL=2025-06-30;EXDATE=2025-01-07,2025-01-14},
+     * leaving out parts that have their default value.
+     */
+    public String format() {
+        StringBuilder rule = new StringBuilder("FREQ=").append(frequency);
+        if (interval != 1) {
+            rule.append(";INTERVAL=").append(interval);
+        }
+        if (count > 0) {
+            rule.append(";COUNT=").append(count);
+        }
+        if (until != null) {
+            rule.append(";UNTIL=").append(until);
+        }
+        if (!exceptions.isEmpty()) {
+            StringJoiner dates = new StringJoiner(",");
+            for (LocalDate date : exceptions) {
+                dates.add(date.toString());
+            }
+            rule.append(";EXDATE=").append(dates);
+        }
+        return rule.toString();
+    }
+
+    /**
+     * Parses a rule in the form produced by format.
+     * @throws IllegalArgumentException if the text is not a valid rule.
+     */
+    public static RecurrenceRule parse(String text) {
+        Frequency frequency = null;
+        int interval = 1;
+        int count = 0;
+        LocalDate until = null;
+        TreeSet<LocalDate> exceptions = new TreeSet<>();
+        try {
+            for (String part : text.split(";")) {
+                int equals = part.indexOf('=');
+                if (equals < 0) {
+                    throw new IllegalArgumentException("Invalid recurrence rule: " + text);
+                }
+                String value = part.substring(equals + 1);
+                switch (part.substring(0, equals)) {
+                    case "FREQ": frequency = Frequency.valueOf(value); break;
+                    case "INTERVAL": interval = Integer.parseInt(value); break;
+                    case "COUNT": count = Integer.parseInt(value); break;
+                    case "UNTIL": until = LocalDate.parse(value); break;
+                    case "EXDATE":
+                        for (String date : value.split(",")) {
+                            exceptions.add(LocalDate.parse(date));
+                        }
+                        break;
+                    default: throw new IllegalArgumentException("Invalid recurrence rule: " + text);
+                }
+            }
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid recurrence rule: " + text, e);
+        }
+        if (frequency == null) {
+            throw new IllegalArgumentException("Recurrence rule has no frequency: " + text);
+        }
+        return new RecurrenceRule(frequency, interval, count, until, exceptions);
+    }
+
+    /**
+     * Returns the rule in its text form.
+     */
+    @Override
+    public String toString() {
+        return format();
+    }
+}
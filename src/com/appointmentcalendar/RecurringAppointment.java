@@ -0,0 +1,104 @@
+/**
+ * An appointment that repeats according to a RecurrenceRule.
+ * The series is stored as a single record holding the first occurrence's times; the individual
+ * occurrences are produced on demand as plain appointments sharing the series' code.
+ */
+package com.appointmentcalendar;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class RecurringAppointment extends Appointment {
+    private RecurrenceRule rule;
+
+    /**
+     * Constructs a new RecurringAppointment whose first occurrence runs from startTime to endTime.
+     */
+    public RecurringAppointment(String code, LocalDateTime startTime, LocalDateTime endTime, String description,
+                                String category, RecurrenceRule rule) {
+        super(code, startTime, endTime, description, category);
+        this.rule = rule;
+    }
+
+    /**
+     * Returns the rule the appointment repeats by.
+     */
+    public RecurrenceRule getRule() {
+        return rule;
+    }
+
+    /**
+     * Sets the rule the appointment repeats by.
+     */
+    public void setRule(RecurrenceRule rule) {
+        edit(() -> this.rule = rule);
+    }
+
+    /**
+     * Returns the occurrences starting at or after the given time, in start order.
+     * Occurrences are computed as the iterator advances, so an unbounded series yields an endless iterator.
+     */
+    public Iterator<Appointment> occurrencesFrom(LocalDateTime from) {
+        LocalDateTime seriesStart = getStartTime();
+        RecurrenceRule currentRule = rule;
+        Duration length = Duration.between(seriesStart, getEndTime());
+        return new Iterator<>() {
+            private long index = currentRule.firstIndexAtOrAfter(seriesStart, from);
+            private Appointment next = advance();
+
+            private Appointment advance() {
+                while (true) {
+                    LocalDateTime start = currentRule.nthStart(seriesStart, index);
+                    if (!currentRule.isWithinLimits(index, start)) {
+                        return null;
+                    }
+                    index++;
+                    if (!currentRule.isException(start)) {
+                        return new Appointment(getCode(), start, start.plus(length), getDescription(), getCategory());
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Appointment next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Appointment current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+    /**
+     * Returns the first occurrence starting strictly after the given time, or null if the series has ended.
+     */
+    public Appointment nextOccurrenceAfter(LocalDateTime time) {
+        Iterator<Appointment> occurrences = occurrencesFrom(time.plusNanos(1));
+        return occurrences.hasNext() ? occurrences.next() : null;
+    }
+
+    /**
+     * Returns a copy of the series that no manager holds.
+     */
+    @Override
+    Appointment copy() {
+        return new RecurringAppointment(getCode(), getStartTime(), getEndTime(), getDescription(), getCategory(), rule);
+    }
+
+    /**
+     * Returns a string representation of the appointment.
+     */
+    @Override
+    public String toString() {
+        return super.toString() + " repeating " + rule;
+    }
+}
@@ -0,0 +1,351 @@
+/**
+ * Fires a reminder a fixed lead time before each appointment of a calendar starts.
+ * Pending reminders are kept in a hierarchical timing wheel with a one second tick: level 0 has a slot
+ * for each of the next 64 seconds, level 1 for each of the next 64 minute-long spans, and so on, and a
+ * slot of a higher level is spread over the levels below it when the clock reaches it. Scheduling and
+ * cancelling a reminder are constant time, and advancing the clock only touches reminders that are due
+ * or being moved down a level, however many are pending.
+ *
+ * The clock is virtual: it moves only when advanceTo is called, which makes firing deterministic in tests.
+ * start drives it from a real clock instead. A recurring appointment has one pending reminder at a time,
+ * for its next occurrence, and the following one is scheduled when it fires.
+ */
+package com.appointmentcalendar;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ReminderScheduler implements AppointmentListener, Closeable {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    // Six levels of 64 slots reach over 2000 years ahead; later reminders wait in the top level.
+    private static final int LEVELS = 6;
+
+    private final Duration leadTime;
+    private final List<ReminderSink> sinks = new CopyOnWriteArrayList<>();
+    private final Entry[][] wheel = new Entry[LEVELS][SLOTS];
+    private final int[] levelSizes = new int[LEVELS];
+    private final Map<String, Entry> entriesByCode = new HashMap<>();
+    // Every reminder due before this tick has fired.
+    private long nextTick;
+    private AppointmentManager manager;
+    private Thread ticker;
+    private boolean closed;
+
+    /**
+     * Creates a scheduler whose clock starts at the given time.
+     * @param leadTime How long before an appointment starts its reminder fires.
+     */
+    public ReminderScheduler(Duration leadTime, LocalDateTime now) {
+        if (leadTime.isNegative()) {
+            throw new IllegalArgumentException("Lead time must not be negative");
+        }
+        this.leadTime = leadTime;
+        this.nextTick = floorTick(now) + 1;
+    }
+
+    /**
+     * Adds a sink that receives every reminder from now on.
+     */
+    public void addSink(ReminderSink sink) {
+        sinks.add(sink);
+    }
+
+    /**
+     * Schedules reminders for the manager's appointments and keeps them in step with the appointments
+     * added to or deleted from it. Appointments replaced through setAppointments are not followed.
+     */
+    public void watch(AppointmentManager manager) {
+        this.manager = manager;
+        manager.addListener(this);
+        List<Appointment> appointments = manager.getAllAppointments();
+        synchronized (this) {
+            for (Appointment appointment : appointments) {
+                schedule(appointment);
+            }
+        }
+    }
+
+    /**
+     * Drives the clock from the given clock, advancing it every second on a background thread.
+     */
+    public synchronized void start(Clock clock) {
+        if (ticker != null) {
+            throw new IllegalStateException("Reminder scheduler already started");
+        }
+        ticker = new Thread(() -> tick(clock), "reminder-ticker");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /**
+     * Schedules a reminder for the added appointment, replacing any pending one with the same code.
+     */
+    @Override
+    public synchronized void appointmentAdded(Appointment appointment) {
+        schedule(appointment);
+    }
+
+    /**
+     * Cancels the pending reminder of the deleted appointment, if any.
+     */
+    @Override
+    public synchronized void appointmentDeleted(Appointment appointment) {
+        cancel(appointment.getCode());
+    }
+
+    /**
+     * Returns the number of reminders waiting to fire.
+     */
+    public synchronized int pending() {
+        return entriesByCode.size();
+    }
+
+    /**
+     * Moves the clock forward to the given time and delivers every reminder due by then, in the order they are due.
+     * Does nothing if the clock is already past the time. Sinks are given the time in whole seconds.
+     */
+    public void advanceTo(LocalDateTime now) {
+        long target = floorTick(now);
+        List<Entry> due = new ArrayList<>();
+        synchronized (this) {
+            while (nextTick <= target) {
+                // Skips the ticks at which nothing is due and no slot has to be spread over the levels below.
+                int level = 0;
+                while (level < LEVELS && levelSizes[level] == 0) {
+                    level++;
+                }
+                if (level == LEVELS) {
+                    nextTick = target + 1;
+                    break;
+                }
+                long span = 1L << (SLOT_BITS * level);
+                long boundary = (nextTick + span - 1) & -span;
+                if (boundary > target) {
+                    nextTick = target + 1;
+                    break;
+                }
+                nextTick = boundary;
+                int fired = due.size();
+                fireTick(due);
+                nextTick++;
+                for (int i = fired; i < due.size(); i++) {
+                    if (due.get(i).appointment instanceof RecurringAppointment) {
+                        scheduleAfter(due.get(i).appointment, due.get(i).occurrence.getStartTime());
+                    }
+                }
+            }
+        }
+        for (Entry entry : due) {
+            deliver(entry.occurrence, timeOf(target));
+        }
+    }
+
+    /**
+     * Stops the background clock, if started, and stops following the watched manager.
+     */
+    @Override
+    public void close() {
+        Thread running;
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            running = ticker;
+        }
+        if (running != null) {
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (manager != null) {
+            manager.removeListener(this);
+        }
+    }
+
+    private void tick(Clock clock) {
+        while (true) {
+            advanceTo(LocalDateTime.now(clock));
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    // Wakes just after the next whole second, so reminders fire within a second of being due.
+                    wait(1000 - clock.millis() % 1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void deliver(Appointment occurrence, LocalDateTime now) {
+        Metrics.increment("reminders.fired");
+        for (ReminderSink sink : sinks) {
+            try {
+                sink.remind(occurrence, now);
+            } catch (RuntimeException e) {
+                System.err.println("Error delivering reminder: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Schedules the reminder for an appointment's next start after the clock's current time.
+     */
+    private void schedule(Appointment appointment) {
+        scheduleAfter(appointment, timeOf(nextTick - 1));
+    }
+
+    /**
+     * Schedules the reminder for the first start of the appointment after the given time, replacing any pending
+     * reminder with the same code. Nothing is scheduled if the appointment does not start after the clock's time.
+     */
+    private void scheduleAfter(Appointment appointment, LocalDateTime after) {
+        cancel(appointment.getCode());
+        LocalDateTime now = timeOf(nextTick - 1);
+        if (after.isBefore(now)) {
+            after = now;
+        }
+        Appointment occurrence = appointment;
+        if (appointment instanceof RecurringAppointment) {
+            occurrence = ((RecurringAppointment) appointment).nextOccurrenceAfter(after);
+        } else if (!appointment.getStartTime().isAfter(after)) {
+            occurrence = null;
+        }
+        if (occurrence == null) {
+            return;
+        }
+        Entry entry = new Entry(appointment, occurrence, ceilTick(occurrence.getStartTime().minus(leadTime)));
+        entriesByCode.put(codeKey(appointment.getCode()), entry);
+        place(entry);
+    }
+
+    /**
+     * Spreads the slots that start at the current tick over the levels below them, highest level first,
+     * then takes the reminders due at the current tick out of the wheel.
+     */
+    private void fireTick(List<Entry> due) {
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((nextTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                for (Entry entry = detach(level, slotOf(nextTick, level)); entry != null; ) {
+                    Entry following = entry.next;
+                    place(entry);
+                    entry = following;
+                }
+            }
+        }
+        for (Entry entry = detach(0, slotOf(nextTick, 0)); entry != null; ) {
+            Entry following = entry.next;
+            if (entry.tick > nextTick) {
+                place(entry);
+            } else {
+                entriesByCode.remove(codeKey(entry.appointment.getCode()));
+                due.add(entry);
+            }
+            entry = following;
+        }
+    }
+
+    /**
+     * Puts a reminder in the lowest level whose slots still cover its tick. A reminder that is already due
+     * goes into the slot of the next tick to fire.
+     */
+    private void place(Entry entry) {
+        long tick = Math.max(entry.tick, nextTick);
+        int level = 0;
+        while (level < LEVELS - 1 && (tick >>> (SLOT_BITS * (level + 1))) != (nextTick >>> (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int slot = slotOf(tick, level);
+        entry.level = level;
+        entry.slot = slot;
+        entry.previous = null;
+        entry.next = wheel[level][slot];
+        if (entry.next != null) {
+            entry.next.previous = entry;
+        }
+        wheel[level][slot] = entry;
+        levelSizes[level]++;
+    }
+
+    private void cancel(String code) {
+        Entry entry = entriesByCode.remove(codeKey(code));
+        if (entry != null) {
+            unlink(entry);
+        }
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.previous != null) {
+            entry.previous.next = entry.next;
+        } else {
+            wheel[entry.level][entry.slot] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.previous = entry.previous;
+        }
+        levelSizes[entry.level]--;
+    }
+
+    /**
+     * Empties a slot and returns the reminders it held, linked through their next fields.
+     */
+    private Entry detach(int level, int slot) {
+        Entry first = wheel[level][slot];
+        wheel[level][slot] = null;
+        for (Entry entry = first; entry != null; entry = entry.next) {
+            levelSizes[level]--;
+        }
+        return first;
+    }
+
+    private static int slotOf(long tick, int level) {
+        return (int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+    }
+
+    private static long floorTick(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static long ceilTick(LocalDateTime time) {
+        return floorTick(time) + (time.getNano() > 0 ? 1 : 0);
+    }
+
+    private static LocalDateTime timeOf(long tick) {
+        return LocalDateTime.ofEpochSecond(tick, 0, ZoneOffset.UTC);
+    }
+
+    private static String codeKey(String code) {
+        return code.toUpperCase();
+    }
+
+    /**
+     * A pending reminder, linked into the list of its wheel slot.
+     */
+    private static final class Entry {
+        private final Appointment appointment;
+        private final Appointment occurrence;
+        private final long tick;
+        private int level;
+        private int slot;
+        private Entry previous;
+        private Entry next;
+
+        Entry(Appointment appointment, Appointment occurrence, long tick) {
+            this.appointment = appointment;
+            this.occurrence = occurrence;
+            this.tick = tick;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * Receives the reminders fired by a ReminderScheduler.
+ * Sinks are called on the scheduler's thread, or on the thread advancing a virtual clock, one reminder at a time.
+ */
+package com.appointmentcalendar;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+public interface ReminderSink {
+    /**
+     * Called when a reminder is due.
+     * @param appointment The appointment, or for a recurring appointment the occurrence, the reminder is for.
+     * @param now The time the reminder fired, which is later than planned if it was scheduled too late.
+     */
+    void remind(Appointment appointment, LocalDateTime now);
+
+    /**
+     * Returns a sink that prints reminders to standard output, with the minutes left rounded up.
+     */
+    static ReminderSink console() {
+        return (appointment, now) -> {
+            long minutes = (Duration.between(now, appointment.getStartTime()).getSeconds() + 59) / 60;
+            System.out.println("Reminder: " + appointment.getDescription() + " starts in " + minutes + " minutes ("
+                    + appointment + ")");
+        };
+    }
+}
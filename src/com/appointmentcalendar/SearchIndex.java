@@ -0,0 +1,396 @@
+/**
+ * An inverted index from the normalized words of appointment descriptions to the appointments that contain them.
+ * Words are lower-cased and stripped of accents, and kept in sorted order so a prefix query reads one
+ * contiguous range of words. A query lists words that must all occur; alternatives are separated by OR
+ * and a trailing * matches every word with that prefix, e.g. {@code "dent* OR doctor checkup"}.
+ */
+package com.appointmentcalendar;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+final class SearchIndex {
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Comparator<Ranked> CLOSEST_FIRST = Comparator.comparingLong((Ranked ranked) -> ranked.distance)
+            .thenComparing(ranked -> ranked.appointment, AppointmentManager.START_TIME_ORDER);
+
+    // One-off appointments are kept in start order per word, so the matches closest to a time are found
+    // by walking outwards from it. Recurring appointments have no single start, so they are kept apart.
+    private final NavigableMap<String, NavigableSet<Appointment>> postings = new TreeMap<>();
+    private final NavigableMap<String, Set<Appointment>> seriesPostings = new TreeMap<>();
+    // The words each appointment was indexed under, so it can be removed even if its description changed since.
+    private final Map<Appointment, String[]> indexedWords = new IdentityHashMap<>();
+
+    /**
+     * Indexes the words of the appointment's description.
+     */
+    void add(Appointment appointment) {
+        String[] words = words(appointment.getDescription()).toArray(new String[0]);
+        indexedWords.put(appointment, words);
+        for (String word : words) {
+            if (appointment instanceof RecurringAppointment) {
+                seriesPostings.computeIfAbsent(word, key -> new HashSet<>()).add(appointment);
+            } else {
+                postings.computeIfAbsent(word, key -> new TreeSet<>(AppointmentManager.START_TIME_ORDER))
+                        .add(appointment);
+            }
+        }
+    }
+
+    /**
+     * Removes the appointment from the index.
+     */
+    void remove(Appointment appointment) {
+        String[] words = indexedWords.remove(appointment);
+        if (words == null) {
+            return;
+        }
+        Map<String, ? extends Set<Appointment>> index =
+                appointment instanceof RecurringAppointment ? seriesPostings : postings;
+        for (String word : words) {
+            Set<Appointment> matches = index.get(word);
+            matches.remove(appointment);
+            if (matches.isEmpty()) {
+                index.remove(word);
+            }
+        }
+    }
+
+    void clear() {
+        postings.clear();
+        seriesPostings.clear();
+        indexedWords.clear();
+    }
+
+    /**
+     * Returns up to {@code limit} indexed appointments matching the query, the ones closest in time to the
+     * reference first, as described for rankByProximity.
+     * For every set of words that must occur together, the postings of its rarest term are walked outwards
+     * from the reference in both directions and each appointment is checked against the other terms,
+     * so the work depends on the number of results rather than on the number of matches.
+     */
+    List<Appointment> find(Query query, LocalDateTime reference, int limit) {
+        Appointment probe = AppointmentManager.probe(reference);
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(Comparator.comparing((Cursor cursor) -> cursor.head,
+                CLOSEST_FIRST));
+        // A series matching several clauses is ranked once.
+        Set<Appointment> series = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (List<Term> clause : query.clauses) {
+            List<List<NavigableSet<Appointment>>> terms = new ArrayList<>(clause.size());
+            for (Term term : clause) {
+                terms.add(matching(postings, term));
+            }
+            terms.sort(Comparator.comparingInt(SearchIndex::totalSize));
+            for (NavigableSet<Appointment> driver : terms.get(0)) {
+                Cursor later = new Cursor(driver.tailSet(probe, true).iterator(), terms, reference);
+                Cursor earlier = new Cursor(driver.headSet(probe, false).descendingIterator(), terms, reference);
+                for (Cursor cursor : List.of(later, earlier)) {
+                    if (cursor.head != null) {
+                        cursors.add(cursor);
+                    }
+                }
+            }
+            series.addAll(findSeries(clause));
+        }
+
+        Set<Appointment> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Ranked> ranked = new ArrayList<>();
+        // Past the limit, matches as close as the last one are still collected so ties are cut in start order.
+        while (!cursors.isEmpty() && (ranked.size() < limit
+                || (limit > 0 && cursors.peek().head.distance == ranked.get(ranked.size() - 1).distance))) {
+            Cursor cursor = cursors.poll();
+            Ranked next = cursor.advance();
+            if (cursor.head != null) {
+                cursors.add(cursor);
+            }
+            if (!found.contains(next.appointment) && cursor.matches(next.appointment)) {
+                found.add(next.appointment);
+                ranked.add(next);
+            }
+        }
+        for (Appointment app : rankByProximity(series, reference, limit)) {
+            ranked.add(new Ranked(app, reference));
+        }
+        ranked.sort(CLOSEST_FIRST);
+        List<Appointment> results = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            results.add(ranked.get(i).appointment);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the recurring appointments that contain every term of the clause, in no particular order.
+     */
+    private Set<Appointment> findSeries(List<Term> clause) {
+        Set<Appointment> found = null;
+        for (Term term : clause) {
+            Set<Appointment> matches = new HashSet<>();
+            for (Set<Appointment> postingsOfWord : matching(seriesPostings, term)) {
+                matches.addAll(postingsOfWord);
+            }
+            if (found == null) {
+                found = matches;
+            } else {
+                found.retainAll(matches);
+            }
+        }
+        return found == null ? Collections.emptySet() : found;
+    }
+
+    /**
+     * Returns the postings of the term's word, or for a prefix term of every word starting with it.
+     */
+    private static <S extends Set<Appointment>> List<S> matching(NavigableMap<String, S> index, Term term) {
+        if (!term.prefix) {
+            S matches = index.get(term.word);
+            return matches == null ? List.of() : List.of(matches);
+        }
+        return new ArrayList<>(index.subMap(term.word, term.word + Character.MAX_VALUE).values());
+    }
+
+    private static int totalSize(List<NavigableSet<Appointment>> sets) {
+        int size = 0;
+        for (Set<Appointment> set : sets) {
+            size += set.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns up to {@code limit} of the appointments, the ones closest in time to the reference first.
+     * A recurring appointment is represented by its first occurrence at or after the reference,
+     * or by its first occurrence if the series has ended.
+     */
+    static List<Appointment> rankByProximity(Collection<Appointment> matches, LocalDateTime reference, int limit) {
+        // Keeps the best matches seen so far with the worst of them on top, ready to be replaced.
+        PriorityQueue<Ranked> best = new PriorityQueue<>(CLOSEST_FIRST.reversed());
+        for (Appointment app : matches) {
+            Appointment shown = app;
+            if (app instanceof RecurringAppointment) {
+                Appointment next = ((RecurringAppointment) app).nextOccurrenceAfter(reference.minusNanos(1));
+                if (next != null) {
+                    shown = next;
+                }
+            }
+            Ranked ranked = new Ranked(shown, reference);
+            if (best.size() < limit) {
+                best.add(ranked);
+            } else if (limit > 0 && CLOSEST_FIRST.compare(ranked, best.peek()) < 0) {
+                best.poll();
+                best.add(ranked);
+            }
+        }
+        List<Ranked> sorted = new ArrayList<>(best);
+        sorted.sort(CLOSEST_FIRST);
+        List<Appointment> ranked = new ArrayList<>(sorted.size());
+        for (Ranked entry : sorted) {
+            ranked.add(entry.appointment);
+        }
+        return ranked;
+    }
+
+    /**
+     * Splits text into its distinct normalized words: lower case, without accents, letters and digits only.
+     */
+    static Set<String> words(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        if (isAscii(text)) {
+            // Most descriptions are plain ASCII, which needs neither normalization nor a regular expression.
+            int start = -1;
+            for (int i = 0; i <= text.length(); i++) {
+                char c = i < text.length() ? text.charAt(i) : ' ';
+                boolean wordChar = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+                if (wordChar && start < 0) {
+                    start = i;
+                } else if (!wordChar && start >= 0) {
+                    words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                    start = -1;
+                }
+            }
+            return words;
+        }
+        String normalized = COMBINING_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        for (String word : NON_WORD.split(normalized.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A parsed search query: alternatives, each a list of terms that must all match.
+     */
+    static final class Query {
+        private final List<List<Term>> clauses;
+
+        private Query(List<List<Term>> clauses) {
+            this.clauses = clauses;
+        }
+
+        /**
+         * Parses a query. Words are separated by spaces, alternatives by the word OR,
+         * and a word ending in * matches any word with that prefix.
+         */
+        static Query parse(String text) {
+            List<List<Term>> clauses = new ArrayList<>();
+            List<Term> clause = new ArrayList<>();
+            for (String part : text.trim().split("\\s+")) {
+                if (part.equals("OR")) {
+                    if (!clause.isEmpty()) {
+                        clauses.add(clause);
+                    }
+                    clause = new ArrayList<>();
+                    continue;
+                }
+                List<String> partWords = new ArrayList<>(words(part));
+                for (int i = 0; i < partWords.size(); i++) {
+                    boolean last = i == partWords.size() - 1;
+                    clause.add(new Term(partWords.get(i), last && part.endsWith("*")));
+                }
+            }
+            if (!clause.isEmpty()) {
+                clauses.add(clause);
+            }
+            return new Query(clauses);
+        }
+
+        /**
+         * Returns whether the query has no words, and so matches nothing.
+         */
+        boolean isEmpty() {
+            return clauses.isEmpty();
+        }
+
+        /**
+         * Returns whether a description matches the query, without using an index.
+         */
+        boolean matches(String description) {
+            Set<String> descriptionWords = words(description);
+            for (List<Term> clause : clauses) {
+                boolean all = true;
+                for (Term term : clause) {
+                    if (!term.matchesAny(descriptionWords)) {
+                        all = false;
+                        break;
+                    }
+                }
+                if (all) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A normalized word of a query, optionally matching every word that starts with it.
+     */
+    private static final class Term {
+        private final String word;
+        private final boolean prefix;
+
+        Term(String word, boolean prefix) {
+            this.word = word;
+            this.prefix = prefix;
+        }
+
+        boolean matchesAny(Set<String> words) {
+            if (!prefix) {
+                return words.contains(word);
+            }
+            for (String candidate : words) {
+                if (candidate.startsWith(word)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * An appointment with its distance in seconds from the reference time.
+     */
+    private static final class Ranked {
+        private final Appointment appointment;
+        private final long distance;
+
+        Ranked(Appointment appointment, LocalDateTime reference) {
+            this.appointment = appointment;
+            this.distance = Math.abs(Duration.between(reference, appointment.getStartTime()).getSeconds());
+        }
+    }
+
+    /**
+     * Walks one posting set away from the reference time, so appointments come out in order of distance,
+     * and checks them against the terms of the clause the set belongs to.
+     */
+    private static final class Cursor {
+        private final Iterator<Appointment> iterator;
+        private final List<List<NavigableSet<Appointment>>> terms;
+        private final LocalDateTime reference;
+        private Ranked head;
+
+        Cursor(Iterator<Appointment> iterator, List<List<NavigableSet<Appointment>>> terms, LocalDateTime reference) {
+            this.iterator = iterator;
+            this.terms = terms;
+            this.reference = reference;
+            advance();
+        }
+
+        Ranked advance() {
+            Ranked current = head;
+            head = iterator.hasNext() ? new Ranked(iterator.next(), reference) : null;
+            return current;
+        }
+
+        /**
+         * Returns whether the appointment occurs in the postings of every term but the first, which it was read from.
+         */
+        boolean matches(Appointment appointment) {
+            for (int i = 1; i < terms.size(); i++) {
+                boolean inTerm = false;
+                for (NavigableSet<Appointment> postingsOfWord : terms.get(i)) {
+                    if (postingsOfWord.contains(appointment)) {
+                        inTerm = true;
+                        break;
+                    }
+                }
+                if (!inTerm) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,604 @@
+/**
+ * An AppointmentManager that stores one-off appointments in one text file per month of their start time
+ * and loads a month only when a query reaches it, so showing today's agenda does not parse years of history.
+ * A small manifest records the number of appointments, the first and last start time and the highest
+ * code number per category letter of every month, which lets code generation and next-appointment
+ * lookups skip months that are not loaded. Recurring appointments are kept in a file of their own that
+ * is always loaded. Saving rewrites only the months that changed.
+ *
+ * Queries without a time range, such as getAllAppointments or countByCategory, and lookups of codes that
+ * may be on disk load every month. Months are loaded silently, as with setAppointments.
+ * This class is not thread-safe, since queries may load months.
+ */
+package com.appointmentcalendar;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class SegmentedAppointmentManager extends AppointmentManager {
+    static final String DIRECTORY_NAME = "appointments.segments";
+    private static final String MANIFEST_FILE = "manifest.txt";
+    private static final String RECURRING_FILE = "recurring.txt";
+    private static final Pattern SEGMENT_FILE = Pattern.compile("(\\d{4}-\\d{2})\\.txt");
+    private static final Pattern NUMBERED_CODE = Pattern.compile("([A-Za-z])(\\d{1,9})");
+
+    private final File directory;
+    private final NavigableMap<YearMonth, Segment> segments = new TreeMap<>();
+    private boolean recurringDirty;
+
+    private SegmentedAppointmentManager(File directory) {
+        super();
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the segments in the given directory, creating the directory if needed.
+     * Only the manifest and the recurring appointments are read; months are loaded as queries reach them.
+     * Months missing from the manifest, as left by a crash between writing a month and the manifest,
+     * are loaded right away.
+     * @throws IOException if the directory cannot be created or read.
+     */
+    public static SegmentedAppointmentManager open(File directory) throws IOException {
+        Files.createDirectories(directory.toPath());
+        SegmentedAppointmentManager manager = new SegmentedAppointmentManager(directory);
+        manager.readSegments();
+        return manager;
+    }
+
+    /**
+     * Returns whether the directory holds a manifest written by save.
+     */
+    public static boolean exists(File directory) {
+        return new File(directory, MANIFEST_FILE).exists();
+    }
+
+    /**
+     * Writes every month changed since it was loaded or last saved, then the manifest.
+     * Months left without appointments are deleted.
+     * @throws IOException if a file cannot be written; months not yet written stay marked as changed.
+     */
+    public void save() throws IOException {
+        boolean changed = false;
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (!segment.dirty) {
+                continue;
+            }
+            List<Appointment> held = getOneOffAppointmentsBetween(segment.start(), segment.end());
+            File file = segmentFile(segment.month);
+            if (held.isEmpty()) {
+                Files.deleteIfExists(file.toPath());
+                segments.remove(segment.month);
+            } else {
+                writeAtomically(held, file);
+                segment.describe(held);
+            }
+            segment.dirty = false;
+            changed = true;
+        }
+        if (recurringDirty) {
+            List<Appointment> recurring = new ArrayList<>(getRecurringAppointments());
+            File file = new File(directory, RECURRING_FILE);
+            if (recurring.isEmpty()) {
+                Files.deleteIfExists(file.toPath());
+            } else {
+                writeAtomically(recurring, file);
+            }
+            recurringDirty = false;
+            changed = true;
+        }
+        if (changed) {
+            writeManifest();
+        }
+    }
+
+    /**
+     * Returns the number of months stored, loaded or not.
+     */
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Returns the number of months currently loaded.
+     */
+    public int loadedSegmentCount() {
+        int loaded = 0;
+        for (Segment segment : segments.values()) {
+            if (segment.loaded) {
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Adds a new appointment to the collection, loading its month first.
+     * An existing appointment with the same code is replaced; if the code may belong to a month that is
+     * not loaded, every month is loaded to find it. Generated codes never need this.
+     */
+    @Override
+    public void addAppointment(Appointment appointment) {
+        if (super.findByCode(appointment.getCode()) == null && mayBeOnDisk(appointment.getCode())) {
+            loadAll();
+        }
+        Appointment previous = super.findByCode(appointment.getCode());
+        markDirty(appointment);
+        super.addAppointment(appointment);
+        if (previous != null) {
+            markDirty(previous);
+        }
+    }
+
+    /**
+     * Adds a batch of appointments, loading every month first only if one of their codes may be on disk.
+     */
+    @Override
+    public void addAll(List<Appointment> batch) {
+        for (Appointment appointment : batch) {
+            if (super.findByCode(appointment.getCode()) == null && mayBeOnDisk(appointment.getCode())) {
+                loadAll();
+                break;
+            }
+        }
+        for (Appointment appointment : batch) {
+            Appointment previous = super.findByCode(appointment.getCode());
+            markDirty(appointment);
+            if (previous != null) {
+                markDirty(previous);
+            }
+        }
+        super.addAll(batch);
+    }
+
+    /**
+     * Returns the appointment with the given code (case-insensitive), or null if there is none.
+     * A code that is not loaded but may be on disk loads every month.
+     */
+    @Override
+    public Appointment findByCode(String code) {
+        Appointment found = super.findByCode(code);
+        if (found == null && mayBeOnDisk(code)) {
+            loadAll();
+            found = super.findByCode(code);
+        }
+        return found;
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsBetween(LocalDateTime from, LocalDateTime to) {
+        ensureLoaded(from, to);
+        return super.getAppointmentsBetween(from, to);
+    }
+
+    /**
+     * Returns the first appointment starting strictly after the given time, or null if there is none.
+     * Months are loaded in order only until one holds a later appointment.
+     */
+    @Override
+    public Appointment getNextAppointmentAfter(LocalDateTime time) {
+        for (Segment segment : unloadedSegments(time, null)) {
+            Appointment next = super.getNextAppointmentAfter(time);
+            if (next != null && next.getStartTime().isBefore(segment.start())) {
+                return next;
+            }
+            if (segment.lastStart == null || segment.lastStart.isAfter(time)) {
+                load(segment);
+            }
+        }
+        return super.getNextAppointmentAfter(time);
+    }
+
+    /**
+     * Returns a read-only iterator over the appointments starting at or after the given time, in start order.
+     * Every month from the given time on is loaded first.
+     */
+    @Override
+    public Iterator<Appointment> iterateFrom(LocalDateTime from) {
+        ensureLoaded(from, null);
+        return super.iterateFrom(from);
+    }
+
+    /**
+     * Returns a page as described in AppointmentManager.
+     * Months are loaded in order only until the page is full of appointments that start before the next month.
+     */
+    @Override
+    public List<Appointment> page(LocalDateTime from, LocalDateTime to, Predicate<Appointment> filter,
+                                  Appointment afterKey, int limit) {
+        for (Segment segment : unloadedSegments(lowerBound(from, afterKey), to)) {
+            List<Appointment> page = super.page(from, to, filter, afterKey, limit);
+            if (!page.isEmpty() && page.size() == limit
+                    && page.get(page.size() - 1).getStartTime().isBefore(segment.start())) {
+                return page;
+            }
+            load(segment);
+        }
+        return super.page(from, to, filter, afterKey, limit);
+    }
+
+    @Override
+    public List<Appointment> page(Category category, LocalDateTime from, LocalDateTime to,
+                                  Appointment afterKey, int limit) {
+        for (Segment segment : unloadedSegments(lowerBound(from, afterKey), to)) {
+            List<Appointment> page = super.page(category, from, to, afterKey, limit);
+            if (!page.isEmpty() && page.size() == limit
+                    && page.get(page.size() - 1).getStartTime().isBefore(segment.start())) {
+                return page;
+            }
+            load(segment);
+        }
+        return super.page(category, from, to, afterKey, limit);
+    }
+
+    @Override
+    public int countByCategory(Category category) {
+        loadAll();
+        return super.countByCategory(category);
+    }
+
+    @Override
+    public List<Appointment> search(String query, LocalDateTime reference, int limit) {
+        loadAll();
+        return super.search(query, reference, limit);
+    }
+
+    @Override
+    public List<Appointment> getSortedAppointments() {
+        loadAll();
+        return super.getSortedAppointments();
+    }
+
+    @Override
+    public boolean deleteAppointment(String code) {
+        Appointment removed = findByCode(code);
+        if (removed == null) {
+            return false;
+        }
+        markDirty(removed);
+        return super.deleteAppointment(code);
+    }
+
+    /**
+     * Replaces every appointment, loaded or not. Every month is rewritten on the next save.
+     */
+    @Override
+    public void setAppointments(List<Appointment> appointments) {
+        for (Segment segment : segments.values()) {
+            segment.loaded = true;
+            segment.dirty = true;
+        }
+        super.setAppointments(appointments);
+        for (Appointment app : appointments) {
+            markDirty(app);
+        }
+        recurringDirty = true;
+    }
+
+    /**
+     * Changes a held appointment, marking both the month it leaves and the month it moves to as changed.
+     */
+    @Override
+    void edit(Appointment appointment, Runnable change) {
+        markDirty(appointment);
+        super.edit(appointment, change);
+        markDirty(appointment);
+    }
+
+    /**
+     * Returns the appointments that overlap the time range, loading the months it covers.
+     * Stored appointments end on the day they start, so no earlier month can overlap.
+     */
+    @Override
+    public List<Appointment> findConflicts(LocalDateTime start, LocalDateTime end) {
+        ensureLoaded(start.toLocalDate().atStartOfDay(), end.isAfter(start) ? end : start.plusNanos(1));
+        return super.findConflicts(start, end);
+    }
+
+    @Override
+    public List<AppointmentConflict> findAllConflicts() {
+        loadAll();
+        return super.findAllConflicts();
+    }
+
+    /**
+     * Finds the months on disk, reads their details from the manifest and loads the recurring appointments.
+     */
+    private void readSegments() throws IOException {
+        String[] names = directory.list();
+        if (names == null) {
+            throw new IOException("Cannot read " + directory);
+        }
+        for (String name : names) {
+            Matcher matcher = SEGMENT_FILE.matcher(name);
+            if (matcher.matches()) {
+                YearMonth month = YearMonth.parse(matcher.group(1));
+                segments.put(month, new Segment(month));
+            }
+        }
+        readManifest();
+        File recurring = new File(directory, RECURRING_FILE);
+        if (recurring.exists()) {
+            addLoaded(FileManager.readAppointments(recurring));
+        }
+        for (Segment segment : segments.values()) {
+            if (segment.highestCodes == null) {
+                // Without its highest codes, generated codes could collide with the month's appointments.
+                load(segment);
+            } else {
+                for (Map.Entry<Character, Integer> highest : segment.highestCodes.entrySet()) {
+                    reserveCodes(highest.getKey(), highest.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the manifest, one line per month: month|count|first start|last start|highest codes.
+     * Lines that cannot be parsed or name a month without a file are skipped.
+     */
+    private void readManifest() throws IOException {
+        File manifest = new File(directory, MANIFEST_FILE);
+        if (!manifest.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(manifest, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\\|", -1);
+                if (fields.length != 5) {
+                    continue;
+                }
+                try {
+                    Segment segment = segments.get(YearMonth.parse(fields[0]));
+                    if (segment != null) {
+                        segment.count = Integer.parseInt(fields[1]);
+                        segment.firstStart = LocalDateTime.parse(fields[2]);
+                        segment.lastStart = LocalDateTime.parse(fields[3]);
+                        segment.highestCodes = parseHighestCodes(fields[4]);
+                    }
+                } catch (DateTimeParseException | IllegalArgumentException e) {
+                    System.err.println("Skipping malformed manifest line in " + manifest + ": " + line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the manifest to a temporary file and atomically renames it over the old one.
+     */
+    private void writeManifest() throws IOException {
+        File manifest = new File(directory, MANIFEST_FILE);
+        File temp = new File(manifest.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new FileWriter(temp, StandardCharsets.UTF_8))) {
+            for (Segment segment : segments.values()) {
+                if (segment.highestCodes == null) {
+                    continue;
+                }
+                StringBuilder codes = new StringBuilder();
+                for (Map.Entry<Character, Integer> highest : segment.highestCodes.entrySet()) {
+                    if (codes.length() > 0) {
+                        codes.append(',');
+                    }
+                    codes.append(highest.getKey()).append(highest.getValue());
+                }
+                writer.write(segment.month + "|" + segment.count + "|" + segment.firstStart + "|"
+                        + segment.lastStart + "|" + codes + System.lineSeparator());
+            }
+        }
+        Files.move(temp.toPath(), manifest.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Parses highest code numbers written as a comma-separated list of a letter followed by a number, e.g. "W12,P3".
+     * @throws IllegalArgumentException if the list is malformed.
+     */
+    private static Map<Character, Integer> parseHighestCodes(String field) {
+        Map<Character, Integer> highest = new TreeMap<>();
+        if (field.isEmpty()) {
+            return highest;
+        }
+        for (String entry : field.split(",")) {
+            Matcher matcher = NUMBERED_CODE.matcher(entry);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("Malformed code " + entry);
+            }
+            highest.put(Character.toUpperCase(matcher.group(1).charAt(0)), Integer.parseInt(matcher.group(2)));
+        }
+        return highest;
+    }
+
+    private static void writeAtomically(List<Appointment> appointments, File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        FileManager.writeAppointments(appointments, temp);
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private File segmentFile(YearMonth month) {
+        return new File(directory, month + ".txt");
+    }
+
+    /**
+     * Returns whether an appointment with the code may be stored in a month that is not loaded.
+     * Codes that are not a letter followed by a number are never ruled out.
+     */
+    private boolean mayBeOnDisk(String code) {
+        Matcher matcher = NUMBERED_CODE.matcher(code);
+        boolean numbered = matcher.matches();
+        for (Segment segment : segments.values()) {
+            if (segment.loaded) {
+                continue;
+            }
+            if (!numbered) {
+                return true;
+            }
+            Integer highest = segment.highestCodes.get(Character.toUpperCase(code.charAt(0)));
+            if (highest != null && Integer.parseInt(matcher.group(2)) <= highest) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks the month of an appointment, or the recurring appointments, as changed, loading the month first
+     * so that saving it does not drop the appointments still on disk.
+     */
+    private void markDirty(Appointment appointment) {
+        if (appointment instanceof RecurringAppointment) {
+            recurringDirty = true;
+            return;
+        }
+        YearMonth month = YearMonth.from(appointment.getStartTime());
+        Segment segment = segments.get(month);
+        if (segment == null) {
+            segment = new Segment(month);
+            segment.loaded = true;
+            segments.put(month, segment);
+        } else {
+            load(segment);
+        }
+        segment.dirty = true;
+    }
+
+    /**
+     * Loads the months that can hold appointments starting in [from, to).
+     * @param from The lower bound, or null for no lower bound.
+     * @param to The upper bound, or null for no upper bound.
+     */
+    private void ensureLoaded(LocalDateTime from, LocalDateTime to) {
+        for (Segment segment : unloadedSegments(from, to)) {
+            load(segment);
+        }
+    }
+
+    private void loadAll() {
+        ensureLoaded(null, null);
+    }
+
+    /**
+     * Returns the months not yet loaded that can hold appointments starting in [from, to), in order.
+     */
+    private List<Segment> unloadedSegments(LocalDateTime from, LocalDateTime to) {
+        List<Segment> unloaded = new ArrayList<>();
+        if (from != null && to != null && !from.isBefore(to)) {
+            return unloaded;
+        }
+        NavigableMap<YearMonth, Segment> range = segments;
+        if (from != null) {
+            range = range.tailMap(YearMonth.from(from), true);
+        }
+        if (to != null) {
+            range = range.headMap(YearMonth.from(to.minusNanos(1)), true);
+        }
+        for (Segment segment : range.values()) {
+            if (!segment.loaded) {
+                unloaded.add(segment);
+            }
+        }
+        return unloaded;
+    }
+
+    /**
+     * Loads a month if it is not loaded yet.
+     * @throws UncheckedIOException if the month cannot be read. It stays unloaded, so a later save cannot
+     *                              overwrite it with only the appointments held in memory.
+     */
+    private void load(Segment segment) {
+        if (segment.loaded) {
+            return;
+        }
+        List<Appointment> loaded;
+        try {
+            loaded = FileManager.readAppointments(segmentFile(segment.month));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load appointments of " + segment.month, e);
+        }
+        addLoaded(loaded);
+        segment.loaded = true;
+        if (segment.highestCodes == null) {
+            segment.describe(loaded);
+        }
+        Metrics.increment("segments.loaded");
+    }
+
+    /**
+     * Returns the later of the page start and the start of the last appointment of the previous page.
+     */
+    private static LocalDateTime lowerBound(LocalDateTime from, Appointment afterKey) {
+        if (afterKey == null || (from != null && afterKey.getStartTime().isBefore(from))) {
+            return from;
+        }
+        return afterKey.getStartTime();
+    }
+
+    /**
+     * One month of appointments with the details kept in the manifest.
+     */
+    private static final class Segment {
+        private final YearMonth month;
+        private boolean loaded;
+        private boolean dirty;
+        private int count;
+        private LocalDateTime firstStart;
+        private LocalDateTime lastStart;
+        // Null until known from the manifest or from loading the month.
+        private Map<Character, Integer> highestCodes;
+
+        Segment(YearMonth month) {
+            this.month = month;
+        }
+
+        LocalDateTime start() {
+            return month.atDay(1).atStartOfDay();
+        }
+
+        LocalDateTime end() {
+            return month.plusMonths(1).atDay(1).atStartOfDay();
+        }
+
+        /**
+         * Recomputes the manifest details from the month's appointments.
+         */
+        void describe(List<Appointment> appointments) {
+            count = appointments.size();
+            firstStart = start();
+            lastStart = start();
+            highestCodes = new TreeMap<>();
+            for (Appointment app : appointments) {
+                if (app == appointments.get(0) || app.getStartTime().isBefore(firstStart)) {
+                    firstStart = app.getStartTime();
+                }
+                if (app.getStartTime().isAfter(lastStart)) {
+                    lastStart = app.getStartTime();
+                }
+                Matcher matcher = NUMBERED_CODE.matcher(app.getCode());
+                if (matcher.matches()) {
+                    highestCodes.merge(Character.toUpperCase(matcher.group(1).charAt(0)),
+                            Integer.parseInt(matcher.group(2)), Math::max);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Saves the appointments of a manager to the text file on a background thread whenever they change,
+ * so adding or deleting an appointment never waits for the disk.
+ * Save requests are coalesced: a save starts once no request has come in for the debounce delay, or at the
+ * latest ten delays after the first unsaved request, so a steady stream of changes is still saved regularly.
+ * Each save copies the appointments, encodes them through a buffer reused from save to save, and renames a
+ * temporary file over the appointments file, so a crash while saving leaves the previous file intact.
+ * The manager must be safe for concurrent use, such as a ConcurrentAppointmentManager.
+ */
+package com.appointmentcalendar;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class SnapshotWriter implements AppointmentListener, Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_DELAYS = 10;
+
+    private final AppointmentManager manager;
+    private final File file;
+    private final long debounceNanos;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Thread writer;
+    private boolean requested;
+    private long firstRequest;
+    private long lastRequest;
+    private boolean failed;
+    private boolean closed;
+    private long requestsWritten;
+    private long requestCount;
+
+    private SnapshotWriter(AppointmentManager manager, File file, Duration debounce) {
+        this.manager = manager;
+        this.file = file;
+        this.debounceNanos = debounce.toNanos();
+        this.writer = new Thread(this::writeLoop, "snapshot-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Starts saving the manager to the given file whenever one of its appointments is added, changed or deleted.
+     * @param debounce How long to wait for further changes before saving.
+     */
+    public static SnapshotWriter start(AppointmentManager manager, File file, Duration debounce) {
+        if (debounce.isNegative()) {
+            throw new IllegalArgumentException("Debounce delay must not be negative");
+        }
+        SnapshotWriter snapshotWriter = new SnapshotWriter(manager, file, debounce);
+        snapshotWriter.writer.start();
+        manager.addListener(snapshotWriter);
+        return snapshotWriter;
+    }
+
+    /**
+     * Asks for a save without waiting for it. Requests made before a pending save starts share that save.
+     */
+    public synchronized void requestSave() {
+        long now = System.nanoTime();
+        if (requested) {
+            Metrics.increment("snapshot.coalesced");
+        } else {
+            requested = true;
+            firstRequest = now;
+        }
+        lastRequest = now;
+        requestCount++;
+        notifyAll();
+    }
+
+    @Override
+    public void appointmentAdded(Appointment appointment) {
+        requestSave();
+    }
+
+    @Override
+    public void appointmentDeleted(Appointment appointment) {
+        requestSave();
+    }
+
+    @Override
+    public void appointmentUpdated(Appointment previous, Appointment appointment) {
+        requestSave();
+    }
+
+    @Override
+    public void appointmentsReplaced() {
+        requestSave();
+    }
+
+    /**
+     * Saves right away if a save is pending and waits until every save requested so far has been written or has failed.
+     */
+    public void flush() throws InterruptedException {
+        synchronized (this) {
+            long target = requestCount;
+            // Skips the debounce delay of the pending save.
+            firstRequest -= MAX_DELAYS * debounceNanos;
+            notifyAll();
+            while (requestsWritten < target && writer.isAlive()) {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * Stops following the manager, writes any pending or failed save without waiting for the debounce delay,
+     * and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        manager.removeListener(this);
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            long written;
+            synchronized (this) {
+                try {
+                    while (!dueOrClosing()) {
+                        if (requested) {
+                            long due = Math.min(lastRequest + debounceNanos, firstRequest + MAX_DELAYS * debounceNanos);
+                            TimeUnit.NANOSECONDS.timedWait(this, Math.max(due - System.nanoTime(), 1));
+                        } else {
+                            wait();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!requested && !failed) {
+                    return;
+                }
+                requested = false;
+                written = requestCount;
+            }
+            boolean saved = save();
+            synchronized (this) {
+                failed = !saved;
+                requestsWritten = written;
+                notifyAll();
+                if (closed && !requested) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether the pending save is due, or the writer is closing and has to write what is left.
+     */
+    private boolean dueOrClosing() {
+        if (closed) {
+            return true;
+        }
+        long now = System.nanoTime();
+        return requested && (now - lastRequest >= debounceNanos || now - firstRequest >= MAX_DELAYS * debounceNanos);
+    }
+
+    /**
+     * Writes a snapshot of the manager, returning false if it could not be written.
+     */
+    private boolean save() {
+        try {
+            List<Appointment> snapshot = manager.snapshot();
+            FileManager.replaceAppointments(snapshot, file, buffer);
+            Metrics.increment("snapshot.saves");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Metrics.increment("snapshot.errors");
+            System.err.println("Error saving appointments: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/**
+ * Hosts the calendars of many tenants in one process, each stored in its own text file in a directory.
+ * A tenant's calendar is loaded on first access and kept in a least-recently-used cache that is bounded
+ * both by the number of tenants and by the total number of appointments held. When either bound is
+ * exceeded the coldest tenants are evicted, and written back first if they changed, so memory stays
+ * bounded however many tenants exist on disk.
+ *
+ * Callers work on a calendar between acquire and release, or through withCalendar. A tenant is never
+ * evicted while it is acquired, so the cache may briefly exceed its bounds when many tenants are in use.
+ * Only changes reported to listeners mark a calendar as changed; setAppointments is not reported.
+ */
+package com.appointmentcalendar;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+public class TenantRegistry implements Closeable {
+    private static final Pattern TENANT_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final String FILE_SUFFIX = ".txt";
+
+    private final File directory;
+    private final int maxTenants;
+    private final long maxAppointments;
+    // Access order makes iteration run from the least to the most recently used tenant.
+    private final LinkedHashMap<String, Tenant> tenants = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Tenant> evicting = new HashMap<>();
+    private long cachedAppointments;
+    private boolean closed;
+
+    /**
+     * Creates a registry for the tenant files in the given directory, creating the directory if needed.
+     * @param maxTenants The number of calendars kept in memory once none of them are in use.
+     * @param maxAppointments The total number of appointments kept in memory once no calendars are in use.
+     * @throws IOException if the directory cannot be created.
+     */
+    public TenantRegistry(File directory, int maxTenants, long maxAppointments) throws IOException {
+        if (maxTenants < 1 || maxAppointments < 0) {
+            throw new IllegalArgumentException("The cache must hold at least one tenant");
+        }
+        Files.createDirectories(directory.toPath());
+        this.directory = directory;
+        this.maxTenants = maxTenants;
+        this.maxAppointments = maxAppointments;
+    }
+
+    /**
+     * Returns whether the tenant ID can name a calendar: one to 64 letters, digits, underscores or dashes.
+     */
+    public static boolean isValidTenantId(String tenantId) {
+        return tenantId != null && TENANT_ID.matcher(tenantId).matches();
+    }
+
+    /**
+     * Runs the action on the tenant's calendar, loading it first if it is not in memory.
+     * A tenant without a file starts with an empty calendar.
+     * @throws IllegalArgumentException if the tenant ID is not valid.
+     * @throws IllegalStateException if the registry is closed.
+     * @throws UncheckedIOException if the tenant's file cannot be read.
+     */
+    public <T> T withCalendar(String tenantId, Function<AppointmentManager, T> action) {
+        AppointmentManager calendar = acquire(tenantId);
+        try {
+            return action.apply(calendar);
+        } finally {
+            release(tenantId);
+        }
+    }
+
+    /**
+     * Returns the tenant's calendar, loading it first if it is not in memory, and keeps it in memory
+     * until the matching call to release. The calendar is safe for concurrent use.
+     * @throws IllegalArgumentException if the tenant ID is not valid.
+     * @throws IllegalStateException if the registry is closed.
+     * @throws UncheckedIOException if the tenant's file cannot be read.
+     */
+    public AppointmentManager acquire(String tenantId) {
+        if (!isValidTenantId(tenantId)) {
+            throw new IllegalArgumentException("Invalid tenant ID: " + tenantId);
+        }
+        Tenant tenant;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Tenant registry is closed");
+            }
+            tenant = tenants.get(tenantId);
+            if (tenant == null) {
+                // A tenant that is still being written back is taken back as it is, so no change is lost.
+                tenant = evicting.remove(tenantId);
+                if (tenant == null) {
+                    tenant = new Tenant(tenantId, fileFor(tenantId));
+                }
+                tenants.put(tenantId, tenant);
+            }
+            tenant.pins++;
+        }
+        try {
+            tenant.load();
+        } catch (RuntimeException e) {
+            release(tenantId);
+            throw e;
+        }
+        return tenant.calendar;
+    }
+
+    /**
+     * Ends a use of the tenant's calendar started with acquire, evicting cold tenants if the cache is over its bounds.
+     */
+    public void release(String tenantId) {
+        List<Tenant> evicted = new ArrayList<>();
+        synchronized (this) {
+            Tenant tenant = tenants.get(tenantId);
+            if (tenant == null || tenant.pins == 0) {
+                throw new IllegalStateException("Tenant was not acquired: " + tenantId);
+            }
+            tenant.pins--;
+            cachedAppointments += tenant.size - tenant.countedSize;
+            tenant.countedSize = tenant.size;
+            Iterator<Map.Entry<String, Tenant>> coldest = tenants.entrySet().iterator();
+            while ((tenants.size() > maxTenants || cachedAppointments > maxAppointments) && coldest.hasNext()) {
+                Map.Entry<String, Tenant> entry = coldest.next();
+                Tenant candidate = entry.getValue();
+                if (candidate.pins > 0) {
+                    continue;
+                }
+                coldest.remove();
+                cachedAppointments -= candidate.countedSize;
+                candidate.countedSize = 0;
+                candidate.pendingWriteBacks++;
+                evicting.put(entry.getKey(), candidate);
+                evicted.add(candidate);
+                Metrics.increment("tenants.evicted");
+            }
+        }
+        for (Tenant tenant : evicted) {
+            writeBack(tenant);
+            synchronized (this) {
+                // The tenant may have been taken back, or evicted again with another write-back still to run.
+                if (--tenant.pendingWriteBacks == 0 && evicting.get(tenant.id) == tenant) {
+                    evicting.remove(tenant.id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tenant calendars currently in memory.
+     */
+    public synchronized int cachedTenants() {
+        return tenants.size();
+    }
+
+    /**
+     * Returns the number of appointments held by the calendars in memory, as of their last release.
+     */
+    public synchronized long cachedAppointments() {
+        return cachedAppointments;
+    }
+
+    /**
+     * Writes back every changed calendar in memory without evicting it.
+     */
+    public void flush() {
+        List<Tenant> cached;
+        synchronized (this) {
+            cached = new ArrayList<>(tenants.values());
+        }
+        for (Tenant tenant : cached) {
+            writeBack(tenant);
+        }
+    }
+
+    /**
+     * Writes back every changed calendar and stops handing out calendars.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+    }
+
+    private File fileFor(String tenantId) {
+        return new File(directory, tenantId + FILE_SUFFIX);
+    }
+
+    /**
+     * Writes a changed calendar to a temporary file and atomically renames it over the tenant's file.
+     * On failure the calendar stays marked as changed, so the next write-back tries again.
+     */
+    private static void writeBack(Tenant tenant) {
+        synchronized (tenant) {
+            if (!tenant.dirty) {
+                return;
+            }
+            // Cleared first, so a change made while writing marks the calendar again.
+            tenant.dirty = false;
+            File temp = new File(tenant.file.getPath() + ".tmp");
+            try {
+                FileManager.writeAppointments(tenant.calendar.getAllAppointments(), temp);
+                Files.move(temp.toPath(), tenant.file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                tenant.dirty = true;
+                System.err.println("Error saving tenant calendar " + tenant.file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A tenant's calendar with its cache bookkeeping.
+     * The pin count, counted size and pending write-backs are guarded by the registry; loading and writing back by the tenant itself.
+     */
+    private static final class Tenant implements AppointmentListener {
+        private final String id;
+        private final File file;
+        private final AppointmentManager calendar = Metrics.isEnabled()
+                ? new InstrumentedAppointmentManager(new ConcurrentAppointmentManager())
+                : new ConcurrentAppointmentManager();
+        private boolean loaded;
+        private volatile boolean dirty;
+        private volatile int size;
+        private int pins;
+        private int countedSize;
+        private int pendingWriteBacks;
+
+        Tenant(String id, File file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        /**
+         * Loads the calendar from the tenant's file the first time it is called.
+         * @throws UncheckedIOException if the file cannot be read. The tenant stays unloaded, so its file is
+         *                              never written back with only the changes made since.
+         */
+        synchronized void load() {
+            if (loaded) {
+                return;
+            }
+            List<Appointment> appointments;
+            try {
+                appointments = file.exists() ? FileManager.readAppointments(file) : new ArrayList<>();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot load appointments of tenant " + id, e);
+            }
+            calendar.setAppointments(appointments);
+            size = calendar.getAllAppointments().size();
+            calendar.addListener(this);
+            loaded = true;
+            Metrics.increment("tenants.loaded");
+        }
+
+        // Listeners run under the calendar's write lock, so the size is never updated concurrently.
+        @Override
+        public void appointmentAdded(Appointment appointment) {
+            size++;
+            dirty = true;
+        }
+
+        @Override
+        public void appointmentDeleted(Appointment appointment) {
+            size--;
+            dirty = true;
+        }
+    }
+}
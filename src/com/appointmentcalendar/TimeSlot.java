@@ -0,0 +1,49 @@
+/**
+ * Represents a free period of time, from a start time (inclusive) to an end time (exclusive).
+ */
+package com.appointmentcalendar;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+public class TimeSlot {
+    private final LocalDateTime startTime;
+    private final LocalDateTime endTime;
+
+    /**
+     * Constructs a new TimeSlot covering the given range.
+     */
+    public TimeSlot(LocalDateTime startTime, LocalDateTime endTime) {
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    /**
+     * Returns the start time of the slot.
+     */
+    public LocalDateTime getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Returns the end time of the slot.
+     */
+    public LocalDateTime getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * Returns the length of the slot.
+     */
+    public Duration getDuration() {
+        return Duration.between(startTime, endTime);
+    }
+
+    /**
+     * Returns a string representation of the slot.
+     */
+    @Override
+    public String toString() {
+        return String.format("TimeSlot %s - %s", startTime, endTime);
+    }
+}
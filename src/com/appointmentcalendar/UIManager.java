@@ -1,25 +1,34 @@
 package com.appointmentcalendar;
 
 import java.util.Scanner;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.Comparator;
+import java.time.format.TextStyle;
+import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public class UIManager {
     private AppointmentManager appointmentManager;
     private Scanner scanner;
     private DateTimeFormatter dateTimeFormatter;
-    private static final Map<String, String> CATEGORIES = Map.of(
-            "W", "Work",
-            "P", "Personal",
-            "M", "Medical",
-            "O", "Other"
+    // Built the first time statistics are viewed, then kept up to date.
+    private OccupancyStatistics statistics;
+    // Keeps the banner and formatted rows until the calendar changes, so idle navigation recomputes nothing.
+    private ViewCache viewCache;
+    private static final int SEARCH_RESULT_LIMIT = 20;
+    private static final Map<String, RecurrenceRule.Frequency> REPEAT_FREQUENCIES = Map.of(
+            "D", RecurrenceRule.Frequency.DAILY,
+            "W", RecurrenceRule.Frequency.WEEKLY,
+            "M", RecurrenceRule.Frequency.MONTHLY
     );
 
     /**
@@ -30,6 +39,7 @@ public class UIManager {
         this.appointmentManager = appointmentManager;
         this.scanner = new Scanner(System.in);
         this.dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+        this.viewCache = ViewCache.watch(appointmentManager, this::renderAppointment, Clock.systemDefaultZone());
     }
 
     /**
@@ -41,7 +51,7 @@ public class UIManager {
             clearConsole();
             displayUpcomingAppointments();
             displayMainMenu();
-            int choice = getUserChoice(1, 6);
+            int choice = getUserChoice(1, 8);
             switch (choice) {
                 case 1:
                     viewAllAppointments();
@@ -59,45 +69,42 @@ public class UIManager {
                     deleteAppointment();
                     break;
                 case 6:
+                    searchAppointments();
+                    break;
+                case 7:
+                    viewStatistics();
+                    break;
+                case 8:
                     running = false;
                     System.out.println("Exiting the application. Goodbye!");
                     break;
             }
         }
+        if (statistics != null) {
+            statistics.close();
+        }
+        viewCache.close();
         scanner.close();
     }
 
     /**
      * Displays upcoming appointments for today or the next available day.
+     * The banner is only rebuilt after the calendar changes, at midnight, or when the next appointment starts.
      */
     private void displayUpcomingAppointments() {
-        LocalDateTime today = LocalDateTime.now();
-        List<Appointment> todaysAppointments = appointmentManager.getAppointmentsForDay(today);
-
-        System.out.println("--- Upcoming Appointments ---");
-        if (!todaysAppointments.isEmpty()) {
-            System.out.println("Today's appointments:");
-            for (Appointment app : todaysAppointments) {
-                System.out.println(formatAppointment(app));
-            }
-        } else {
-            Appointment nextAppointment = appointmentManager.getNextUpcomingAppointment();
-            if (nextAppointment != null) {
-                System.out.println("Next upcoming appointment:");
-                System.out.println(formatAppointment(nextAppointment));
-            } else {
-                System.out.println("No upcoming appointments.");
-            }
-        }
-        System.out.println("-----------------------------");
+        System.out.println(viewCache.banner());
     }
 
     /**
-     * Formats an appointment for display.
+     * Formats an appointment for display, reusing the text from the last time it was shown if it has not changed.
      * @param app The appointment to format.
      * @return A formatted string representation of the appointment.
      */
     private String formatAppointment(Appointment app) {
+        return viewCache.row(app);
+    }
+
+    private String renderAppointment(Appointment app) {
         return String.format("%s - %s to %s: %s (%s)",
                 app.getCode(),
                 app.getStartTime().format(dateTimeFormatter),
@@ -116,7 +123,9 @@ public class UIManager {
         System.out.println("3. View appointments for a specific day");
         System.out.println("4. Add new appointment");
         System.out.println("5. Delete appointment");
-        System.out.println("6. Exit");
+        System.out.println("6. Search appointments");
+        System.out.println("7. View statistics");
+        System.out.println("8. Exit");
         System.out.print("Enter your choice: ");
     }
 
@@ -153,39 +162,59 @@ public class UIManager {
      * Displays all appointments in a paginated format, sorted by start time.
      */
     private void viewAllAppointments() {
-        List<Appointment> appointments = appointmentManager.getSortedAppointments();
-        displayAppointmentsPaginated(appointments, false);
+        displayAppointmentsPaginated(null, null, null, false);
     }
 
     /**
      * Displays appointments in a paginated format with options to navigate, delete, or quit.
-     * @param appointments The list of appointments to display.
+     * Only the rows of the current page are fetched from the AppointmentManager, and the page stays
+     * anchored after the last row of the previous page so deletes do not shift the position.
+     * @param from The earliest start time to show, or null for no lower bound.
+     * @param to The start time to stop before, or null for no upper bound.
+     * @param category The category to show, or null to show all.
      * @param isDeleteMode Whether the display is in delete mode.
      */
-    private void displayAppointmentsPaginated(List<Appointment> appointments, boolean isDeleteMode) {
+    private void displayAppointmentsPaginated(LocalDateTime from, LocalDateTime to,
+                                              Category category, boolean isDeleteMode) {
         int pageSize = 10;
-        int totalPages = (int) Math.ceil((double) appointments.size() / pageSize);
+        List<Appointment> previousAnchors = new ArrayList<>();
+        Appointment anchor = null;
         int currentPage = 1;
 
         while (true) {
+            List<Appointment> rows = appointmentManager.page(category, from, to, anchor, pageSize + 1);
+            boolean hasNextPage = rows.size() > pageSize;
+            if (hasNextPage) {
+                rows = rows.subList(0, pageSize);
+            }
+
             clearConsole();
-            displayAppointmentsPage(appointments, currentPage, totalPages);
+            displayAppointmentsPage(rows, currentPage, pageSize);
             displayViewMenu();
 
             String choice = scanner.nextLine().toUpperCase();
             switch (choice) {
                 case "P":
-                    if (currentPage > 1) currentPage--;
+                    if (currentPage > 1) {
+                        anchor = previousAnchors.remove(previousAnchors.size() - 1);
+                        currentPage--;
+                    }
                     break;
                 case "N":
-                    if (currentPage < totalPages) currentPage++;
+                    if (hasNextPage) {
+                        previousAnchors.add(anchor);
+                        anchor = rows.get(rows.size() - 1);
+                        currentPage++;
+                    }
                     break;
                 case "D":
                     performDelete();
-                    appointments = appointmentManager.getAllAppointments(); // Refresh the list
-                    totalPages = (int) Math.ceil((double) appointments.size() / pageSize);
-                    currentPage = Math.min(currentPage, totalPages);
-                    if (appointments.isEmpty()) {
+                    // Step back while the current page has emptied out.
+                    while (currentPage > 1 && appointmentManager.page(category, from, to, anchor, 1).isEmpty()) {
+                        anchor = previousAnchors.remove(previousAnchors.size() - 1);
+                        currentPage--;
+                    }
+                    if (appointmentManager.page(category, from, to, anchor, 1).isEmpty()) {
                         System.out.println("No more appointments to delete.");
                         System.out.print("Press Enter to return to main menu...");
                         scanner.nextLine();
@@ -204,21 +233,16 @@ public class UIManager {
 
     /**
      * Displays a single page of appointments.
-     * @param appointments The list of appointments to display.
+     * @param appointments The appointments on the page.
      * @param currentPage The current page number.
-     * @param totalPages The total number of pages.
+     * @param pageSize The number of appointments per page, used to number the rows.
      */
-    private void displayAppointmentsPage(List<Appointment> appointments, int currentPage, int totalPages) {
-        System.out.println("--- All Appointments (Page " + currentPage + " of " + totalPages + ") ---");
-        int pageSize = 10;
+    private void displayAppointmentsPage(List<Appointment> appointments, int currentPage, int pageSize) {
+        System.out.println("--- All Appointments (Page " + currentPage + ") ---");
         int start = (currentPage - 1) * pageSize;
-        int end = Math.min(start + pageSize, appointments.size());
 
-        for (int i = start; i < end; i++) {
-            Appointment app = appointments.get(i);
-            System.out.printf("%d. [%s] %s - %s: %s (%s)%n",
-                    i + 1, app.getCode(), app.getStartTime().format(dateTimeFormatter),
-                    app.getEndTime().format(dateTimeFormatter), app.getDescription(), app.getCategory());
+        for (int i = 0; i < appointments.size(); i++) {
+            System.out.println((start + i + 1) + ". " + formatAppointment(appointments.get(i)));
         }
         System.out.println();
     }
@@ -241,23 +265,91 @@ public class UIManager {
     private void viewAppointmentsByCategory() {
         clearConsole();
         System.out.println("--- View Appointments by Category ---");
-        String categoryCode = getCategoryInput();
-        if (categoryCode == null) return;  // User quit to main menu
-
-        String category = CATEGORIES.get(categoryCode);
-        List<Appointment> appointments = appointmentManager.getSortedAppointments();
-        List<Appointment> filteredAppointments = appointments.stream()
-                .filter(app -> app.getCategory().equalsIgnoreCase(category))
-                .collect(Collectors.toList());
+        Category category = getCategoryInput();
+        if (category == null) return;  // User quit to main menu
 
-        if (filteredAppointments.isEmpty()) {
-            System.out.println("No appointments found for category: " + category);
+        if (appointmentManager.countByCategory(category) == 0) {
+            System.out.println("No appointments found for category: " + category.getName());
             System.out.print("Press Enter to continue...");
             scanner.nextLine();
             return;
         }
 
-        displayAppointmentsPaginated(filteredAppointments, false);
+        displayAppointmentsPaginated(null, null, category, false);
+    }
+
+    /**
+     * Searches appointment descriptions and shows the matches closest to the current time first.
+     */
+    private void searchAppointments() {
+        clearConsole();
+        System.out.println("--- Search Appointments ---");
+        System.out.println("Words must all match; use OR for alternatives and * for prefixes, e.g. dent* OR doctor");
+        System.out.print("Enter search terms (or press Enter to return to main menu): ");
+        String query = scanner.nextLine().trim();
+        if (query.isEmpty()) return;
+
+        List<Appointment> results = appointmentManager.search(query, LocalDateTime.now(), SEARCH_RESULT_LIMIT);
+        if (results.isEmpty()) {
+            System.out.println("No appointments match: " + query);
+        } else {
+            System.out.println("Closest matches:");
+            for (Appointment app : results) {
+                System.out.println(formatAppointment(app));
+            }
+        }
+        System.out.print("Press Enter to continue...");
+        scanner.nextLine();
+    }
+
+    /**
+     * Shows the busy hours per week and category, the utilization of each weekday and hour, and the average
+     * appointment length per month for a range of days.
+     */
+    private void viewStatistics() {
+        clearConsole();
+        System.out.println("--- Statistics ---");
+        LocalDate from = getDateInput("Enter first date").toLocalDate();
+        LocalDate to = getDateInput("Enter last date").toLocalDate().plusDays(1);
+        if (statistics == null) {
+            statistics = OccupancyStatistics.watch(appointmentManager);
+        }
+
+        System.out.println("\nBusy hours per week:");
+        System.out.printf("%-12s", "Week of");
+        for (Category category : Category.values()) {
+            System.out.printf("%10s", category.getName());
+        }
+        System.out.println();
+        for (Map.Entry<LocalDate, Map<Category, Duration>> week : statistics.busyTimePerWeek(from, to).entrySet()) {
+            System.out.printf("%-12s", week.getKey());
+            for (Category category : Category.values()) {
+                System.out.printf("%10.1f", week.getValue().get(category).toMinutes() / 60.0);
+            }
+            System.out.println();
+        }
+
+        System.out.println("\nUtilization by weekday and hour (%):");
+        double[][] utilization = statistics.utilization(from, to, null);
+        System.out.print("     ");
+        for (int hour = 0; hour < 24; hour++) {
+            System.out.printf("%4d", hour);
+        }
+        System.out.println();
+        for (DayOfWeek weekday : DayOfWeek.values()) {
+            System.out.printf("%-5s", weekday.getDisplayName(TextStyle.SHORT, Locale.ENGLISH));
+            for (int hour = 0; hour < 24; hour++) {
+                System.out.printf("%4d", Math.round(utilization[weekday.getValue() - 1][hour] * 100));
+            }
+            System.out.println();
+        }
+
+        System.out.println("\nAverage appointment length per month:");
+        for (Map.Entry<YearMonth, Duration> month : statistics.averageLengthPerMonth(from, to, null).entrySet()) {
+            System.out.printf("%-9s %d min%n", month.getKey(), month.getValue().toMinutes());
+        }
+        System.out.print("Press Enter to continue...");
+        scanner.nextLine();
     }
 
     /**
@@ -267,9 +359,7 @@ public class UIManager {
         clearConsole();
         System.out.println("--- Appointments for a Specific Day ---");
         LocalDateTime date = getDateInput("Enter date");
-        List<Appointment> appointments = appointmentManager.getAppointmentsForDay(date);
-        appointments.sort(Comparator.comparing(Appointment::getStartTime));
-        displayAppointmentsPaginated(appointments, false);
+        displayAppointmentsPaginated(date, date.plusDays(1), null, false);
     }
 
     /**
@@ -310,22 +400,61 @@ public class UIManager {
         String description = scanner.nextLine();
         if (description.equalsIgnoreCase("cancel")) return;
 
-        String categoryCode = getCategoryInput();
-        if (categoryCode == null) return;  // User quit to main menu
+        Category category = getCategoryInput();
+        if (category == null) return;  // User quit to main menu
+
+        String repeat = getRepeatInput();
+        if (repeat == null) return;
+
+        RecurrenceRule rule = null;
+        if (!repeat.equals("N")) {
+            rule = getRecurrenceRuleInput(REPEAT_FREQUENCIES.get(repeat), date);
+            if (rule == null) return;
+        }
 
-        String category = CATEGORIES.get(categoryCode);
         LocalDateTime startDateTime = LocalDateTime.of(date, startTime);
         LocalDateTime endDateTime = LocalDateTime.of(date, endTime);
 
-        String code = appointmentManager.generateAppointmentCode(categoryCode);
-        Appointment appointment = new Appointment(code, startDateTime, endDateTime, description, category);
-        appointmentManager.addAppointment(appointment);
+        List<Appointment> conflicts = appointmentManager.findConflicts(startDateTime, endDateTime);
+        if (!conflicts.isEmpty() && !confirmConflicts(conflicts)) {
+            System.out.println("Appointment was not added.");
+            System.out.print("Press Enter to return to main menu...");
+            scanner.nextLine();
+            return;
+        }
+
+        String code = rule == null
+                ? appointmentManager.createAppointment(category.getName(), startDateTime, endDateTime, description).getCode()
+                : appointmentManager.createRecurringAppointment(category.getName(), startDateTime, endDateTime, description,
+                        rule).getCode();
 
         System.out.println("Appointment added successfully. Code: " + code);
         System.out.print("Press Enter to return to main menu...");
         scanner.nextLine();
     }
 
+    /**
+     * Warns the user about overlapping appointments and asks whether to add the new one anyway.
+     * @param conflicts The existing appointments that overlap the new one.
+     * @return true if the user wants to keep the new appointment.
+     */
+    private boolean confirmConflicts(List<Appointment> conflicts) {
+        System.out.println("Warning: this appointment overlaps with:");
+        for (Appointment app : conflicts) {
+            System.out.println(formatAppointment(app));
+        }
+        while (true) {
+            System.out.print("Add it anyway? (Y/N): ");
+            String input = scanner.nextLine().trim().toUpperCase();
+            if (input.equals("Y")) {
+                return true;
+            } else if (input.equals("N")) {
+                return false;
+            }
+            System.out.println("Invalid option. Please enter Y or N.");
+        }
+    }
+
     /**
      * Gets a valid date input from the user, ensuring it's not in the past.
      * @param prompt The prompt to display to the user.
@@ -385,13 +514,13 @@ public class UIManager {
 
     /**
      * Gets a category input from the user.
-     * @return The selected category code, or null if the user quits to the main menu.
+     * @return The selected category, or null if the user quits to the main menu.
      */
-    private String getCategoryInput() {
+    private Category getCategoryInput() {
         while (true) {
             System.out.println("Select a category:");
-            for (Map.Entry<String, String> entry : CATEGORIES.entrySet()) {
-                System.out.println(entry.getKey() + " - " + entry.getValue());
+            for (Category category : Category.values()) {
+                System.out.println(category.getCode() + " - " + category.getName());
             }
             System.out.print("Enter category code (or 'Q' to Quit to main menu): ");
             String input = scanner.nextLine().toUpperCase();
@@ -400,27 +529,94 @@ public class UIManager {
                 return null;  // User wants to return to main menu
             }
 
-            if (CATEGORIES.containsKey(input)) {
-                return input;
+            Category category = input.length() == 1 ? Category.fromCode(input.charAt(0)) : null;
+            if (category != null) {
+                return category;
             } else {
                 System.out.println("Invalid category code. Please try again.");
             }
         }
     }
 
+    /**
+     * Asks whether the new appointment repeats.
+     * @return "N" for no repetition, "D", "W" or "M" for daily, weekly or monthly, or null if the user cancels.
+     */
+    private String getRepeatInput() {
+        while (true) {
+            System.out.print("Repeat? (N - No, D - Daily, W - Weekly, M - Monthly): ");
+            String input = scanner.nextLine().trim().toUpperCase();
+            if (input.equals("CANCEL")) {
+                return null;
+            }
+            if (input.equals("N") || REPEAT_FREQUENCIES.containsKey(input)) {
+                return input;
+            }
+            System.out.println("Invalid option. Please enter N, D, W or M.");
+        }
+    }
+
+    /**
+     * Asks how often and until when a new appointment repeats.
+     * @param frequency The unit the appointment repeats in.
+     * @param firstDate The date of the first occurrence.
+     * @return The rule, or null if the user cancels.
+     */
+    private RecurrenceRule getRecurrenceRuleInput(RecurrenceRule.Frequency frequency, LocalDate firstDate) {
+        String unit = frequency == RecurrenceRule.Frequency.DAILY ? "days"
+                : frequency == RecurrenceRule.Frequency.WEEKLY ? "weeks" : "months";
+        int interval;
+        while (true) {
+            System.out.print("Repeat every how many " + unit + "? (Enter for 1): ");
+            String input = scanner.nextLine().trim();
+            if (input.equalsIgnoreCase("cancel")) {
+                return null;
+            }
+            try {
+                interval = input.isEmpty() ? 1 : Integer.parseInt(input);
+                if (interval >= 1) {
+                    break;
+                }
+            } catch (NumberFormatException e) {
+                // Fall through to the error message.
+            }
+            System.out.println("Invalid input. Please enter a whole number of at least 1.");
+        }
+
+        while (true) {
+            System.out.print("Repeat until (yyyy-MM-dd, or Enter to repeat indefinitely): ");
+            String input = scanner.nextLine().trim();
+            if (input.equalsIgnoreCase("cancel")) {
+                return null;
+            }
+            if (input.isEmpty()) {
+                return new RecurrenceRule(frequency, interval, 0, null, List.of());
+            }
+            try {
+                LocalDate until = LocalDate.parse(input, DateTimeFormatter.ISO_LOCAL_DATE);
+                if (until.isBefore(firstDate)) {
+                    System.out.println("Error: The last date cannot be before the first occurrence.");
+                } else {
+                    return new RecurrenceRule(frequency, interval, 0, until, List.of());
+                }
+            } catch (DateTimeParseException e) {
+                System.out.println("Invalid date format. Please use yyyy-MM-dd.");
+            }
+        }
+    }
+
     /**
      * Allows the user to delete an appointment from a sorted list of all appointments.
      */
     private void deleteAppointment() {
-        List<Appointment> appointments = appointmentManager.getSortedAppointments();
-        if (appointments.isEmpty()) {
+        if (appointmentManager.page(null, null, 1).isEmpty()) {
             System.out.println("There are no appointments to delete.");
             System.out.print("Press Enter to continue...");
             scanner.nextLine();
             return;
         }
 
-        displayAppointmentsPaginated(appointments, true);
+        displayAppointmentsPaginated(null, null, null, true);
     }
 
     /**
@@ -0,0 +1,146 @@
+/**
+ * Remembers what the console interface has rendered, so redrawing the main menu does not query or format anything
+ * while the calendar stays the same: the upcoming appointments banner and the formatted rows of appointments.
+ * Everything is dropped when an appointment is added, changed or deleted through the manager. The banner is also
+ * redrawn once the clock reaches midnight, or the start of the appointment it shows as the next one.
+ * The listener only counts changes, so it never waits for the thread that renders; the cache itself is meant for
+ * a single rendering thread.
+ */
+package com.appointmentcalendar;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+class ViewCache implements AppointmentListener, Closeable {
+    private static final int MAX_ROWS = 1024;
+
+    private final AppointmentManager manager;
+    private final Function<Appointment, String> formatter;
+    private final Clock clock;
+    private final AtomicLong version = new AtomicLong();
+    // Least recently used rows are dropped first, so paging through a large calendar keeps memory bounded.
+    private final Map<Appointment, String> rows = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Appointment, String> eldest) {
+            return size() > MAX_ROWS;
+        }
+    };
+    private long renderedVersion = -1;
+    private String banner;
+    private LocalDateTime bannerValidUntil;
+
+    private ViewCache(AppointmentManager manager, Function<Appointment, String> formatter, Clock clock) {
+        this.manager = manager;
+        this.formatter = formatter;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates a cache for the given manager that formats rows with the given function and follows its changes
+     * until closed.
+     */
+    static ViewCache watch(AppointmentManager manager, Function<Appointment, String> formatter, Clock clock) {
+        ViewCache cache = new ViewCache(manager, formatter, clock);
+        manager.addListener(cache);
+        return cache;
+    }
+
+    /**
+     * Returns the banner listing today's appointments or, if there are none, the next upcoming one.
+     */
+    String banner() {
+        LocalDateTime now = LocalDateTime.now(clock);
+        if (!isCurrent() || banner == null || !now.isBefore(bannerValidUntil)) {
+            banner = renderBanner(now);
+            Metrics.increment("ui.bannerRenders");
+        }
+        return banner;
+    }
+
+    /**
+     * Returns the appointment as formatted by the formatter, formatting it only the first time it is shown.
+     */
+    String row(Appointment appointment) {
+        isCurrent();
+        return cachedRow(appointment);
+    }
+
+    private String cachedRow(Appointment appointment) {
+        return rows.computeIfAbsent(appointment, formatter);
+    }
+
+    /**
+     * Returns whether nothing changed since the cache was last brought up to date, dropping everything if
+     * something did.
+     */
+    private boolean isCurrent() {
+        long current = version.get();
+        if (current == renderedVersion) {
+            return true;
+        }
+        renderedVersion = current;
+        rows.clear();
+        banner = null;
+        return false;
+    }
+
+    private String renderBanner(LocalDateTime now) {
+        LocalDateTime midnight = now.toLocalDate().plusDays(1).atStartOfDay();
+        bannerValidUntil = midnight;
+        List<Appointment> todaysAppointments = manager.getAppointmentsForDay(now);
+        StringBuilder text = new StringBuilder("--- Upcoming Appointments ---\n");
+        if (!todaysAppointments.isEmpty()) {
+            text.append("Today's appointments:\n");
+            for (Appointment app : todaysAppointments) {
+                text.append(cachedRow(app)).append('\n');
+            }
+        } else {
+            Appointment nextAppointment = manager.getNextAppointmentAfter(now);
+            if (nextAppointment != null) {
+                text.append("Next upcoming appointment:\n").append(cachedRow(nextAppointment)).append('\n');
+                if (nextAppointment.getStartTime().isBefore(midnight)) {
+                    bannerValidUntil = nextAppointment.getStartTime();
+                }
+            } else {
+                text.append("No upcoming appointments.\n");
+            }
+        }
+        return text.append("-----------------------------").toString();
+    }
+
+    @Override
+    public void appointmentAdded(Appointment appointment) {
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void appointmentDeleted(Appointment appointment) {
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void appointmentUpdated(Appointment previous, Appointment appointment) {
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void appointmentsReplaced() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Stops following the manager.
+     */
+    @Override
+    public void close() {
+        manager.removeListener(this);
+    }
+}